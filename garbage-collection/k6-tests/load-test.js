@@ -16,6 +16,8 @@ export const options = {
   },
 };
 
+// Todos os utilizadores virtuais vêm do mesmo IP: correr a aplicação com --admission.enabled=false,
+// senão o rate limit por cliente responde 429 a partir da rajada inicial.
 const API_BASE_URL = 'http://localhost:8080/api/bookings';
 
 // O código que cada utilizador virtual vai executar repetidamente.
@@ -2,10 +2,14 @@ package pt.zeromonos.garbagecollection;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
+@EnableScheduling
 public class GarbageCollectionServiceApplication {
 
     public static void main(String[] args) {
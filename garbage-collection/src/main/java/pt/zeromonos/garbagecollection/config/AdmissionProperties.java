@@ -0,0 +1,29 @@
+package pt.zeromonos.garbagecollection.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+// Controlo de admissão do POST /api/bookings (prefixo "admission").
+@Data
+@ConfigurationProperties(prefix = "admission")
+public class AdmissionProperties {
+
+    // false desliga o rate limit e o limite de concorrência.
+    private boolean enabled = true;
+
+    // Token bucket por cliente: pedidos seguidos permitidos (rajada) e ritmo de reposição.
+    private int burst = 20;
+
+    private double refillPerSecond = 2.0;
+
+    // Máximo de criações de bookings em curso ao mesmo tempo, somando todos os clientes.
+    private int maxConcurrent = 64;
+
+    // Clientes sem pedidos há mais do que isto deixam de ter estado em memória.
+    private Duration idleTimeout = Duration.ofMinutes(10);
+
+    // Header com o IP original quando há um proxy à frente (e.g. X-Forwarded-For). Vazio: usa o IP da ligação.
+    private String clientHeader = "";
+}
@@ -0,0 +1,20 @@
+package pt.zeromonos.garbagecollection.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Capacidade dos camiões por município/data/TimeSlot (prefixo "capacity").
+// Exemplo: capacity.limits.Lisboa.MORNING=40  ou  capacity.limits[Vila Nova de Gaia].AFTERNOON=15
+@Data
+@ConfigurationProperties(prefix = "capacity")
+public class CapacityProperties {
+
+    // Limite usado quando o município/slot não tem valor próprio.
+    private int defaultLimit = 20;
+
+    private Map<String, Map<TimeSlot, Integer>> limits = new HashMap<>();
+}
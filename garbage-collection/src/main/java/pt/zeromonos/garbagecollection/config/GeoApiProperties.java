@@ -0,0 +1,41 @@
+package pt.zeromonos.garbagecollection.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+// Configuração do GeoApiService (prefixo "geoapi" no application.properties).
+@Data
+@ConfigurationProperties(prefix = "geoapi")
+public class GeoApiProperties {
+
+    public enum RefreshMode {
+        // O primeiro pedido depois de expirar a cache faz a chamada à GeoAPI e os outros esperam.
+        BLOCKING,
+        // Os pedidos servem sempre o snapshot atual; a renovação é feita por um scheduler em background.
+        BACKGROUND
+    }
+
+    private RefreshMode refreshMode = RefreshMode.BLOCKING;
+
+    // Endpoint da lista de municípios (configurável para testes e benchmarks com uma GeoAPI simulada).
+    private String url = "https://json.geoapi.pt/municipios";
+
+    // Validade de uma lista obtida com sucesso.
+    private Duration cacheTtl = Duration.ofHours(12);
+
+    // Fração do TTL após a qual o scheduler renova o snapshot (0.8 = renova aos 80% do TTL).
+    private double refreshAhead = 0.8;
+
+    // Variação aleatória aplicada a cada agendamento (0.1 = ±10%), para as instâncias não renovarem todas ao mesmo tempo.
+    private double refreshJitter = 0.1;
+
+    // Backoff exponencial entre tentativas falhadas.
+    private Duration initialBackoff = Duration.ofSeconds(30);
+    private Duration maxBackoff = Duration.ofMinutes(15);
+
+    // Ficheiro onde é guardado o último snapshot válido, para arrancar sem chamar a GeoAPI (null = desativado).
+    private Path snapshotFile;
+}
@@ -0,0 +1,22 @@
+package pt.zeromonos.garbagecollection.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+// Log de histórico de estados dos bookings (prefixo "history").
+@Data
+@ConfigurationProperties(prefix = "history")
+public class HistoryProperties {
+
+    // Diretório dos segmentos do log.
+    private Path dir = Path.of("data/history");
+
+    // Tamanho de cada segmento mapeado em memória; quando enche, passa para um novo.
+    private long segmentBytes = 8L * 1024 * 1024;
+
+    // Na compactação, as transições mais antigas do que isto são descartadas.
+    private Duration retention = Duration.ofDays(730);
+}
@@ -0,0 +1,17 @@
+package pt.zeromonos.garbagecollection.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+// Respostas guardadas por Idempotency-Key no POST /api/bookings (prefixo "idempotency").
+@Data
+@ConfigurationProperties(prefix = "idempotency")
+public class IdempotencyProperties {
+
+    private long maximumSize = 100_000;
+
+    // Durante quanto tempo um retry com a mesma chave recebe a resposta original.
+    private Duration ttl = Duration.ofHours(24);
+}
@@ -0,0 +1,38 @@
+package pt.zeromonos.garbagecollection.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+// Como o POST /api/bookings grava os agendamentos (prefixo "ingestion").
+@Data
+@ConfigurationProperties(prefix = "ingestion")
+public class IngestionProperties {
+
+    public enum Mode {
+        // INSERT + commit dentro do pedido; responde 201 com o booking já guardado.
+        SYNC,
+        // Valida, escreve no journal local (fsync em grupo) e responde 202; uma única thread grava na base de dados.
+        JOURNAL
+    }
+
+    private Mode mode = Mode.SYNC;
+
+    // Diretório dos segmentos do journal e do checkpoint.
+    private Path journalDir = Path.of("data/journal");
+
+    // Número máximo de bookings por saveAll da thread que esvazia o journal.
+    private int batchSize = 500;
+
+    // Tamanho a partir do qual o journal passa para um segmento novo; os antigos são apagados depois de aplicados.
+    private long segmentBytes = 64L * 1024 * 1024;
+
+    // Espera entre tentativas quando a escrita na base de dados falha.
+    private Duration retryDelay = Duration.ofSeconds(1);
+
+    // Tentativas (gravada sozinha) até uma entrada ir para o dead-letter do journal e o checkpoint passar à frente.
+    // Não contam as falhas de acesso à base de dados: essas repetem-se sempre.
+    private int maxAttempts = 3;
+}
@@ -0,0 +1,32 @@
+package pt.zeromonos.garbagecollection.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+// Onde os bookings são guardados (prefixo "storage").
+@Data
+@ConfigurationProperties(prefix = "storage")
+public class StorageProperties {
+
+    public enum Backend {
+        // Repositório JPA sobre a base de dados configurada (spring.datasource).
+        JPA,
+        // Índices em memória com snapshots e change log em disco (InMemoryBookingStore).
+        MEMORY
+    }
+
+    private Backend backend = Backend.JPA;
+
+    // Diretório dos snapshots e do change log do backend MEMORY.
+    private Path dir = Path.of("data/store");
+
+    // De quanto em quanto tempo é escrito um snapshot; o change log recomeça depois de cada um.
+    private Duration snapshotInterval = Duration.ofMinutes(5);
+
+    // true: fsync em cada escrita. false: a escrita fica na page cache e sobrevive a uma queda do processo,
+    // mas não a uma queda da máquina entre snapshots.
+    private boolean fsyncWrites = false;
+}
@@ -0,0 +1,19 @@
+package pt.zeromonos.garbagecollection.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+// Cache das consultas por token (prefixo "token-cache").
+@Data
+@ConfigurationProperties(prefix = "token-cache")
+public class TokenCacheProperties {
+
+    private long maximumSize = 10_000;
+
+    private Duration ttl = Duration.ofMinutes(5);
+
+    // Tokens desconhecidos ficam menos tempo em cache, para um booking novo não ficar "escondido".
+    private Duration negativeTtl = Duration.ofSeconds(30);
+}
@@ -1,15 +1,46 @@
 package pt.zeromonos.garbagecollection.controller;
 
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.dto.BatchBookingResultDTO;
+import pt.zeromonos.garbagecollection.dto.BookingLookupDTO;
+import pt.zeromonos.garbagecollection.dto.BookingPageDTO;
 import pt.zeromonos.garbagecollection.dto.BookingRequestDTO;
+import pt.zeromonos.garbagecollection.dto.BulkStatusUpdateDTO;
+import pt.zeromonos.garbagecollection.dto.BulkStatusUpdateResultDTO;
+import pt.zeromonos.garbagecollection.dto.CacheStatsDTO;
+import pt.zeromonos.garbagecollection.dto.ScheduleSummaryDTO;
+import pt.zeromonos.garbagecollection.dto.SlotAvailabilityDTO;
+import pt.zeromonos.garbagecollection.dto.StaffBookingDTO;
+import pt.zeromonos.garbagecollection.dto.StatusHistoryEntryDTO;
 import pt.zeromonos.garbagecollection.dto.UpdateBookingStatusDTO;
+import pt.zeromonos.garbagecollection.event.BookingEventStream;
+import pt.zeromonos.garbagecollection.service.AdmissionControl;
+import pt.zeromonos.garbagecollection.service.BookingExportService;
+import pt.zeromonos.garbagecollection.service.BookingExportService.ExportFormat;
 import pt.zeromonos.garbagecollection.service.BookingService;
+import pt.zeromonos.garbagecollection.service.BookingConflictException;
+import pt.zeromonos.garbagecollection.service.IdempotencyKeyReusedException;
+import pt.zeromonos.garbagecollection.service.IdempotencyStore;
+import pt.zeromonos.garbagecollection.service.IllegalStatusTransitionException;
+import pt.zeromonos.garbagecollection.service.MunicipalityPayloadCache;
+import pt.zeromonos.garbagecollection.service.SlotUnavailableException;
 
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,60 +48,303 @@ import java.util.Optional;
 @RequestMapping("/api/bookings") // Prefixo para todos os endpoints nesta classe
 public class BookingController {
 
+    private static final Duration MUNICIPALITIES_MAX_AGE = Duration.ofHours(1);
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    // Id do último evento SSE antes da listagem: o painel liga-se ao stream a partir daqui.
+    static final String EVENT_SEQUENCE = "X-Event-Sequence";
+
     @Autowired
     private BookingService bookingService;
 
+    @Autowired
+    private BookingEventStream bookingEventStream;
+
+    @Autowired
+    private BookingExportService bookingExportService;
+
+    @Autowired
+    private MunicipalityPayloadCache municipalityPayloadCache;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
     // Endpoint para obter a lista de municípios
     // GET http://localhost:8080/api/bookings/municipalities
+    // Os bytes (JSON e gzip) vêm já serializados; com If-None-Match igual ao ETag o Spring responde 304.
     @GetMapping("/municipalities")
-    public ResponseEntity<List<String>> getMunicipalities() {
-        List<String> municipalities = bookingService.getAvailableMunicipalities();
-        return new ResponseEntity<>(municipalities, HttpStatus.OK);
+    public ResponseEntity<byte[]> getMunicipalities(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        MunicipalityPayloadCache.Payload payload = municipalityPayloadCache.current();
+        boolean gzip = acceptsGzip(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.maxAge(MUNICIPALITIES_MAX_AGE).cachePublic())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.eTag(payload.gzipEtag())
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(payload.gzip());
+        }
+        return response.eTag(payload.etag()).body(payload.json());
     }
 
     // Endpoint para criar um novo agendamento
     // POST http://localhost:8080/api/bookings
+    // Com o header Idempotency-Key, um retry do mesmo pedido recebe a resposta original em vez de criar outro booking.
     @PostMapping
-    public ResponseEntity<BookingRequest> createBooking(@RequestBody BookingRequestDTO bookingDto) {
+    public ResponseEntity<BookingRequest> createBooking(@RequestBody BookingRequestDTO bookingDto,
+                                                        @RequestHeader(value = IDEMPOTENCY_KEY, required = false)
+                                                        String idempotencyKey,
+                                                        HttpServletRequest request) {
+        if (idempotencyKey == null) {
+            return admitAndCreate(bookingDto, request);
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            return ResponseEntity.badRequest().build(); // 400 Bad Request
+        }
+        try {
+            return idempotencyStore.execute(admissionControl.clientKey(request), idempotencyKey, bookingDto,
+                    () -> admitAndCreate(bookingDto, request));
+        } catch (IdempotencyKeyReusedException e) {
+            // A mesma chave com outro pedido: erro do cliente
+            return ResponseEntity.unprocessableEntity().build(); // 422 Unprocessable Entity
+        }
+    }
+
+    private ResponseEntity<BookingRequest> admitAndCreate(BookingRequestDTO bookingDto, HttpServletRequest request) {
+        long retryAfter = admissionControl.acquire(admissionControl.clientKey(request));
+        if (retryAfter != AdmissionControl.ADMITTED) {
+            // Demasiados pedidos deste cliente, ou demasiadas criações em curso
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS) // 429 Too Many Requests
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter))
+                    .build();
+        }
         try {
             BookingRequest createdBooking = bookingService.createBooking(bookingDto);
+            if (bookingService.isWriteBehind()) {
+                // Já está no journal, mas ainda não na base de dados (ainda sem id); o token já pode ser consultado.
+                return new ResponseEntity<>(createdBooking, HttpStatus.ACCEPTED); // 202 Accepted
+            }
             return new ResponseEntity<>(createdBooking, HttpStatus.CREATED); // 201 Created
+        } catch (SlotUnavailableException e) {
+            // O slot pedido já está cheio
+            return ResponseEntity.status(HttpStatus.CONFLICT).build(); // 409 Conflict
         } catch (IllegalArgumentException e) {
             // Se o serviço lançar uma excepção (e.g., município inválido), retornamos um erro
             return ResponseEntity.badRequest().build(); // 400 Bad Request
+        } finally {
+            admissionControl.release();
+        }
+    }
+
+    // Endpoint para criar vários agendamentos de uma vez (municípios parceiros)
+    // POST http://localhost:8080/api/bookings/batch
+    // Passa pelo mesmo controlo de admissão que o POST individual, com um token por booking.
+    @PostMapping("/batch")
+    public ResponseEntity<List<BatchBookingResultDTO>> createBookings(@RequestBody List<BookingRequestDTO> bookingDtos,
+                                                                      HttpServletRequest request) {
+        // Um batch vazio ou grande demais é recusado pelo serviço (400); aqui só não pode custar mais do que o máximo.
+        int permits = bookingDtos == null ? 1 : Math.clamp(bookingDtos.size(), 1, BookingService.MAX_BATCH_SIZE);
+        long retryAfter = admissionControl.acquire(admissionControl.clientKey(request), permits);
+        if (retryAfter != AdmissionControl.ADMITTED) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS) // 429 Too Many Requests
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter))
+                    .build();
+        }
+        try {
+            return ResponseEntity.ok(bookingService.createBookings(bookingDtos));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } finally {
+            admissionControl.release();
+        }
+    }
+
+    // Endpoint para consultar os lugares livres nos próximos dias
+    // GET http://localhost:8080/api/bookings/availability/Lisboa?days=7
+    @GetMapping("/availability/{municipality}")
+    public ResponseEntity<List<SlotAvailabilityDTO>> getAvailability(@PathVariable String municipality,
+                                                                     @RequestParam(defaultValue = "7") int days) {
+        try {
+            return ResponseEntity.ok(bookingService.getAvailability(municipality, days));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         }
     }
 
     // Endpoint para consultar um agendamento pelo token
     // GET http://localhost:8080/api/bookings/token/some-uuid-token
     @GetMapping("/token/{token}")
-    public ResponseEntity<BookingRequest> getBookingByToken(@PathVariable String token) {
-        Optional<BookingRequest> booking = bookingService.findBookingByToken(token);
+    public ResponseEntity<BookingLookupDTO> getBookingByToken(@PathVariable String token) {
+        Optional<BookingLookupDTO> booking = bookingService.findBookingByToken(token);
 
         // 'map' é uma forma elegante de lidar com o Optional.
         // Se o booking existir, executa a primeira parte. Se não, a segunda.
-        return booking.map(b -> new ResponseEntity<>(b, HttpStatus.OK))
+        return booking.map(BookingController::lookupResponse)
                       .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND)); // 404 Not Found
     }
 
+    // Um booking concluído ou cancelado já não muda: o cliente pode revalidar com If-None-Match (304).
+    private static ResponseEntity<BookingLookupDTO> lookupResponse(BookingLookupDTO booking) {
+        if (booking.status() == null || !booking.status().isTerminal() || booking.lastUpdatedAt() == null) {
+            return ResponseEntity.ok(booking);
+        }
+        // Em microssegundos, a precisão guardada pela base de dados (a entrada em cache pode ter nanos).
+        long version = booking.lastUpdatedAt().toEpochSecond(ZoneOffset.UTC) * 1_000_000
+                + booking.lastUpdatedAt().getNano() / 1_000;
+        return ResponseEntity.ok()
+                .eTag(booking.status() + "-" + Long.toString(version, 36))
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(booking);
+    }
+
+    // Histórico de estados de um booking (do mais antigo para o mais recente)
+    // GET http://localhost:8080/api/bookings/token/abc-123/history
+    @GetMapping("/token/{token}/history")
+    public ResponseEntity<List<StatusHistoryEntryDTO>> getBookingHistory(@PathVariable String token) {
+        List<StatusHistoryEntryDTO> history = bookingService.getStatusHistory(token);
+        return history.isEmpty() ? new ResponseEntity<>(HttpStatus.NOT_FOUND) : ResponseEntity.ok(history);
+    }
+
+    // Estatísticas da cache de consultas por token (para dimensionar a cache)
+    // GET http://localhost:8080/api/bookings/staff/token-cache/stats
+    @GetMapping("/staff/token-cache/stats")
+    public ResponseEntity<CacheStatsDTO> getTokenCacheStats() {
+        return ResponseEntity.ok(bookingService.getTokenCacheStats());
+    }
+
     // Endpoint para a equipa (staff) ver os agendamentos por município
     // GET http://localhost:8080/api/bookings/staff/Lisboa
+    // O header X-Event-Sequence é lido antes da query: o que mudar depois chega pelo stream (?since=).
     @GetMapping("/staff/{municipality}")
-    public ResponseEntity<List<BookingRequest>> getBookingsForStaff(@PathVariable String municipality) {
-        List<BookingRequest> bookings = bookingService.findBookingsByMunicipality(municipality);
-        return new ResponseEntity<>(bookings, HttpStatus.OK);
+    public ResponseEntity<List<StaffBookingDTO>> getBookingsForStaff(@PathVariable String municipality) {
+        long eventSequence = bookingEventStream.currentSequence();
+        List<StaffBookingDTO> bookings = bookingService.findBookingsByMunicipality(municipality);
+        return ResponseEntity.ok()
+                .header(EVENT_SEQUENCE, Long.toString(eventSequence))
+                .body(bookings);
+    }
+
+    // Stream (Server-Sent Events) das alterações aos agendamentos de um município.
+    // A primeira ligação usa ?since= (o X-Event-Sequence da listagem); ao voltar a ligar, o browser envia
+    // Last-Event-ID, que tem prioridade. Em ambos os casos recebe apenas o que perdeu.
+    // GET http://localhost:8080/api/bookings/staff/Lisboa/events?since=1760000000000000
+    // Só municípios servidos: um nome inventado dá 404 em vez de abrir mais um buffer no stream.
+    @GetMapping(path = "/staff/{municipality}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamBookingEvents(@PathVariable String municipality,
+                                                          @RequestHeader(name = "Last-Event-ID", required = false)
+                                                          Long lastEventId,
+                                                          @RequestParam(required = false) Long since) {
+        return bookingService.resolveMunicipality(municipality)
+                .map(canonical -> ResponseEntity.ok(
+                        bookingEventStream.subscribe(canonical, lastEventId != null ? lastEventId : since)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // Export de agendamentos (NDJSON ou CSV), escrito diretamente na resposta sem carregar a lista em memória
+    // GET http://localhost:8080/api/bookings/staff/export?municipality=Lisboa&from=2026-01-01&format=csv
+    @GetMapping("/staff/export")
+    public ResponseEntity<StreamingResponseBody> exportBookings(
+            @RequestParam(required = false) String municipality,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.from(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        StreamingResponseBody body = out -> bookingExportService.export(municipality, from, to, exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"bookings." + exportFormat.extension() + "\"")
+                .body(body);
+    }
+
+    // Resumo para o dashboard de planeamento: bookings por dia/slot/estado, sem ler a tabela bookings
+    // GET http://localhost:8080/api/bookings/staff/Lisboa/summary?from=2026-05-01&days=7
+    @GetMapping("/staff/{municipality}/summary")
+    public ResponseEntity<List<ScheduleSummaryDTO>> getScheduleSummary(
+            @PathVariable String municipality,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(defaultValue = "1") int days) {
+        try {
+            return ResponseEntity.ok(bookingService.getScheduleSummary(municipality, from, days));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
+    // Versão paginada (keyset) da listagem da equipa, com filtros opcionais
+    // GET http://localhost:8080/api/bookings/staff/Lisboa/page?size=50&from=2026-01-01&status=RECEIVED&cursor=...
+    @GetMapping("/staff/{municipality}/page")
+    public ResponseEntity<BookingPageDTO> getBookingsPageForStaff(
+            @PathVariable String municipality,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) BookingStatus status,
+            @RequestParam(required = false) String cursor) {
+        try {
+            BookingPageDTO page = bookingService.findBookingsPage(municipality, from, to, status, cursor, size);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // A versão que o cliente viu é obrigatória: sem ela, duas mudanças válidas sobrepunham-se sem aviso.
     @PatchMapping("/staff/{bookingId}/status")
     public ResponseEntity<BookingRequest> updateBookingStatus(@PathVariable Long bookingId,
                                                               @RequestBody UpdateBookingStatusDTO updateBookingStatusDTO) {
+        if (updateBookingStatusDTO.getVersion() == null) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_REQUIRED).build(); // 428 Precondition Required
+        }
         try {
-            BookingRequest updatedBooking = bookingService.updateBookingStatus(bookingId, updateBookingStatusDTO.getStatus());
+            BookingRequest updatedBooking = bookingService.updateBookingStatus(bookingId,
+                    updateBookingStatusDTO.getStatus(), updateBookingStatusDTO.getVersion());
             return ResponseEntity.ok(updatedBooking);
+        } catch (BookingConflictException e) {
+            // Mudado por outro pedido depois da versão que o cliente viu
+            return ResponseEntity.status(HttpStatus.CONFLICT).build(); // 409 Conflict
+        } catch (IllegalStatusTransitionException e) {
+            // O estado atual não pode passar para o pedido (e.g. COMPLETED -> RECEIVED)
+            return ResponseEntity.unprocessableEntity().build(); // 422 Unprocessable Entity
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
         } catch (EntityNotFoundException e) {
             return ResponseEntity.notFound().build();
         }
     }
-}
\ No newline at end of file
+
+    // Mudança de estado em massa (ids ou filtro município/data/slot), num único UPDATE
+    // PATCH http://localhost:8080/api/bookings/staff/status
+    @PatchMapping("/staff/status")
+    public ResponseEntity<BulkStatusUpdateResultDTO> bulkUpdateStatus(@RequestBody BulkStatusUpdateDTO bulkStatusUpdateDTO) {
+        try {
+            int updated = bookingService.bulkUpdateStatus(bulkStatusUpdateDTO);
+            return ResponseEntity.ok(new BulkStatusUpdateResultDTO(updated));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            if (tokens[0].trim().equalsIgnoreCase("gzip")) {
+                return tokens.length == 1 || !tokens[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+}
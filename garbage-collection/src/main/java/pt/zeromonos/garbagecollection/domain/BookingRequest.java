@@ -3,21 +3,30 @@ package pt.zeromonos.garbagecollection.domain;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 @Entity
-@Table(name = "bookings")
+// Índices compostos para a listagem paginada da equipa (keyset em bookingDate, id)
+@Table(name = "bookings", indexes = {
+        @Index(name = "idx_bookings_municipality_date_id", columnList = "municipality, bookingDate, id"),
+        @Index(name = "idx_bookings_municipality_status_date_id", columnList = "municipality, status, bookingDate, id")
+})
 @Data // Anotação do Lombok: cria getters, setters, toString, equals, hashCode
 @NoArgsConstructor // Anotação do Lombok: cria um construtor sem argumentos
 public class BookingRequest {
 
+    // Sequência com allocationSize > 1 (otimizador pooled): os ids são atribuídos sem ir à base de dados
+    // em cada INSERT, o que permite ao Hibernate agrupar os inserts em batches JDBC.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "bookings_seq")
+    @SequenceGenerator(name = "bookings_seq", sequenceName = "bookings_seq", allocationSize = 50)
     private Long id;
 
-    @Column(nullable = false, unique = true)
+    // Guardado como 16 bytes; na API aparece em Base64 URL-safe (ver BookingTokens).
+    @Column(nullable = false, unique = true, length = BookingTokens.BYTES)
+    @Convert(converter = BookingTokenConverter.class)
     private String bookingToken;
 
     @Column(nullable = false)
@@ -44,6 +53,13 @@ public class BookingRequest {
     
     private LocalDateTime lastUpdatedAt;
 
+    // Versão para concorrência otimista: cada UPDATE incrementa-a e só se aplica se a versão lida ainda for a atual.
+    // O default 0 serve as linhas que já existiam quando a coluna foi criada.
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
+
     // Construtor para facilitar a criação de novos bookings
     public BookingRequest(String itemDescription, String municipality, String fullAddress, LocalDate bookingDate, TimeSlot timeSlot) {
         this.itemDescription = itemDescription;
@@ -53,7 +69,7 @@ public class BookingRequest {
         this.timeSlot = timeSlot;
         
         // Valores padrão na criação
-        this.bookingToken = UUID.randomUUID().toString();
+        this.bookingToken = BookingTokens.newToken();
         this.status = BookingStatus.RECEIVED;
         this.createdAt = LocalDateTime.now();
         this.lastUpdatedAt = this.createdAt;
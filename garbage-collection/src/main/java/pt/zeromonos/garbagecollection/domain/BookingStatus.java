@@ -1,9 +1,47 @@
 package pt.zeromonos.garbagecollection.domain;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
 public enum BookingStatus {
     RECEIVED,   // Recebido
     SCHEDULED,  // Agendado
     IN_PROGRESS,// Em execução
     COMPLETED,  // Concluído
-    CANCELLED   // Cancelado
-}
\ No newline at end of file
+    CANCELLED;  // Cancelado
+
+    // Transições permitidas: o booking só anda para a frente e nunca sai de um estado final.
+    private static final Map<BookingStatus, Set<BookingStatus>> NEXT = new EnumMap<>(BookingStatus.class);
+    private static final Map<BookingStatus, Set<BookingStatus>> PREVIOUS = new EnumMap<>(BookingStatus.class);
+
+    static {
+        NEXT.put(RECEIVED, EnumSet.of(SCHEDULED, IN_PROGRESS, COMPLETED, CANCELLED));
+        NEXT.put(SCHEDULED, EnumSet.of(IN_PROGRESS, COMPLETED, CANCELLED));
+        NEXT.put(IN_PROGRESS, EnumSet.of(COMPLETED, CANCELLED));
+        NEXT.put(COMPLETED, EnumSet.noneOf(BookingStatus.class));
+        NEXT.put(CANCELLED, EnumSet.noneOf(BookingStatus.class));
+        for (BookingStatus status : values()) {
+            PREVIOUS.put(status, EnumSet.noneOf(BookingStatus.class));
+        }
+        NEXT.forEach((from, targets) -> targets.forEach(to -> PREVIOUS.get(to).add(from)));
+        NEXT.replaceAll((status, targets) -> Collections.unmodifiableSet(targets));
+        PREVIOUS.replaceAll((status, sources) -> Collections.unmodifiableSet(sources));
+    }
+
+    // Estados finais: o booking já não muda, por isso as respostas podem ser revalidadas com ETag.
+    public boolean isTerminal() {
+        return NEXT.get(this).isEmpty();
+    }
+
+    public boolean canChangeTo(BookingStatus next) {
+        return NEXT.get(this).contains(next);
+    }
+
+    // Estados a partir dos quais se pode passar para target (a condição "status in" dos UPDATEs).
+    public static Set<BookingStatus> sourcesOf(BookingStatus target) {
+        return PREVIOUS.get(target);
+    }
+}
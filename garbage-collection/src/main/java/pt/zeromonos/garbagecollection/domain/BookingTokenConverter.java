@@ -0,0 +1,23 @@
+package pt.zeromonos.garbagecollection.domain;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+// Guarda o token como 16 bytes (BINARY) em vez de uma string de 36 caracteres.
+@Converter
+public class BookingTokenConverter implements AttributeConverter<String, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(String token) {
+        if (token == null) {
+            return null;
+        }
+        return BookingTokens.decode(token)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid booking token: " + token));
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] bytes) {
+        return bytes == null ? null : BookingTokens.encode(bytes);
+    }
+}
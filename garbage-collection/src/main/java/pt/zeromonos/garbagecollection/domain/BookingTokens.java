@@ -0,0 +1,99 @@
+package pt.zeromonos.garbagecollection.domain;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tokens de agendamento: UUIDs versão 7 (os primeiros 48 bits são o timestamp em ms),
+ * guardados como 16 bytes e mostrados em Base64 URL-safe sem padding (22 caracteres).
+ * Tokens antigos no formato UUID de 36 caracteres representam os mesmos 16 bytes e continuam válidos.
+ */
+public final class BookingTokens {
+
+    public static final int BYTES = 16;
+    private static final int ENCODED_LENGTH = 22;
+    private static final int UUID_LENGTH = 36;
+
+    // Instâncias DRBG (NIST SP 800-90A): depois da semente inicial geram em memória, sem ler do /dev/urandom em
+    // cada pedido como o NativePRNG (que serializa todas as instâncias num só RandomIO). Cada uma tem um único
+    // monitor (engineNextBytes é synchronized, e uma virtual thread à espera dele prende a carrier thread), por
+    // isso há várias, pelo menos uma por CPU, e cada token usa uma escolhida ao acaso com o ThreadLocalRandom.
+    // Um ThreadLocal não serve: com virtual threads seria uma instância nova (e uma semente nova) por pedido.
+    private static final SecureRandom[] RANDOMS = newRandoms(Runtime.getRuntime().availableProcessors());
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private BookingTokens() {
+    }
+
+    // Potência de 2 para a escolha ser uma máscara.
+    private static SecureRandom[] newRandoms(int cpus) {
+        SecureRandom[] randoms = new SecureRandom[Integer.highestOneBit(Math.max(1, cpus - 1)) << 1];
+        try {
+            for (int i = 0; i < randoms.length; i++) {
+                randoms[i] = SecureRandom.getInstance("DRBG");
+            }
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("DRBG SecureRandom is not available", ex);
+        }
+        return randoms;
+    }
+
+    public static String newToken() {
+        return encode(newTokenBytes());
+    }
+
+    static byte[] newTokenBytes() {
+        byte[] bytes = new byte[BYTES];
+        RANDOMS[ThreadLocalRandom.current().nextInt() & (RANDOMS.length - 1)].nextBytes(bytes);
+
+        long millis = System.currentTimeMillis();
+        for (int i = 0; i < 6; i++) {
+            bytes[i] = (byte) (millis >>> (40 - 8 * i));
+        }
+        bytes[6] = (byte) ((bytes[6] & 0x0F) | 0x70); // versão 7
+        bytes[8] = (byte) ((bytes[8] & 0x3F) | 0x80); // variante RFC 4122
+        return bytes;
+    }
+
+    public static String encode(byte[] bytes) {
+        return ENCODER.encodeToString(bytes);
+    }
+
+    /**
+     * Converte um token (22 caracteres ou UUID de 36) para os 16 bytes guardados na base de dados.
+     */
+    public static Optional<byte[]> decode(String token) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        try {
+            if (token.length() == ENCODED_LENGTH) {
+                return Optional.of(DECODER.decode(token));
+            }
+            if (token.length() == UUID_LENGTH) {
+                UUID uuid = UUID.fromString(token);
+                return Optional.of(ByteBuffer.allocate(BYTES)
+                        .putLong(uuid.getMostSignificantBits())
+                        .putLong(uuid.getLeastSignificantBits())
+                        .array());
+            }
+        } catch (IllegalArgumentException ex) {
+            return Optional.empty();
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Forma canónica (22 caracteres) de um token em qualquer um dos formatos aceites.
+     */
+    public static Optional<String> normalize(String token) {
+        return decode(token).map(BookingTokens::encode);
+    }
+}
@@ -0,0 +1,23 @@
+package pt.zeromonos.garbagecollection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Resultado de um elemento do POST /api/bookings/batch (index = posição no pedido).
+@Data
+@AllArgsConstructor
+public class BatchBookingResultDTO {
+    private int index;
+    private boolean created;
+    private Long id;
+    private String bookingToken;
+    private String error;
+
+    public static BatchBookingResultDTO created(int index, Long id, String bookingToken) {
+        return new BatchBookingResultDTO(index, true, id, bookingToken, null);
+    }
+
+    public static BatchBookingResultDTO rejected(int index, String error) {
+        return new BatchBookingResultDTO(index, false, null, null, error);
+    }
+}
@@ -0,0 +1,31 @@
+package pt.zeromonos.garbagecollection.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * O que o cidadão vê ao consultar o agendamento pelo token (GET /api/bookings/token/{token}).
+ * Imutável, por isso pode ser partilhado pela cache de tokens sem cópias.
+ * O id não vai para a resposta; só serve para invalidar a cache nas alterações em massa.
+ */
+public record BookingLookupDTO(
+        @JsonIgnore Long id,
+        String bookingToken,
+        String itemDescription,
+        String municipality,
+        LocalDate bookingDate,
+        TimeSlot timeSlot,
+        BookingStatus status,
+        LocalDateTime lastUpdatedAt) {
+
+    public static BookingLookupDTO from(BookingRequest booking) {
+        return new BookingLookupDTO(booking.getId(), booking.getBookingToken(), booking.getItemDescription(),
+                booking.getMunicipality(), booking.getBookingDate(), booking.getTimeSlot(), booking.getStatus(),
+                booking.getLastUpdatedAt());
+    }
+}
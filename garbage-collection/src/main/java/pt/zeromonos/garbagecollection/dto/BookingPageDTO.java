@@ -0,0 +1,14 @@
+package pt.zeromonos.garbagecollection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// Uma página da listagem da equipa. Se nextCursor for null, não há mais resultados.
+@Data
+@AllArgsConstructor
+public class BookingPageDTO {
+    private List<StaffBookingDTO> items;
+    private String nextCursor;
+}
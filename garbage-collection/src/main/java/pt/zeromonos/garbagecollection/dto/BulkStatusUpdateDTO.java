@@ -0,0 +1,18 @@
+package pt.zeromonos.garbagecollection.dto;
+
+import lombok.Data;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Pedido de mudança de estado em massa: ou uma lista de ids, ou um filtro por município (data e slot opcionais).
+@Data
+public class BulkStatusUpdateDTO {
+    private BookingStatus status;
+    private List<Long> ids;
+    private String municipality;
+    private LocalDate bookingDate;
+    private TimeSlot timeSlot;
+}
@@ -0,0 +1,11 @@
+package pt.zeromonos.garbagecollection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BulkStatusUpdateResultDTO {
+    // Número de bookings que mudaram de estado
+    private int updated;
+}
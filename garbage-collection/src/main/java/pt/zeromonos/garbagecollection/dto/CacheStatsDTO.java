@@ -0,0 +1,14 @@
+package pt.zeromonos.garbagecollection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CacheStatsDTO {
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private double hitRate;
+}
@@ -0,0 +1,18 @@
+package pt.zeromonos.garbagecollection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+public class ScheduleSummaryDTO {
+    private LocalDate date;
+    private TimeSlot timeSlot;
+    private int total;
+    private Map<BookingStatus, Integer> byStatus;
+}
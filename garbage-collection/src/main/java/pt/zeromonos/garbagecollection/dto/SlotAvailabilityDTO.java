@@ -0,0 +1,16 @@
+package pt.zeromonos.garbagecollection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+public class SlotAvailabilityDTO {
+    private LocalDate date;
+    private TimeSlot timeSlot;
+    private int capacity;
+    private int remaining;
+}
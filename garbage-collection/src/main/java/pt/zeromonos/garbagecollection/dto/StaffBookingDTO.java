@@ -0,0 +1,23 @@
+package pt.zeromonos.garbagecollection.dto;
+
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Linha das listagens da equipa. Sem o token do cidadão, que a equipa não usa.
+ * A versão volta no PATCH de estado, para o servidor recusar (409) se o booking mudou entretanto.
+ */
+public record StaffBookingDTO(
+        Long id,
+        String itemDescription,
+        String municipality,
+        String fullAddress,
+        LocalDate bookingDate,
+        TimeSlot timeSlot,
+        BookingStatus status,
+        LocalDateTime lastUpdatedAt,
+        Long version) {
+}
@@ -0,0 +1,14 @@
+package pt.zeromonos.garbagecollection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class StatusHistoryEntryDTO {
+    private BookingStatus status;
+    private LocalDateTime changedAt;
+}
@@ -6,6 +6,9 @@ public class UpdateBookingStatusDTO {
 
     private BookingStatus status;
 
+    // Versão do booking que o cliente viu (obrigatória: sem ela, 428). Se não for a atual, a mudança é recusada com 409.
+    private Long version;
+
     public BookingStatus getStatus() {
         return status;
     }
@@ -13,4 +16,12 @@ public class UpdateBookingStatusDTO {
     public void setStatus(BookingStatus status) {
         this.status = status;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,74 @@
+package pt.zeromonos.garbagecollection.event;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.repository.StatusChange;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Evento publicado pelo BookingService quando um agendamento é criado ou muda de estado.
+ * É também o payload enviado aos painéis do staff (sem o token do cidadão).
+ *
+ * As mudanças em massa publicam um evento por município com os bookings que mudaram de facto (id e versão
+ * nova). Os eventos de um só booking trazem a versão, para o painel enviar a atual no PATCH seguinte.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BookingChangedEvent(
+        Type type,
+        Long bookingId,
+        String municipality,
+        String itemDescription,
+        String fullAddress,
+        LocalDate bookingDate,
+        TimeSlot timeSlot,
+        BookingStatus status,
+        List<ChangedBooking> bookings,
+        Long version) {
+
+    public record ChangedBooking(Long id, Long version) {
+    }
+
+    public enum Type {
+        CREATED("booking-created"),
+        STATUS_CHANGED("status-changed"),
+        BULK_STATUS_CHANGED("bulk-status-changed");
+
+        private final String eventName;
+
+        Type(String eventName) {
+            this.eventName = eventName;
+        }
+
+        public String eventName() {
+            return eventName;
+        }
+    }
+
+    public static BookingChangedEvent created(BookingRequest booking) {
+        return of(Type.CREATED, booking);
+    }
+
+    public static BookingChangedEvent statusChanged(BookingRequest booking) {
+        return of(Type.STATUS_CHANGED, booking);
+    }
+
+    // changes são os bookings de um município que mudaram para status, com a versão com que ficaram.
+    public static BookingChangedEvent bulkStatusChanged(String municipality, BookingStatus status,
+                                                        List<StatusChange> changes) {
+        List<ChangedBooking> bookings = changes.stream()
+                .map(change -> new ChangedBooking(change.id(), change.version()))
+                .toList();
+        return new BookingChangedEvent(Type.BULK_STATUS_CHANGED, null, municipality, null, null, null, null, status,
+                bookings, null);
+    }
+
+    private static BookingChangedEvent of(Type type, BookingRequest booking) {
+        return new BookingChangedEvent(type, booking.getId(), booking.getMunicipality(), booking.getItemDescription(),
+                booking.getFullAddress(), booking.getBookingDate(), booking.getTimeSlot(), booking.getStatus(), null,
+                booking.getVersion());
+    }
+}
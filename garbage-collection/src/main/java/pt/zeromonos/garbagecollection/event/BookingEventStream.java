@@ -0,0 +1,222 @@
+package pt.zeromonos.garbagecollection.event;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import pt.zeromonos.garbagecollection.service.MunicipalityIndex;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envia os BookingChangedEvent aos painéis do staff por Server-Sent Events, por município.
+ *
+ * Cada evento recebe um id sequencial e fica num buffer limitado por município; quando o browser
+ * volta a ligar com Last-Event-ID recebe só o que perdeu. Se o id já saiu do buffer, recebe um
+ * evento "reset" e deve voltar a carregar a lista completa. A listagem devolve currentSequence(), lida
+ * antes da query: ao ligar a partir dela, o painel recebe o que mudou depois da lista.
+ *
+ * Os ids começam no instante do arranque (em milissegundos, vezes 1000), por isso um id de uma execução
+ * anterior é sempre menor do que os desta e dá "reset" em vez de um replay errado.
+ *
+ * Todo o estado (buffers, clientes, sequência) é tocado apenas pela thread "booking-events",
+ * o que garante a ordem dos eventos sem locks e não atrasa o pedido que originou o evento.
+ * Essa thread não escreve nas ligações: cada cliente tem uma fila limitada e uma virtual thread que faz
+ * o emitter.send bloqueante, por isso um cliente lento só se atrasa a si próprio. Se a fila encher, o
+ * cliente é desligado; o EventSource volta a ligar com Last-Event-ID e recupera pelo buffer (ou "reset").
+ */
+@Component
+public class BookingEventStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookingEventStream.class);
+
+    static final int BUFFER_SIZE = 500;
+    // Cabe um replay completo do buffer e ainda os eventos que chegam enquanto o writer o envia.
+    static final int CLIENT_QUEUE_SIZE = 2 * BUFFER_SIZE;
+    private static final Duration EMITTER_TIMEOUT = Duration.ofMinutes(30);
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(20);
+
+    record SequencedEvent(long id, BookingChangedEvent event) {
+    }
+
+    // Buffer de um município. coveredFrom: todos os eventos com id > coveredFrom estão em "events". Um buffer
+    // novo cobre desde o arranque: até aí não houve nenhum evento desse município.
+    private static final class MunicipalityStream {
+        final ArrayDeque<SequencedEvent> events = new ArrayDeque<>();
+        final List<Client> clients = new ArrayList<>();
+        long coveredFrom;
+
+        MunicipalityStream(long coveredFrom) {
+            this.coveredFrom = coveredFrom;
+        }
+    }
+
+    // Uma ligação SSE: a fila que a thread "booking-events" enche e a virtual thread que a escreve no emitter.
+    private final class Client {
+        final String key;
+        final SseEmitter emitter;
+        final BlockingQueue<SseEmitter.SseEventBuilder> queue = new ArrayBlockingQueue<>(CLIENT_QUEUE_SIZE);
+        final Thread writer;
+
+        Client(String key, SseEmitter emitter) {
+            this.key = key;
+            this.emitter = emitter;
+            this.writer = Thread.ofVirtual().name("booking-events-" + key).unstarted(this::write);
+        }
+
+        private void write() {
+            try {
+                while (true) {
+                    emitter.send(queue.take());
+                }
+            } catch (InterruptedException e) {
+                // Cliente removido.
+            } catch (IOException | IllegalStateException ex) {
+                logger.debug("Dropping SSE client for {}: {}", key, ex.getMessage());
+                executor.execute(() -> removeClient(this));
+                emitter.completeWithError(ex);
+            }
+        }
+    }
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "booking-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, MunicipalityStream> streams = new HashMap<>();
+    private final long firstSequence = System.currentTimeMillis() * 1000;
+    // Só a thread "booking-events" escreve; volatile para a listagem o poder ler.
+    private volatile long sequence = firstSequence;
+
+    public BookingEventStream() {
+        executor.scheduleAtFixedRate(this::heartbeat, HEARTBEAT_INTERVAL.toMillis(), HEARTBEAT_INTERVAL.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.execute(() -> streams.values()
+                .forEach(stream -> stream.clients.forEach(client -> client.writer.interrupt())));
+        executor.shutdown();
+    }
+
+    /**
+     * Recebe o evento só depois do commit (ou logo, se não houver transação ativa).
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookingChanged(BookingChangedEvent event) {
+        executor.execute(() -> dispatch(event));
+    }
+
+    /**
+     * Id do último evento já numerado. Uma mudança que faça commit depois desta leitura tem um id maior.
+     */
+    public long currentSequence() {
+        return sequence;
+    }
+
+    public SseEmitter subscribe(String municipality, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT.toMillis());
+        Client client = new Client(MunicipalityIndex.fold(municipality), emitter);
+        Runnable remove = () -> executor.execute(() -> removeClient(client));
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(error -> remove.run());
+
+        executor.execute(() -> {
+            MunicipalityStream stream = streamFor(client.key);
+            if (lastEventId != null) {
+                Optional<List<SequencedEvent>> missed = eventsSince(stream, lastEventId);
+                if (missed.isEmpty()) {
+                    client.queue.add(SseEmitter.event().id(Long.toString(sequence)).name("reset").data(""));
+                } else {
+                    missed.get().forEach(sequenced -> client.queue.add(toSse(sequenced)));
+                }
+            }
+            stream.clients.add(client);
+            client.writer.start();
+        });
+        return emitter;
+    }
+
+    private Optional<List<SequencedEvent>> eventsSince(MunicipalityStream stream, long lastEventId) {
+        if (lastEventId < stream.coveredFrom || lastEventId > sequence) {
+            return Optional.empty();
+        }
+        List<SequencedEvent> missed = new ArrayList<>();
+        for (SequencedEvent sequenced : stream.events) {
+            if (sequenced.id() > lastEventId) {
+                missed.add(sequenced);
+            }
+        }
+        return Optional.of(missed);
+    }
+
+    private void dispatch(BookingChangedEvent event) {
+        SequencedEvent sequenced = new SequencedEvent(sequence + 1, event);
+        sequence = sequenced.id();
+        String key = MunicipalityIndex.fold(event.municipality());
+        append(streamFor(key), sequenced);
+    }
+
+    private void append(MunicipalityStream stream, SequencedEvent sequenced) {
+        stream.events.addLast(sequenced);
+        if (stream.events.size() > BUFFER_SIZE) {
+            stream.coveredFrom = stream.events.removeFirst().id();
+        }
+        for (Client client : List.copyOf(stream.clients)) {
+            enqueue(client, toSse(sequenced));
+        }
+    }
+
+    private void heartbeat() {
+        streams.values().forEach(stream -> {
+            for (Client client : List.copyOf(stream.clients)) {
+                enqueue(client, SseEmitter.event().comment("keep-alive"));
+            }
+        });
+    }
+
+    private void enqueue(Client client, SseEmitter.SseEventBuilder event) {
+        if (!client.queue.offer(event)) {
+            logger.info("Dropping slow SSE client for {}: {} events queued", client.key, CLIENT_QUEUE_SIZE);
+            removeClient(client);
+            // O complete() espera pelo send em curso (o emitter serializa-os): fora da thread "booking-events".
+            Thread.ofVirtual().start(client.emitter::complete);
+        }
+    }
+
+    private void removeClient(Client client) {
+        MunicipalityStream stream = streams.get(client.key);
+        if (stream != null) {
+            stream.clients.remove(client);
+        }
+        client.writer.interrupt();
+    }
+
+    private MunicipalityStream streamFor(String key) {
+        return streams.computeIfAbsent(key, k -> new MunicipalityStream(firstSequence));
+    }
+
+    private static SseEmitter.SseEventBuilder toSse(SequencedEvent sequenced) {
+        return SseEmitter.event()
+                .id(Long.toString(sequenced.id()))
+                .name(sequenced.event().type().eventName())
+                .data(sequenced.event());
+    }
+}
@@ -0,0 +1,20 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Fragmento do BookingRequestRepository com as queries de filtros opcionais (implementado em
+// BookingFilterRepositoryImpl): o lock das mudanças em massa por filtro e o export.
+interface BookingFilterRepository {
+
+    List<StatusChange> lockForStatusChangeByFilter(String municipality, LocalDate bookingDate, TimeSlot timeSlot,
+                                                   Collection<BookingStatus> fromStatuses);
+
+    Stream<BookingRequest> streamForExport(String municipality, LocalDate fromDate, LocalDate toDate);
+}
@@ -0,0 +1,97 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * O lock das mudanças em massa por filtro e o export, com o WHERE montado só com os filtros pedidos, como na
+ * listagem da equipa (ver StaffPageRepositoryImpl): "(:x is null or ...)" deixa o plano sem índice.
+ * Os enums (estado e slot) vão como literais pela mesma razão.
+ */
+class BookingFilterRepositoryImpl implements BookingFilterRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Chamado dentro da transação de changeStatusByFilter. Com data usa o índice (municipality, bookingDate, id);
+    // os registos são bloqueados por ordem de id para duas mudanças em massa não entrarem em deadlock.
+    @Override
+    public List<StatusChange> lockForStatusChangeByFilter(String municipality, LocalDate bookingDate,
+                                                          TimeSlot timeSlot, Collection<BookingStatus> fromStatuses) {
+        if (fromStatuses.isEmpty()) {
+            return List.of();
+        }
+        StringBuilder jpql = new StringBuilder("""
+                select new pt.zeromonos.garbagecollection.repository.StatusChange(
+                       b.id, b.bookingToken, b.municipality, b.bookingDate, b.timeSlot, b.status, b.version)
+                from BookingRequest b
+                where b.municipality = :municipality
+                """);
+        if (bookingDate != null) {
+            jpql.append(" and b.bookingDate = :bookingDate");
+        }
+        if (timeSlot != null) {
+            jpql.append(" and b.timeSlot = ").append(literal(timeSlot));
+        }
+        jpql.append(" and b.status in (").append(fromStatuses.stream()
+                .map(BookingFilterRepositoryImpl::literal)
+                .collect(Collectors.joining(", "))).append(')');
+        jpql.append(" order by b.id");
+
+        TypedQuery<StatusChange> query = entityManager.createQuery(jpql.toString(), StatusChange.class)
+                .setParameter("municipality", municipality)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        if (bookingDate != null) {
+            query.setParameter("bookingDate", bookingDate);
+        }
+        return query.getResultList();
+    }
+
+    // Cursor forward-only com fetch size fixo, sem guardar snapshots para dirty checking.
+    // Tem de ser consumido dentro de uma transação (ver BookingExportService).
+    @Override
+    public Stream<BookingRequest> streamForExport(String municipality, LocalDate fromDate, LocalDate toDate) {
+        StringBuilder jpql = new StringBuilder("select b from BookingRequest b where 1 = 1");
+        if (municipality != null) {
+            jpql.append(" and b.municipality = :municipality");
+        }
+        if (fromDate != null) {
+            jpql.append(" and b.bookingDate >= :fromDate");
+        }
+        if (toDate != null) {
+            jpql.append(" and b.bookingDate <= :toDate");
+        }
+        jpql.append(" order by b.id");
+
+        TypedQuery<BookingRequest> query = entityManager.createQuery(jpql.toString(), BookingRequest.class)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, 500)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .setHint(HibernateHints.HINT_CACHEABLE, false);
+        if (municipality != null) {
+            query.setParameter("municipality", municipality);
+        }
+        if (fromDate != null) {
+            query.setParameter("fromDate", fromDate);
+        }
+        if (toDate != null) {
+            query.setParameter("toDate", toDate);
+        }
+        return query.getResultStream();
+    }
+
+    private static String literal(Enum<?> value) {
+        return value.getDeclaringClass().getName() + '.' + value.name();
+    }
+}
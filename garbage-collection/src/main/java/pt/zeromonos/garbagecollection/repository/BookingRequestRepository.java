@@ -1,19 +1,182 @@
 package pt.zeromonos.garbagecollection.repository;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.BookingLookupDTO;
+import pt.zeromonos.garbagecollection.dto.StaffBookingDTO;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+// A listagem da equipa (findStaffPage), o lock das mudanças em massa por filtro e o export vêm dos fragmentos
+// StaffPageRepository e BookingFilterRepository, com o WHERE montado por filtros.
 @Repository
-public interface BookingRequestRepository extends JpaRepository<BookingRequest, Long> {
+public interface BookingRequestRepository extends JpaRepository<BookingRequest, Long>, StaffPageRepository,
+        BookingFilterRepository, BookingStore {
+
+    // Existem no JpaRepository e no BookingStore; declarados aqui para as chamadas não serem ambíguas.
+    @Override
+    <S extends BookingRequest> S save(S booking);
+
+    @Override
+    <S extends BookingRequest> List<S> saveAll(Iterable<S> bookings);
+
+    @Override
+    Optional<BookingRequest> findById(Long id);
 
     // O Spring Data JPA cria a query automaticamente a partir do nome do método!
     // "Encontra-me um BookingRequest através do seu campo 'bookingToken'"
     Optional<BookingRequest> findByBookingToken(String bookingToken);
 
+    // Tokens que já existem, para a ingestão por journal não inserir o mesmo booking duas vezes.
+    @Query("SELECT b.bookingToken FROM BookingRequest b WHERE b.bookingToken IN :tokens")
+    List<String> findExistingTokens(@Param("tokens") Collection<String> tokens);
+
     // "Encontra-me uma lista de BookingRequests através do seu campo 'municipality'"
     List<BookingRequest> findByMunicipality(String municipality);
-}
\ No newline at end of file
+
+    // Leituras da API: só as colunas necessárias, diretamente para records imutáveis. Sem entidades no
+    // contexto de persistência não há snapshots para dirty checking; a transação read-only desliga o flush.
+    @Transactional(readOnly = true)
+    @Query("""
+            select new pt.zeromonos.garbagecollection.dto.BookingLookupDTO(
+                   b.id, b.bookingToken, b.itemDescription, b.municipality, b.bookingDate, b.timeSlot,
+                   b.status, b.lastUpdatedAt)
+            from BookingRequest b
+            where b.bookingToken = :token
+            """)
+    Optional<BookingLookupDTO> findLookupByBookingToken(@Param("token") String token);
+
+    @Transactional(readOnly = true)
+    @Query("""
+            select new pt.zeromonos.garbagecollection.dto.StaffBookingDTO(
+                   b.id, b.itemDescription, b.municipality, b.fullAddress, b.bookingDate, b.timeSlot,
+                   b.status, b.lastUpdatedAt, b.version)
+            from BookingRequest b
+            where b.municipality = :municipality
+            order by b.bookingDate, b.id
+            """)
+    List<StaffBookingDTO> findStaffViewsByMunicipality(@Param("municipality") String municipality);
+
+    // Ocupação de cada slot a partir de uma data, ignorando um estado (os cancelados não ocupam o camião).
+    @Query("""
+            select b.municipality as municipality, b.bookingDate as bookingDate,
+                   b.timeSlot as timeSlot, count(b) as total
+            from BookingRequest b
+            where b.bookingDate >= :fromDate and b.status <> :excludedStatus
+            group by b.municipality, b.bookingDate, b.timeSlot
+            """)
+    List<SlotCount> countBySlotFrom(@Param("fromDate") LocalDate fromDate,
+                                    @Param("excludedStatus") BookingStatus excludedStatus);
+
+    // Mudança de estado de um booking num único UPDATE condicional, sem carregar e gravar a entidade:
+    // só se aplica se a versão ainda for a do cliente e o estado atual puder passar para o novo (fromStatuses).
+    // O OLD TABLE do H2 devolve a linha como estava antes do UPDATE, no mesmo statement (em PostgreSQL seria
+    // UPDATE ... RETURNING): o serviço fica com o estado anterior e o slot sem uma leitura à parte.
+    @Override
+    @Transactional
+    default Optional<BookingRequest> changeStatusIfCurrent(Long id, Long version,
+                                                           Collection<BookingStatus> fromStatuses,
+                                                           BookingStatus status, LocalDateTime now) {
+        // Numa query nativa os enums iriam como ordinal; a coluna guarda o nome.
+        return updateStatusReturningPrevious(id, version, fromStatuses.stream().map(Enum::name).toList(),
+                status.name(), now);
+    }
+
+    // Read-only: a entidade devolvida é a linha antiga, e o serviço aplica-lhe a mudança sem a gravar outra vez.
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(nativeQuery = true, value = """
+            select * from old table (
+                update bookings
+                set status = :status, last_updated_at = :now, version = version + 1
+                where id = :id and version = :version and status in (:fromStatuses))
+            """)
+    Optional<BookingRequest> updateStatusReturningPrevious(@Param("id") Long id,
+                                                           @Param("version") Long version,
+                                                           @Param("fromStatuses") Collection<String> fromStatuses,
+                                                           @Param("status") String status,
+                                                           @Param("now") LocalDateTime now);
+
+    // Mudanças de estado em massa: os candidatos são lidos com SELECT ... FOR UPDATE e o UPDATE muda
+    // exatamente esses ids. Até ao commit nenhum outro pedido muda os bookings bloqueados, por isso o que se
+    // devolve (e o que o serviço desconta na capacidade, no histórico e nos agregados) é o que o UPDATE mudou.
+    @Override
+    @Transactional
+    default List<StatusChange> changeStatusByIds(Collection<Long> ids, Collection<BookingStatus> fromStatuses,
+                                                 BookingStatus status, LocalDateTime now) {
+        return changeLocked(lockForStatusChangeByIds(ids, fromStatuses), fromStatuses, status, now);
+    }
+
+    @Override
+    @Transactional
+    default List<StatusChange> changeStatusByFilter(String municipality, LocalDate bookingDate, TimeSlot timeSlot,
+                                                    Collection<BookingStatus> fromStatuses, BookingStatus status,
+                                                    LocalDateTime now) {
+        return changeLocked(lockForStatusChangeByFilter(municipality, bookingDate, timeSlot, fromStatuses),
+                fromStatuses, status, now);
+    }
+
+    private List<StatusChange> changeLocked(List<StatusChange> locked, Collection<BookingStatus> fromStatuses,
+                                            BookingStatus status, LocalDateTime now) {
+        if (locked.isEmpty()) {
+            return List.of();
+        }
+        int updated = bulkUpdateStatusByIds(locked.stream().map(StatusChange::id).toList(), fromStatuses, status,
+                now);
+        if (updated != locked.size()) {
+            throw new IllegalStateException("Bulk status update changed " + updated + " of " + locked.size()
+                    + " locked bookings");
+        }
+        return locked.stream()
+                .map(change -> new StatusChange(change.id(), change.bookingToken(), change.municipality(),
+                        change.bookingDate(), change.timeSlot(), change.previousStatus(), change.version() + 1))
+                .toList();
+    }
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+            select new pt.zeromonos.garbagecollection.repository.StatusChange(
+                   b.id, b.bookingToken, b.municipality, b.bookingDate, b.timeSlot, b.status, b.version)
+            from BookingRequest b
+            where b.id in :ids and b.status in :fromStatuses
+            order by b.id
+            """)
+    List<StatusChange> lockForStatusChangeByIds(@Param("ids") Collection<Long> ids,
+                                                @Param("fromStatuses") Collection<BookingStatus> fromStatuses);
+
+    // O UPDATE das mudanças em massa, sobre os ids já bloqueados.
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query("""
+            update BookingRequest b
+            set b.status = :status, b.lastUpdatedAt = :now, b.version = b.version + 1
+            where b.id in :ids and b.status in :fromStatuses
+            """)
+    int bulkUpdateStatusByIds(@Param("ids") Collection<Long> ids,
+                              @Param("fromStatuses") Collection<BookingStatus> fromStatuses,
+                              @Param("status") BookingStatus status,
+                              @Param("now") LocalDateTime now);
+
+    // Ocupação de todos os slots por estado, para reconstruir os agregados do dashboard.
+    @Query("""
+            select b.municipality as municipality, b.bookingDate as bookingDate,
+                   b.timeSlot as timeSlot, b.status as status, count(b) as total
+            from BookingRequest b
+            group by b.municipality, b.bookingDate, b.timeSlot, b.status
+            """)
+    List<SlotStatusCount> countBySlotAndStatus();
+}
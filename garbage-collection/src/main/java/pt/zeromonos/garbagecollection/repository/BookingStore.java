@@ -0,0 +1,62 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import org.springframework.data.domain.Limit;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.BookingLookupDTO;
+import pt.zeromonos.garbagecollection.dto.StaffBookingDTO;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * As operações sobre bookings que os serviços usam. Há duas implementações, escolhidas por storage.backend:
+ * o repositório JPA (BookingRequestRepository, por omissão) e InMemoryBookingStore.
+ * A semântica de cada método é a das queries em BookingRequestRepository.
+ */
+public interface BookingStore {
+
+    <S extends BookingRequest> S save(S booking);
+
+    <S extends BookingRequest> List<S> saveAll(Iterable<S> bookings);
+
+    Optional<BookingRequest> findById(Long id);
+
+    List<String> findExistingTokens(Collection<String> tokens);
+
+    Optional<BookingLookupDTO> findLookupByBookingToken(String token);
+
+    List<StaffBookingDTO> findStaffViewsByMunicipality(String municipality);
+
+    List<StaffBookingDTO> findStaffPage(String municipality, BookingStatus status, LocalDate fromDate, LocalDate toDate,
+                                        LocalDate afterDate, Long afterId, Limit limit);
+
+    List<SlotCount> countBySlotFrom(LocalDate fromDate, BookingStatus excludedStatus);
+
+    /**
+     * Muda o estado de um booking se a versão ainda for version e o estado estiver em fromStatuses. Devolve o
+     * booking como estava antes da mudança, ou vazio se não mudou (não existe, outra versão ou outro estado).
+     */
+    Optional<BookingRequest> changeStatusIfCurrent(Long id, Long version, Collection<BookingStatus> fromStatuses,
+                                                   BookingStatus status, LocalDateTime now);
+
+    /**
+     * Mudanças de estado em massa: mudam para status os bookings (por ids ou por filtro) cujo estado está em
+     * fromStatuses, de forma atómica, e devolvem exatamente os que mudaram.
+     */
+    List<StatusChange> changeStatusByIds(Collection<Long> ids, Collection<BookingStatus> fromStatuses,
+                                         BookingStatus status, LocalDateTime now);
+
+    List<StatusChange> changeStatusByFilter(String municipality, LocalDate bookingDate, TimeSlot timeSlot,
+                                            Collection<BookingStatus> fromStatuses, BookingStatus status,
+                                            LocalDateTime now);
+
+    List<SlotStatusCount> countBySlotAndStatus();
+
+    Stream<BookingRequest> streamForExport(String municipality, LocalDate fromDate, LocalDate toDate);
+}
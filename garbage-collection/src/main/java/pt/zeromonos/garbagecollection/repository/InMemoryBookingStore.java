@@ -0,0 +1,598 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Repository;
+import pt.zeromonos.garbagecollection.config.StorageProperties;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.BookingLookupDTO;
+import pt.zeromonos.garbagecollection.dto.StaffBookingDTO;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Backend de bookings em memória (storage.backend=memory), para instalações pequenas e testes sem o custo
+ * do JPA/H2 em cada chamada.
+ *
+ * Cada booking é guardado como um Row imutável em três índices concorrentes: por id (ordenado, para o
+ * export), por token e por município (ordenado por data e id, como o keyset da listagem da equipa).
+ * As leituras não usam locks. As escritas passam por um único lock: primeiro acrescentam a linha nova ao
+ * change log (JSON, uma linha por booking alterado) e só depois a publicam nos índices.
+ *
+ * De snapshot-interval em snapshot-interval o estado completo é escrito em snapshot-&lt;seq&gt;.jsonl e o
+ * change log passa para um segmento novo, changes-&lt;seq + 1&gt;.jsonl. No arranque carrega-se o snapshot
+ * mais recente e repetem-se os segmentos seguintes. Cada linha tem o booking completo, por isso repetir
+ * uma alteração que o snapshot já inclui não muda nada.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "storage.backend", havingValue = "memory")
+public class InMemoryBookingStore implements BookingStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryBookingStore.class);
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String CHANGES_PREFIX = "changes-";
+    private static final String SUFFIX = ".jsonl";
+
+    // O booking tal como fica guardado (em memória e em disco).
+    record Row(long id, String bookingToken, String itemDescription, String municipality, String fullAddress,
+               LocalDate bookingDate, TimeSlot timeSlot, BookingStatus status, LocalDateTime createdAt,
+               LocalDateTime lastUpdatedAt, long version) {
+
+        static Row of(BookingRequest booking, long version) {
+            return new Row(booking.getId(), booking.getBookingToken(), booking.getItemDescription(),
+                    booking.getMunicipality(), booking.getFullAddress(), booking.getBookingDate(),
+                    booking.getTimeSlot(), booking.getStatus(), booking.getCreatedAt(), booking.getLastUpdatedAt(),
+                    version);
+        }
+
+        Row withStatus(BookingStatus newStatus, LocalDateTime now) {
+            return new Row(id, bookingToken, itemDescription, municipality, fullAddress, bookingDate, timeSlot,
+                    newStatus, createdAt, now, version + 1);
+        }
+
+        // Cópia nova: quem a recebe pode alterá-la sem mexer no que está guardado.
+        BookingRequest toBooking() {
+            BookingRequest booking = new BookingRequest();
+            booking.setId(id);
+            booking.setBookingToken(bookingToken);
+            booking.setItemDescription(itemDescription);
+            booking.setMunicipality(municipality);
+            booking.setFullAddress(fullAddress);
+            booking.setBookingDate(bookingDate);
+            booking.setTimeSlot(timeSlot);
+            booking.setStatus(status);
+            booking.setCreatedAt(createdAt);
+            booking.setLastUpdatedAt(lastUpdatedAt);
+            booking.setVersion(version);
+            return booking;
+        }
+
+        StaffBookingDTO toStaffView() {
+            return new StaffBookingDTO(id, itemDescription, municipality, fullAddress, bookingDate, timeSlot, status,
+                    lastUpdatedAt, version);
+        }
+
+        BookingLookupDTO toLookup() {
+            return new BookingLookupDTO(id, bookingToken, itemDescription, municipality, bookingDate, timeSlot, status,
+                    lastUpdatedAt);
+        }
+    }
+
+    // Entrada do índice por município, pela mesma ordem da listagem (bookingDate, id).
+    private record DateKey(LocalDate date, long id) implements Comparable<DateKey> {
+
+        private static final Comparator<DateKey> ORDER = Comparator.comparing(DateKey::date)
+                .thenComparingLong(DateKey::id);
+
+        @Override
+        public int compareTo(DateKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    // Chave do índice por município e estado, como o idx_bookings_municipality_status_date_id.
+    private record StatusKey(String municipality, BookingStatus status) {
+    }
+
+    private record SlotKey(String municipality, LocalDate bookingDate, TimeSlot timeSlot, BookingStatus status) {
+    }
+
+    @Value
+    private static class SlotTotal implements SlotStatusCount {
+        String municipality;
+        LocalDate bookingDate;
+        TimeSlot timeSlot;
+        BookingStatus status;
+        long total;
+    }
+
+    private final StorageProperties properties;
+    private final ObjectMapper objectMapper;
+    private final ConcurrentSkipListMap<Long, Row> byId = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Long> idByToken = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentSkipListSet<DateKey>> byMunicipality = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<StatusKey, ConcurrentSkipListSet<DateKey>> byMunicipalityAndStatus =
+            new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Protegidos pelo writeLock.
+    private FileChannel changeLog;
+    private long nextSequence = 1;
+    private long nextId = 1;
+    private long snapshotSequence;
+    private IOException changeLogFailure;
+
+    private ScheduledExecutorService snapshotScheduler;
+
+    public InMemoryBookingStore(StorageProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Carrega o snapshot mais recente, repete o change log e abre um segmento novo para as escritas.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        Path dir = properties.getDir();
+        Files.createDirectories(dir);
+        List<Path> snapshots = files(SNAPSHOT_PREFIX);
+        if (!snapshots.isEmpty()) {
+            Path latest = snapshots.get(snapshots.size() - 1);
+            snapshotSequence = sequenceOf(latest, SNAPSHOT_PREFIX);
+            readRows(latest).forEach(row -> apply(byId.get(row.id()), row));
+        }
+        nextSequence = snapshotSequence + 1;
+        int replayed = 0;
+        for (Path segment : files(CHANGES_PREFIX)) {
+            long start = sequenceOf(segment, CHANGES_PREFIX);
+            if (start <= snapshotSequence) {
+                // Já incluído no snapshot (o snapshot foi escrito mas o segmento não chegou a ser apagado).
+                Files.delete(segment);
+                continue;
+            }
+            List<Row> rows = readRows(segment);
+            rows.forEach(row -> apply(byId.get(row.id()), row));
+            replayed += rows.size();
+            nextSequence = start + rows.size();
+        }
+        nextId = byId.isEmpty() ? 1 : byId.lastKey() + 1;
+        changeLog = openSegment(nextSequence);
+        logger.info("Loaded {} bookings from {} (snapshot {}, {} changes replayed).", byId.size(), dir,
+                snapshotSequence, replayed);
+
+        Duration interval = properties.getSnapshotInterval();
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "booking-store-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::scheduledSnapshot, interval.toMillis(), interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        snapshot();
+        writeLock.lock();
+        try {
+            changeLog.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Escreve o estado atual num snapshot e apaga os segmentos do change log que ele já cobre.
+     * As escritas continuam durante o snapshot e ficam no segmento novo. Devolve a sequência coberta.
+     */
+    public synchronized long snapshot() throws IOException {
+        long through;
+        writeLock.lock();
+        try {
+            through = nextSequence - 1;
+            if (through == snapshotSequence) {
+                return through;
+            }
+            changeLog.close();
+            changeLog = openSegment(nextSequence);
+        } finally {
+            writeLock.unlock();
+        }
+
+        Path target = properties.getDir().resolve(SNAPSHOT_PREFIX + through + SUFFIX);
+        Path temp = properties.getDir().resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+            for (Row row : byId.values()) {
+                out.write(objectMapper.writeValueAsBytes(row));
+                out.write('\n');
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (Path snapshot : files(SNAPSHOT_PREFIX)) {
+            if (sequenceOf(snapshot, SNAPSHOT_PREFIX) < through) {
+                Files.delete(snapshot);
+            }
+        }
+        for (Path segment : files(CHANGES_PREFIX)) {
+            if (sequenceOf(segment, CHANGES_PREFIX) <= through) {
+                Files.delete(segment);
+            }
+        }
+        snapshotSequence = through;
+        logger.info("Wrote booking store snapshot {} ({} bookings).", through, byId.size());
+        return through;
+    }
+
+    @Override
+    public <S extends BookingRequest> S save(S booking) {
+        writeLock.lock();
+        try {
+            // As mesmas colunas que são NOT NULL na tabela.
+            if (booking.getBookingToken() == null || booking.getItemDescription() == null
+                    || booking.getMunicipality() == null || booking.getBookingDate() == null
+                    || booking.getTimeSlot() == null || booking.getStatus() == null || booking.getCreatedAt() == null) {
+                throw new DataIntegrityViolationException("Booking is missing required fields");
+            }
+            Long owner = idByToken.get(booking.getBookingToken());
+            if (owner != null && !owner.equals(booking.getId())) {
+                throw new DataIntegrityViolationException("Duplicate booking token");
+            }
+            Row previous = booking.getId() != null ? byId.get(booking.getId()) : null;
+            // Como o @Version do JPA: gravar uma cópia desatualizada de um booking existente falha.
+            if (previous != null && booking.getVersion() != null && booking.getVersion() != previous.version()) {
+                throw new OptimisticLockingFailureException("Booking " + booking.getId() + " was modified concurrently");
+            }
+            if (booking.getId() == null) {
+                booking.setId(nextId++);
+            } else {
+                nextId = Math.max(nextId, booking.getId() + 1);
+            }
+            Row row = Row.of(booking, previous != null ? previous.version() + 1 : 0);
+            append(row);
+            apply(previous, row);
+            booking.setVersion(row.version());
+            return booking;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public <S extends BookingRequest> List<S> saveAll(Iterable<S> bookings) {
+        List<S> saved = new ArrayList<>();
+        writeLock.lock();
+        try {
+            for (S booking : bookings) {
+                saved.add(save(booking));
+            }
+            return saved;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<BookingRequest> findById(Long id) {
+        return Optional.ofNullable(byId.get(id)).map(Row::toBooking);
+    }
+
+    @Override
+    public List<String> findExistingTokens(Collection<String> tokens) {
+        return tokens.stream().filter(idByToken::containsKey).distinct().toList();
+    }
+
+    @Override
+    public Optional<BookingLookupDTO> findLookupByBookingToken(String token) {
+        return Optional.ofNullable(idByToken.get(token)).map(byId::get).map(Row::toLookup);
+    }
+
+    @Override
+    public List<StaffBookingDTO> findStaffViewsByMunicipality(String municipality) {
+        return rows(index(municipality)).map(Row::toStaffView).toList();
+    }
+
+    @Override
+    public List<StaffBookingDTO> findStaffPage(String municipality, BookingStatus status, LocalDate fromDate,
+                                               LocalDate toDate, LocalDate afterDate, Long afterId, Limit limit) {
+        // Como no SQL, com estado percorre o índice (município, estado): só lê as linhas da página.
+        NavigableSet<DateKey> keys = status == null ? index(municipality) : index(municipality, status);
+        if (fromDate != null) {
+            keys = keys.tailSet(new DateKey(fromDate, Long.MIN_VALUE), true);
+        }
+        if (afterDate != null) {
+            // Sem afterId a condição "id > afterId" nunca é verdadeira, como no SQL: só contam as datas seguintes.
+            keys = keys.tailSet(new DateKey(afterDate, afterId == null ? Long.MAX_VALUE : afterId), false);
+        }
+        if (toDate != null) {
+            keys = keys.headSet(new DateKey(toDate, Long.MAX_VALUE), true);
+        }
+        // O filtro repete a condição: uma leitura concorrente pode ver a entrada antes de o índice ser acertado.
+        Stream<Row> page = rows(keys).filter(row -> status == null || row.status() == status);
+        if (limit.isLimited()) {
+            page = page.limit(limit.max());
+        }
+        return page.map(Row::toStaffView).toList();
+    }
+
+    @Override
+    public List<SlotCount> countBySlotFrom(LocalDate fromDate, BookingStatus excludedStatus) {
+        Stream<Row> rows = byMunicipality.values().stream()
+                .flatMap(keys -> rows(keys.tailSet(new DateKey(fromDate, Long.MIN_VALUE), true)))
+                .filter(row -> row.status() != excludedStatus);
+        return List.copyOf(count(rows, false));
+    }
+
+    @Override
+    public Optional<BookingRequest> changeStatusIfCurrent(Long id, Long version, Collection<BookingStatus> fromStatuses,
+                                                          BookingStatus status, LocalDateTime now) {
+        writeLock.lock();
+        try {
+            Row current = byId.get(id);
+            if (current == null || current.version() != version || !fromStatuses.contains(current.status())) {
+                return Optional.empty();
+            }
+            Row changed = current.withStatus(status, now);
+            append(changed);
+            apply(current, changed);
+            return Optional.of(current.toBooking());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<StatusChange> changeStatusByIds(Collection<Long> ids, Collection<BookingStatus> fromStatuses,
+                                                BookingStatus status, LocalDateTime now) {
+        return bulkUpdate(() -> new LinkedHashSet<>(ids).stream().map(byId::get).filter(Objects::nonNull),
+                fromStatuses, status, now);
+    }
+
+    @Override
+    public List<StatusChange> changeStatusByFilter(String municipality, LocalDate bookingDate, TimeSlot timeSlot,
+                                                   Collection<BookingStatus> fromStatuses, BookingStatus status,
+                                                   LocalDateTime now) {
+        return bulkUpdate(() -> filtered(municipality, bookingDate, timeSlot), fromStatuses, status, now);
+    }
+
+    @Override
+    public List<SlotStatusCount> countBySlotAndStatus() {
+        return count(byId.values().stream(), true);
+    }
+
+    @Override
+    public Stream<BookingRequest> streamForExport(String municipality, LocalDate fromDate, LocalDate toDate) {
+        Predicate<Row> filter = row -> (municipality == null || municipality.equals(row.municipality()))
+                && (fromDate == null || !row.bookingDate().isBefore(fromDate))
+                && (toDate == null || !row.bookingDate().isAfter(toDate));
+        return byId.values().stream().filter(filter).map(Row::toBooking);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    private void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Booking store snapshot failed; changes stay in the change log.", e);
+        }
+    }
+
+    // Os candidatos são escolhidos e mudados dentro do writeLock: nenhuma outra escrita pode mudar um booking
+    // entre a leitura do estado e a mudança, por isso os StatusChange devolvidos são exatamente os que mudaram.
+    private List<StatusChange> bulkUpdate(Supplier<Stream<Row>> candidates, Collection<BookingStatus> fromStatuses,
+                                          BookingStatus status, LocalDateTime now) {
+        writeLock.lock();
+        try {
+            List<Row> locked = candidates.get().filter(row -> fromStatuses.contains(row.status())).toList();
+            List<StatusChange> changes = new ArrayList<>(locked.size());
+            for (Row current : locked) {
+                Row changed = current.withStatus(status, now);
+                append(changed);
+                apply(current, changed);
+                changes.add(new StatusChange(changed.id(), changed.bookingToken(), changed.municipality(),
+                        changed.bookingDate(), changed.timeSlot(), current.status(), changed.version()));
+            }
+            return changes;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Publica o Row nos índices. O byId vem primeiro para que uma entrada nos outros índices resolva sempre.
+    private void apply(Row previous, Row row) {
+        byId.put(row.id(), row);
+        if (previous == null || !previous.bookingToken().equals(row.bookingToken())) {
+            if (previous != null) {
+                idByToken.remove(previous.bookingToken(), previous.id());
+            }
+            idByToken.put(row.bookingToken(), row.id());
+        }
+        if (previous == null || !previous.municipality().equals(row.municipality())
+                || !previous.bookingDate().equals(row.bookingDate())) {
+            if (previous != null) {
+                index(previous.municipality()).remove(new DateKey(previous.bookingDate(), previous.id()));
+            }
+            byMunicipality.computeIfAbsent(row.municipality(), key -> new ConcurrentSkipListSet<>())
+                    .add(new DateKey(row.bookingDate(), row.id()));
+        }
+        if (previous == null || !previous.municipality().equals(row.municipality())
+                || !previous.bookingDate().equals(row.bookingDate()) || previous.status() != row.status()) {
+            if (previous != null) {
+                index(previous.municipality(), previous.status())
+                        .remove(new DateKey(previous.bookingDate(), previous.id()));
+            }
+            byMunicipalityAndStatus.computeIfAbsent(new StatusKey(row.municipality(), row.status()),
+                    key -> new ConcurrentSkipListSet<>()).add(new DateKey(row.bookingDate(), row.id()));
+        }
+    }
+
+    private void append(Row row) {
+        if (changeLogFailure != null) {
+            throw new UncheckedIOException("The booking change log is unusable after a failed write", changeLogFailure);
+        }
+        long position = -1;
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(row);
+            ByteBuffer buffer = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n').flip();
+            position = changeLog.position();
+            while (buffer.hasRemaining()) {
+                changeLog.write(buffer);
+            }
+            if (properties.isFsyncWrites()) {
+                changeLog.force(false);
+            }
+            nextSequence++;
+        } catch (IOException e) {
+            if (position >= 0) {
+                discardFailedWrite(position, e);
+            }
+            throw new UncheckedIOException("Could not append to the booking change log", e);
+        }
+    }
+
+    // Uma escrita que falhou a meio deixa parte da linha no segmento, e a seguinte ficaria colada a ela: no
+    // arranque essa linha do meio não se lê e o store não abre. Corta-se o segmento de volta ao início da
+    // linha (também quando falha só o fsync, porque o Row não chega aos índices). Se nem isso der, o store
+    // recusa as escritas seguintes até ser reaberto.
+    private void discardFailedWrite(long position, IOException cause) {
+        try {
+            changeLog.truncate(position);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            changeLogFailure = cause;
+            logger.error("Could not roll back a failed booking change log write; refusing further writes.", e);
+        }
+    }
+
+    private NavigableSet<DateKey> index(String municipality) {
+        NavigableSet<DateKey> keys = byMunicipality.get(municipality);
+        return keys != null ? keys : new ConcurrentSkipListSet<>();
+    }
+
+    private NavigableSet<DateKey> index(String municipality, BookingStatus status) {
+        NavigableSet<DateKey> keys = byMunicipalityAndStatus.get(new StatusKey(municipality, status));
+        return keys != null ? keys : new ConcurrentSkipListSet<>();
+    }
+
+    private Stream<Row> rows(Collection<DateKey> keys) {
+        return keys.stream().map(key -> byId.get(key.id())).filter(Objects::nonNull);
+    }
+
+    private Stream<Row> filtered(String municipality, LocalDate bookingDate, TimeSlot timeSlot) {
+        NavigableSet<DateKey> keys = index(municipality);
+        if (bookingDate != null) {
+            keys = keys.subSet(new DateKey(bookingDate, Long.MIN_VALUE), true, new DateKey(bookingDate, Long.MAX_VALUE),
+                    true);
+        }
+        return rows(keys).filter(row -> timeSlot == null || row.timeSlot() == timeSlot);
+    }
+
+    private static List<SlotStatusCount> count(Stream<Row> rows, boolean byStatus) {
+        Map<SlotKey, long[]> totals = new HashMap<>();
+        rows.forEach(row -> totals.computeIfAbsent(new SlotKey(row.municipality(), row.bookingDate(), row.timeSlot(),
+                byStatus ? row.status() : null), key -> new long[1])[0]++);
+        List<SlotStatusCount> result = new ArrayList<>(totals.size());
+        totals.forEach((key, total) -> result.add(new SlotTotal(key.municipality(), key.bookingDate(), key.timeSlot(),
+                key.status(), total[0])));
+        return result;
+    }
+
+    private FileChannel openSegment(long firstSequence) throws IOException {
+        return FileChannel.open(properties.getDir().resolve(CHANGES_PREFIX + firstSequence + SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Uma linha por Row. Uma última linha sem '\n' é uma escrita interrompida: é cortada do ficheiro, para que
+    // as escritas seguintes (que podem reabrir este segmento) não fiquem coladas a ela.
+    private List<Row> readRows(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        List<Row> rows = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                rows.add(objectMapper.readValue(bytes, start, i - start, Row.class));
+                start = i + 1;
+            }
+        }
+        if (start < bytes.length) {
+            logger.warn("Dropping incomplete last record in {}.", file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(start);
+            }
+        }
+        return rows;
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(properties.getDir())) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(prefix) && name.endsWith(SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(path -> sequenceOf(path, prefix)))
+                    .toList();
+        }
+    }
+
+    private static long sequenceOf(Path file, String prefix) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,16 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.time.LocalDate;
+
+// Projeção do GROUP BY usado para inicializar os contadores de capacidade.
+public interface SlotCount {
+    String getMunicipality();
+
+    LocalDate getBookingDate();
+
+    TimeSlot getTimeSlot();
+
+    long getTotal();
+}
@@ -0,0 +1,8 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+
+// Projeção do GROUP BY por slot e estado (agregados do dashboard e mudanças em massa).
+public interface SlotStatusCount extends SlotCount {
+    BookingStatus getStatus();
+}
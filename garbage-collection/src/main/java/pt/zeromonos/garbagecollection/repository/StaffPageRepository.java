@@ -0,0 +1,15 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import org.springframework.data.domain.Limit;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.dto.StaffBookingDTO;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Fragmento do BookingRequestRepository com a listagem da equipa (implementado em StaffPageRepositoryImpl).
+interface StaffPageRepository {
+
+    List<StaffBookingDTO> findStaffPage(String municipality, BookingStatus status, LocalDate fromDate, LocalDate toDate,
+                                        LocalDate afterDate, Long afterId, Limit limit);
+}
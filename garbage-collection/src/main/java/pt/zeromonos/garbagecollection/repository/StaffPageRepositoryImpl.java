@@ -0,0 +1,88 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.annotation.Transactional;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.dto.StaffBookingDTO;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Paginação por keyset da listagem da equipa: começa depois de (afterDate, afterId) em vez de usar OFFSET,
+ * por isso cada página custa o mesmo independentemente do histórico do município.
+ *
+ * O WHERE é montado só com os filtros pedidos. Com "(:status is null or b.status = :status)" o plano é
+ * escolhido sem saber que filtros vêm a null e a base de dados acaba por ler o município todo; assim cada
+ * combinação tem um WHERE que usa o índice certo: (municipality, status, bookingDate, id) com estado,
+ * (municipality, bookingDate, id) sem ele.
+ *
+ * O estado vai como literal do enum e não como parâmetro: a coluna é um ENUM e o H2 não usa o índice
+ * para "status = ?" (o tipo do parâmetro não é conhecido quando o plano é feito). São só cinco valores,
+ * por isso não há risco de encher a cache de planos.
+ *
+ * O ORDER BY repete as colunas fixadas por igualdade (município e, com filtro, estado): para o H2 a ordem do
+ * índice só serve se o ORDER BY começar pelas mesmas colunas. Sem elas ordena o município inteiro antes do LIMIT.
+ */
+class StaffPageRepositoryImpl implements StaffPageRepository {
+
+    private static final String SELECT = """
+            select new pt.zeromonos.garbagecollection.dto.StaffBookingDTO(
+                   b.id, b.itemDescription, b.municipality, b.fullAddress, b.bookingDate, b.timeSlot,
+                   b.status, b.lastUpdatedAt, b.version)
+            from BookingRequest b
+            where b.municipality = :municipality
+            """;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<StaffBookingDTO> findStaffPage(String municipality, BookingStatus status, LocalDate fromDate,
+                                               LocalDate toDate, LocalDate afterDate, Long afterId, Limit limit) {
+        StringBuilder jpql = new StringBuilder(SELECT);
+        if (status != null) {
+            jpql.append(" and b.status = ").append(BookingStatus.class.getName()).append('.').append(status.name());
+        }
+        if (fromDate != null) {
+            jpql.append(" and b.bookingDate >= :fromDate");
+        }
+        if (toDate != null) {
+            jpql.append(" and b.bookingDate <= :toDate");
+        }
+        if (afterDate != null) {
+            // "bookingDate >= afterDate" dá o intervalo no índice; a segunda condição só afina a primeira data.
+            // Sem afterId só contam as datas seguintes (id > null nunca é verdadeiro).
+            jpql.append(" and b.bookingDate >= :afterDate");
+            jpql.append(afterId == null
+                    ? " and b.bookingDate > :afterDate"
+                    : " and (b.bookingDate > :afterDate or b.id > :afterId)");
+        }
+        jpql.append(status != null
+                ? " order by b.municipality, b.status, b.bookingDate, b.id"
+                : " order by b.municipality, b.bookingDate, b.id");
+
+        TypedQuery<StaffBookingDTO> query = entityManager.createQuery(jpql.toString(), StaffBookingDTO.class)
+                .setParameter("municipality", municipality);
+        if (fromDate != null) {
+            query.setParameter("fromDate", fromDate);
+        }
+        if (toDate != null) {
+            query.setParameter("toDate", toDate);
+        }
+        if (afterDate != null) {
+            query.setParameter("afterDate", afterDate);
+            if (afterId != null) {
+                query.setParameter("afterId", afterId);
+            }
+        }
+        if (limit.isLimited()) {
+            query.setMaxResults(limit.max());
+        }
+        return query.getResultList();
+    }
+}
@@ -0,0 +1,11 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.time.LocalDate;
+
+// Um booking mudado por uma mudança de estado em massa: o estado de onde saiu e a versão com que ficou.
+public record StatusChange(Long id, String bookingToken, String municipality, LocalDate bookingDate,
+                           TimeSlot timeSlot, BookingStatus previousStatus, Long version) {
+}
@@ -0,0 +1,193 @@
+package pt.zeromonos.garbagecollection.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pt.zeromonos.garbagecollection.config.AdmissionProperties;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Controlo de admissão à frente da criação de bookings: um token bucket por cliente e um limite
+ * global de pedidos em curso. Nada aqui usa locks.
+ *
+ * O bucket é guardado como um único long (GCRA): o instante teórico em que o bucket volta a estar
+ * cheio. Cada pedido admitido avança esse instante um intervalo (1 / refillPerSecond) com um CAS;
+ * se isso o levar mais de "burst" intervalos para o futuro, o pedido é recusado e a diferença é o
+ * Retry-After. Um cliente novo e um cliente parado há muito tempo são o mesmo caso (bucket cheio),
+ * por isso evictIdle() pode remover as entradas paradas sem mudar o comportamento.
+ *
+ * O POST /batch gasta um token por booking. Um batch maior do que a rajada só entra com o bucket cheio
+ * e deixa-o em dívida: o cliente espera a reposição dos tokens que faltavam antes do pedido seguinte,
+ * por isso o ritmo a longo prazo continua a ser refillPerSecond bookings por segundo.
+ */
+@Component
+public class AdmissionControl {
+
+    // Valor devolvido por acquire() quando o pedido é admitido.
+    public static final long ADMITTED = 0;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AdmissionProperties properties;
+    private final LongSupplier clock;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final long idleNanos;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rateLimited;
+    private final Counter overloaded;
+
+    @Autowired
+    public AdmissionControl(AdmissionProperties properties, MeterRegistry registry) {
+        this(properties, registry, System::nanoTime);
+    }
+
+    AdmissionControl(AdmissionProperties properties, MeterRegistry registry, LongSupplier clock) {
+        if (properties.getBurst() < 1 || properties.getRefillPerSecond() <= 0 || properties.getMaxConcurrent() < 1) {
+            throw new IllegalArgumentException("admission.burst, refill-per-second and max-concurrent must be positive");
+        }
+        this.properties = properties;
+        this.clock = clock;
+        this.intervalNanos = Math.max(1, (long) (NANOS_PER_SECOND / properties.getRefillPerSecond()));
+        this.burstNanos = intervalNanos * properties.getBurst();
+        this.idleNanos = properties.getIdleTimeout().toNanos();
+        this.rateLimited = rejected(registry, "rate");
+        this.overloaded = rejected(registry, "concurrency");
+        Gauge.builder("bookings.admission.in_flight", inFlight, AtomicInteger::get)
+                .description("Booking creations currently admitted")
+                .register(registry);
+        Gauge.builder("bookings.admission.clients", buckets, ConcurrentHashMap::size)
+                .description("Clients with rate limit state in memory")
+                .register(registry);
+    }
+
+    /**
+     * Identifica o cliente: o primeiro endereço do header configurado (admission.client-header),
+     * se existir, ou o endereço da ligação.
+     */
+    public String clientKey(HttpServletRequest request) {
+        String header = properties.getClientHeader();
+        if (header != null && !header.isBlank()) {
+            String forwarded = request.getHeader(header);
+            if (forwarded != null && !forwarded.isBlank()) {
+                int comma = forwarded.indexOf(',');
+                return (comma < 0 ? forwarded : forwarded.substring(0, comma)).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * Tenta admitir um pedido do cliente. Devolve ADMITTED (e quem chama tem de chamar release() no fim)
+     * ou o número de segundos que o cliente deve esperar antes de tentar outra vez.
+     */
+    public long acquire(String client) {
+        return acquire(client, 1);
+    }
+
+    /**
+     * Como acquire(client), mas gasta um token por permit (um por booking de um batch).
+     */
+    public long acquire(String client, int permits) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("permits must be positive: " + permits);
+        }
+        if (!properties.isEnabled()) {
+            return ADMITTED;
+        }
+        // Primeiro o limite global: um pedido recusado por excesso de carga não gasta tokens do cliente.
+        if (!enter()) {
+            overloaded.increment();
+            return 1;
+        }
+        long waitNanos = takeTokens(client, permits);
+        if (waitNanos > 0) {
+            inFlight.decrementAndGet();
+            rateLimited.increment();
+            return Math.max(1, (waitNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+        }
+        return ADMITTED;
+    }
+
+    public void release() {
+        if (properties.isEnabled()) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Remove os clientes cujo bucket está cheio há mais de admission.idle-timeout. Devolve quantos saíram.
+     *
+     * Um pedido que já tinha a referência para o bucket removido ainda faz o CAS nele, e esse token
+     * perde-se; como o bucket estava cheio, o cliente ganha no máximo um pedido extra.
+     */
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public int evictIdle() {
+        long cutoff = clock.getAsLong() - idleNanos;
+        int before = buckets.size();
+        buckets.entrySet().removeIf(entry -> entry.getValue().get() - cutoff < 0);
+        return before - buckets.size();
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    private boolean enter() {
+        int max = properties.getMaxConcurrent();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= max) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Devolve 0 se consumiu os tokens, senão os nanossegundos até haver os suficientes (ou, para um pedido
+    // maior do que a rajada, até o bucket estar cheio).
+    private long takeTokens(String client, int permits) {
+        long costNanos = intervalNanos * permits;
+        long limitNanos = Math.max(burstNanos, costNanos);
+        long now = clock.getAsLong();
+        AtomicLong bucket = buckets.get(client);
+        if (bucket == null) {
+            // putIfAbsent em vez de computeIfAbsent: o caminho normal (cliente conhecido) é só um get().
+            AtomicLong created = new AtomicLong(now);
+            bucket = buckets.putIfAbsent(client, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        while (true) {
+            long full = bucket.get();
+            long next = Math.max(full - now, 0) + now + costNanos;
+            long excess = next - now - limitNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (bucket.compareAndSet(full, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private static Counter rejected(MeterRegistry registry, String reason) {
+        return Counter.builder("bookings.admission.rejected")
+                .tag("reason", reason)
+                .description("Booking creations rejected with 429")
+                .register(registry);
+    }
+}
@@ -0,0 +1,10 @@
+package pt.zeromonos.garbagecollection.service;
+
+// Lançada quando uma mudança de estado não se pode aplicar porque outro pedido mudou o booking depois da
+// versão que o cliente viu.
+public class BookingConflictException extends RuntimeException {
+
+    public BookingConflictException(String message) {
+        super(message);
+    }
+}
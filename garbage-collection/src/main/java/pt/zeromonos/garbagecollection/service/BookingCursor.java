@@ -0,0 +1,37 @@
+package pt.zeromonos.garbagecollection.service;
+
+import pt.zeromonos.garbagecollection.dto.StaffBookingDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Posição opaca na listagem paginada da equipa: o último (bookingDate, id) devolvido.
+ * Vai para o cliente em Base64 URL-safe para não expor o formato.
+ */
+record BookingCursor(LocalDate bookingDate, Long id) {
+
+    static BookingCursor after(StaffBookingDTO booking) {
+        return new BookingCursor(booking.bookingDate(), booking.id());
+    }
+
+    String encode() {
+        String raw = bookingDate + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static BookingCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new BookingCursor(LocalDate.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+        } catch (DateTimeParseException | IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, ex);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package pt.zeromonos.garbagecollection.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.repository.BookingStore;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Exporta agendamentos diretamente para o OutputStream da resposta, linha a linha.
+ * Lê com um cursor (Stream do repositório) e limpa o persistence context a cada bloco,
+ * por isso a memória usada não depende do número de linhas exportadas.
+ *
+ * O token do cidadão não é exportado.
+ */
+@Service
+public class BookingExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookingExportService.class);
+    private static final int CLEAR_EVERY = 500;
+    private static final String[] COLUMNS = {
+            "id", "municipality", "itemDescription", "fullAddress", "bookingDate",
+            "timeSlot", "status", "createdAt", "lastUpdatedAt"
+    };
+
+    public enum ExportFormat {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        ExportFormat(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public static ExportFormat from(String value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Export format is required");
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Unsupported export format: " + value);
+            }
+        }
+    }
+
+    private final BookingStore bookingRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    public BookingExportService(BookingStore bookingRepository, EntityManager entityManager,
+                                ObjectMapper objectMapper) {
+        this.bookingRepository = bookingRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional(readOnly = true)
+    public long export(String municipality, LocalDate fromDate, LocalDate toDate, ExportFormat format,
+                       OutputStream out) throws IOException {
+        long rows = 0;
+        try (Stream<BookingRequest> bookings = bookingRepository.streamForExport(municipality, fromDate, toDate)) {
+            Iterator<BookingRequest> iterator = bookings.iterator();
+            if (format == ExportFormat.NDJSON) {
+                rows = writeNdjson(iterator, out);
+            } else {
+                rows = writeCsv(iterator, out);
+            }
+        }
+        logger.info("Exported {} bookings as {}", rows, format);
+        return rows;
+    }
+
+    private long writeNdjson(Iterator<BookingRequest> bookings, OutputStream out) throws IOException {
+        long rows = 0;
+        // Um único gerador para o stream todo; cada booking é um objeto JSON numa linha.
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            // Sem o espaço que o Jackson põe entre valores de topo: o separador é o '\n' escrito abaixo.
+            generator.setRootValueSeparator(null);
+            while (bookings.hasNext()) {
+                BookingRequest b = bookings.next();
+                generator.writeStartObject();
+                generator.writeNumberField("id", b.getId());
+                generator.writeStringField("municipality", b.getMunicipality());
+                generator.writeStringField("itemDescription", b.getItemDescription());
+                generator.writeStringField("fullAddress", b.getFullAddress());
+                generator.writeStringField("bookingDate", toString(b.getBookingDate()));
+                generator.writeStringField("timeSlot", toString(b.getTimeSlot()));
+                generator.writeStringField("status", toString(b.getStatus()));
+                generator.writeStringField("createdAt", toString(b.getCreatedAt()));
+                generator.writeStringField("lastUpdatedAt", toString(b.getLastUpdatedAt()));
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+                rows = afterRow(rows, generator::flush);
+            }
+        }
+        return rows;
+    }
+
+    private long writeCsv(Iterator<BookingRequest> bookings, OutputStream out) throws IOException {
+        long rows = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(String.join(",", COLUMNS));
+        writer.write("\r\n");
+        while (bookings.hasNext()) {
+            BookingRequest b = bookings.next();
+            writeCsvRow(writer,
+                    toString(b.getId()), b.getMunicipality(), b.getItemDescription(), b.getFullAddress(),
+                    toString(b.getBookingDate()), toString(b.getTimeSlot()), toString(b.getStatus()),
+                    toString(b.getCreatedAt()), toString(b.getLastUpdatedAt()));
+            rows = afterRow(rows, writer::flush);
+        }
+        writer.flush();
+        return rows;
+    }
+
+    private interface Flush {
+        void flush() throws IOException;
+    }
+
+    // A cada bloco: envia o que está no buffer e larga as entidades já escritas.
+    private long afterRow(long rows, Flush flush) throws IOException {
+        rows++;
+        if (rows % CLEAR_EVERY == 0) {
+            flush.flush();
+            entityManager.clear();
+        }
+        return rows;
+    }
+
+    private static void writeCsvRow(Writer writer, String... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escapeCsv(values[i]));
+        }
+        writer.write("\r\n");
+    }
+
+    // Texto vindo do cidadão (descrição, morada) que comece por =, +, -, @, tab ou CR seria lido como fórmula
+    // pelo Excel/LibreOffice: leva um ' à frente e vai sempre entre aspas.
+    static String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        boolean formula = !value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0;
+        if (formula) {
+            value = "'" + value;
+        }
+        boolean quote = formula || value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+
+    private static String toString(Object value) {
+        return value == null ? null : value.toString();
+    }
+}
@@ -0,0 +1,421 @@
+package pt.zeromonos.garbagecollection.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pt.zeromonos.garbagecollection.config.HistoryProperties;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.BookingTokens;
+import pt.zeromonos.garbagecollection.dto.StatusHistoryEntryDTO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Histórico de estados dos bookings num log só de acréscimo, fora da base de dados.
+ *
+ * Cada transição é um registo de tamanho fixo [sequência][token 16 bytes][estado][instante][sequência anterior
+ * do mesmo booking], escrito sequencialmente num segmento mapeado em memória. O índice em memória guarda a
+ * última sequência de cada token; o histórico lê-se seguindo a cadeia de "sequência anterior" para trás,
+ * sem tocar na tabela bookings. O índice é reconstruído no arranque com uma leitura sequencial dos segmentos.
+ *
+ * As referências são sequências lógicas e não posições no ficheiro, por isso a compactação pode juntar os
+ * segmentos antigos num só (e descartar o que passou da retenção) sem reescrever os registos mais recentes.
+ *
+ * O estado é guardado pelo ordinal: novos valores de BookingStatus só podem ser acrescentados no fim.
+ */
+@Component
+public class BookingHistoryLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookingHistoryLog.class);
+
+    static final int RECORD_BYTES = 41;
+    private static final int SEQUENCE = 0;
+    private static final int TOKEN = 8;
+    private static final int STATUS = 24;
+    private static final int TIME = 25;
+    private static final int PREVIOUS = 33;
+
+    // history-<primeira sequência>.log (segmento denso) e history-<início>-<fim>.compact (resultado da compactação).
+    private static final Pattern DENSE = Pattern.compile("history-(\\d{20})\\.log");
+    private static final Pattern COMPACTED = Pattern.compile("history-(\\d{20})-(\\d{20})\\.compact");
+    private static final BookingStatus[] STATUSES = BookingStatus.values();
+
+    /**
+     * Um segmento cobre as sequências [base, end). Nos densos o registo da sequência s está na posição
+     * s - base; nos compactados há buracos e a procura é binária.
+     */
+    static final class Segment {
+        final Path file;
+        final long base;
+        final boolean compacted;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        volatile int count;
+        long end;
+
+        Segment(Path file, long base, long end, boolean compacted, MappedByteBuffer buffer, int count) {
+            this.file = file;
+            this.base = base;
+            this.end = end;
+            this.compacted = compacted;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity() / RECORD_BYTES;
+            this.count = count;
+        }
+
+        long sequenceAt(int index) {
+            return buffer.getLong(index * RECORD_BYTES + SEQUENCE);
+        }
+
+        int indexOf(long sequence) {
+            if (!compacted) {
+                long index = sequence - base;
+                return index >= 0 && index < count ? (int) index : -1;
+            }
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long value = sequenceAt(mid);
+                if (value < sequence) {
+                    low = mid + 1;
+                } else if (value > sequence) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private final HistoryProperties properties;
+    private final ConcurrentHashMap<String, Long> lastSequence = new ConcurrentHashMap<>();
+    // Escritas sequenciais: um escritor de cada vez. ReentrantLock para não prender carrier threads.
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private volatile List<Segment> segments = List.of();
+    private Segment active;
+    private long nextSequence = 1;
+
+    public BookingHistoryLog(HistoryProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        Files.createDirectories(properties.getDir());
+        List<Segment> loaded = loadSegments();
+        for (Segment segment : loaded) {
+            for (int i = 0; i < segment.count; i++) {
+                long sequence = segment.sequenceAt(i);
+                lastSequence.put(tokenAt(segment, i), sequence);
+                nextSequence = Math.max(nextSequence, sequence + 1);
+            }
+            // Um segmento pode ter ficado vazio pela retenção: as sequências nunca voltam atrás.
+            nextSequence = Math.max(nextSequence, segment.end);
+        }
+        Segment last = loaded.isEmpty() ? null : loaded.get(loaded.size() - 1);
+        if (last != null && !last.compacted && last.count < last.capacity) {
+            active = last;
+            segments = List.copyOf(loaded);
+        } else {
+            List<Segment> withActive = new ArrayList<>(loaded);
+            active = newDenseSegment(nextSequence);
+            withActive.add(active);
+            segments = List.copyOf(withActive);
+        }
+        logger.info("Opened status history log with {} segments and {} bookings.", segments.size(), lastSequence.size());
+    }
+
+    @PreDestroy
+    void close() {
+        writeLock.lock();
+        try {
+            if (active != null) {
+                active.buffer.force();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Acrescenta uma transição ao histórico do booking.
+     */
+    public void append(String token, BookingStatus status, LocalDateTime changedAt) {
+        byte[] tokenBytes = BookingTokens.decode(token)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid booking token"));
+        long epochMillis = changedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        writeLock.lock();
+        try {
+            if (active.count == active.capacity) {
+                roll();
+            }
+            long sequence = nextSequence++;
+            int position = active.count * RECORD_BYTES;
+            MappedByteBuffer buffer = active.buffer;
+            buffer.put(position + TOKEN, tokenBytes);
+            buffer.put(position + STATUS, (byte) status.ordinal());
+            buffer.putLong(position + TIME, epochMillis);
+            buffer.putLong(position + PREVIOUS, lastSequence.getOrDefault(token, 0L));
+            // A sequência é o último campo escrito: um registo com sequência 0 é tratado como vazio.
+            buffer.putLong(position + SEQUENCE, sequence);
+            active.count++;
+            active.end = sequence + 1;
+            lastSequence.put(token, sequence);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Histórico do booking, do mais antigo para o mais recente. Vazio se o token não tiver transições.
+     */
+    public List<StatusHistoryEntryDTO> read(String token) {
+        Long sequence = lastSequence.get(token);
+        if (sequence == null) {
+            return List.of();
+        }
+        List<Segment> snapshot = segments;
+        List<StatusHistoryEntryDTO> history = new ArrayList<>();
+        long current = sequence;
+        while (current > 0) {
+            Segment segment = segmentFor(snapshot, current);
+            int index = segment == null ? -1 : segment.indexOf(current);
+            if (index < 0) {
+                // Já descartado pela compactação.
+                break;
+            }
+            int position = index * RECORD_BYTES;
+            BookingStatus status = STATUSES[segment.buffer.get(position + STATUS)];
+            LocalDateTime changedAt = LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(segment.buffer.getLong(position + TIME)), ZoneId.systemDefault());
+            history.add(new StatusHistoryEntryDTO(status, changedAt));
+            current = segment.buffer.getLong(position + PREVIOUS);
+        }
+        Collections.reverse(history);
+        return history;
+    }
+
+    /**
+     * Junta todos os segmentos fechados num único segmento compactado, sem as transições mais antigas do
+     * que a retenção. O segmento ativo não é tocado, por isso as escritas continuam durante a compactação.
+     */
+    @Scheduled(cron = "0 30 3 * * *")
+    public void compact() {
+        List<Segment> sealed;
+        writeLock.lock();
+        try {
+            Segment current = active;
+            sealed = segments.stream().filter(segment -> segment != current).toList();
+        } finally {
+            writeLock.unlock();
+        }
+        long cutoff = Instant.now().minus(properties.getRetention()).toEpochMilli();
+        int kept = 0;
+        int total = 0;
+        for (Segment segment : sealed) {
+            for (int i = 0; i < segment.count; i++) {
+                total++;
+                if (segment.buffer.getLong(i * RECORD_BYTES + TIME) >= cutoff) {
+                    kept++;
+                }
+            }
+        }
+        if (sealed.isEmpty() || (sealed.size() == 1 && sealed.get(0).compacted && kept == total)) {
+            return;
+        }
+
+        long base = sealed.get(0).base;
+        long end = sealed.get(sealed.size() - 1).end;
+        try {
+            Segment compacted = kept == 0 ? null : writeCompacted(sealed, base, end, cutoff, kept);
+            writeLock.lock();
+            try {
+                List<Segment> replaced = new ArrayList<>();
+                if (compacted != null) {
+                    replaced.add(compacted);
+                }
+                segments.stream().filter(segment -> !sealed.contains(segment)).forEach(replaced::add);
+                segments = List.copyOf(replaced);
+            } finally {
+                writeLock.unlock();
+            }
+            // Tokens cuja última transição foi descartada deixam de ter histórico.
+            lastSequence.entrySet().removeIf(entry -> entry.getValue() < end
+                    && (compacted == null || compacted.indexOf(entry.getValue()) < 0));
+            for (Segment segment : sealed) {
+                deleteQuietly(segment.file);
+            }
+            logger.info("Compacted {} history segments: kept {} of {} transitions.", sealed.size(), kept, total);
+        } catch (IOException ex) {
+            logger.error("Failed to compact the status history log", ex);
+        }
+    }
+
+    private Segment writeCompacted(List<Segment> sealed, long base, long end, long cutoff, int kept) throws IOException {
+        Path target = properties.getDir().resolve(String.format("history-%020d-%020d.compact", base, end));
+        Path tmp = properties.getDir().resolve(target.getFileName() + ".tmp");
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Segment segment : sealed) {
+                for (int i = 0; i < segment.count; i++) {
+                    int position = i * RECORD_BYTES;
+                    if (segment.buffer.getLong(position + TIME) < cutoff) {
+                        continue;
+                    }
+                    record.clear();
+                    segment.buffer.get(position, record.array(), 0, RECORD_BYTES);
+                    while (record.hasRemaining()) {
+                        channel.write(record);
+                    }
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return new Segment(target, base, end, true, map(target, (long) kept * RECORD_BYTES, FileChannel.MapMode.READ_ONLY), kept);
+    }
+
+    // Chamado com o writeLock adquirido.
+    private void roll() {
+        active.buffer.force();
+        try {
+            Segment next = newDenseSegment(nextSequence);
+            List<Segment> withNext = new ArrayList<>(segments);
+            withNext.add(next);
+            segments = List.copyOf(withNext);
+            active = next;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not create a new history segment", ex);
+        }
+    }
+
+    private Segment newDenseSegment(long base) throws IOException {
+        Path file = properties.getDir().resolve(String.format("history-%020d.log", base));
+        long size = Math.max(1, properties.getSegmentBytes() / RECORD_BYTES) * RECORD_BYTES;
+        return new Segment(file, base, base, false, map(file, size, FileChannel.MapMode.READ_WRITE), 0);
+    }
+
+    private List<Segment> loadSegments() throws IOException {
+        List<Segment> loaded = new ArrayList<>();
+        List<long[]> compactedRanges = new ArrayList<>();
+        List<Path> files;
+        try (Stream<Path> list = Files.list(properties.getDir())) {
+            files = list.toList();
+        }
+        for (Path file : files) {
+            Matcher matcher = COMPACTED.matcher(file.getFileName().toString());
+            if (matcher.matches()) {
+                compactedRanges.add(new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))});
+            }
+        }
+        for (Path file : files) {
+            Matcher matcher = COMPACTED.matcher(file.getFileName().toString());
+            if (!matcher.matches()) {
+                continue;
+            }
+            long base = Long.parseLong(matcher.group(1));
+            long end = Long.parseLong(matcher.group(2));
+            // Um compactado antigo que não chegou a ser apagado fica dentro do intervalo de um mais recente.
+            if (compactedRanges.stream().anyMatch(range -> range[0] <= base && end <= range[1]
+                    && (range[0] != base || range[1] != end))) {
+                deleteQuietly(file);
+                continue;
+            }
+            int count = (int) (Files.size(file) / RECORD_BYTES);
+            loaded.add(new Segment(file, base, end, true,
+                    map(file, (long) count * RECORD_BYTES, FileChannel.MapMode.READ_ONLY), count));
+        }
+        for (Path file : files) {
+            Matcher matcher = DENSE.matcher(file.getFileName().toString());
+            if (!matcher.matches()) {
+                continue;
+            }
+            long base = Long.parseLong(matcher.group(1));
+            // Sobra de uma compactação interrompida depois de o segmento compactado estar no sítio.
+            if (compactedRanges.stream().anyMatch(range -> base >= range[0] && base < range[1])) {
+                deleteQuietly(file);
+                continue;
+            }
+            MappedByteBuffer buffer = map(file, Files.size(file), FileChannel.MapMode.READ_WRITE);
+            Segment segment = new Segment(file, base, base, false, buffer, 0);
+            int count = 0;
+            while (count < segment.capacity && segment.sequenceAt(count) == base + count) {
+                count++;
+            }
+            segment.count = count;
+            segment.end = base + count;
+            loaded.add(segment);
+        }
+        loaded.sort(Comparator.comparingLong(segment -> segment.base));
+        // Um segmento denso fechado cobre até ao início do seguinte.
+        for (int i = 0; i < loaded.size() - 1; i++) {
+            Segment segment = loaded.get(i);
+            if (!segment.compacted) {
+                segment.end = loaded.get(i + 1).base;
+            }
+        }
+        return loaded;
+    }
+
+    // O último segmento que começa antes da sequência; Segment.indexOf confirma se o registo lá está.
+    private static Segment segmentFor(List<Segment> snapshot, long sequence) {
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            Segment segment = snapshot.get(i);
+            if (segment.base <= sequence) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private static String tokenAt(Segment segment, int index) {
+        byte[] token = new byte[BookingTokens.BYTES];
+        segment.buffer.get(index * RECORD_BYTES + TOKEN, token);
+        return BookingTokens.encode(token);
+    }
+
+    private static MappedByteBuffer map(Path file, long size, FileChannel.MapMode mode) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            // Em Windows um ficheiro ainda mapeado não pode ser apagado; fica para a próxima compactação.
+            logger.warn("Could not delete history segment {}: {}", file.getFileName(), ex.getMessage());
+        }
+    }
+}
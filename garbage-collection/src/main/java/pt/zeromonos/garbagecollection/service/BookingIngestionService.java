@@ -0,0 +1,418 @@
+package pt.zeromonos.garbagecollection.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import pt.zeromonos.garbagecollection.config.IngestionProperties;
+import pt.zeromonos.garbagecollection.config.IngestionProperties.Mode;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.event.BookingChangedEvent;
+import pt.zeromonos.garbagecollection.repository.BookingStore;
+import pt.zeromonos.garbagecollection.service.BookingJournal.Entry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modo de ingestão write-behind (ingestion.mode=journal).
+ *
+ * O pedido valida e reserva o slot como no modo síncrono, escreve o booking no BookingJournal e
+ * responde assim que o fsync do grupo termina. Uma única thread ("booking-ingest") esvazia o journal
+ * para a base de dados em batches (saveAll) e avança o checkpoint depois de cada commit.
+ *
+ * Sem perdas nem duplicados no arranque: as entradas depois do checkpoint são reaplicadas, mas antes
+ * de cada batch os tokens que já existem na base de dados (commit feito, checkpoint ainda não) são
+ * ignorados. Enquanto não chegam à base de dados, os bookings ficam em "pending" e as consultas por
+ * token veem-nos a partir daí.
+ *
+ * Se um batch falha, as entradas são repetidas uma a uma; a que a base de dados continuar a recusar
+ * (ingestion.max-attempts) vai para o dead-letter do journal, devolve o lugar e o checkpoint passa-lhe à frente.
+ *
+ * O que vem depois do commit (cache, histórico, resumo, métricas, evento) não passa por esse retry: o booking
+ * já está na base de dados e o retry ignorá-lo-ia. Se falhar, o booking gravado fica em "unapplied" e só esse
+ * passo é repetido, até ingestion.max-attempts vezes.
+ */
+@Service
+public class BookingIngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookingIngestionService.class);
+
+    private final IngestionProperties properties;
+    private final BookingStore bookingRepository;
+    private final SlotCapacityService slotCapacityService;
+    private final BookingTokenCache tokenCache;
+    private final BookingMetrics bookingMetrics;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final BookingHistoryLog historyLog;
+    private final ScheduleSummaryService scheduleSummary;
+
+    private final ConcurrentHashMap<String, BookingRequest> pending = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<Entry> durable = new LinkedBlockingQueue<>();
+    // Falhas por sequência das entradas que a base de dados recusou; só a thread "booking-ingest" lhe mexe.
+    private final Map<Long, Integer> failures = new HashMap<>();
+    // Última sequência tirada da fila para o batch atual. As entradas resolvidas saem do batch durante as
+    // repetições, por isso o fim do batch não serve para o checkpoint. Também só da thread "booking-ingest".
+    private long drainedUpTo;
+    // Bookings já gravados cujo applied() falhou, com as tentativas feitas. Também só da thread "booking-ingest".
+    private final List<Unapplied> unapplied = new ArrayList<>();
+    private final Counter deadLetters;
+    private final Counter applyFailures;
+
+    private record Unapplied(BookingRequest booking, int attempts) {
+    }
+
+    private BookingJournal journal;
+    private Thread drainer;
+    private volatile boolean running;
+
+    public BookingIngestionService(IngestionProperties properties, BookingStore bookingRepository,
+                                   SlotCapacityService slotCapacityService, BookingTokenCache tokenCache,
+                                   BookingMetrics bookingMetrics, ApplicationEventPublisher eventPublisher,
+                                   ObjectMapper objectMapper, BookingHistoryLog historyLog,
+                                   ScheduleSummaryService scheduleSummary, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.bookingRepository = bookingRepository;
+        this.slotCapacityService = slotCapacityService;
+        this.tokenCache = tokenCache;
+        this.bookingMetrics = bookingMetrics;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.historyLog = historyLog;
+        this.scheduleSummary = scheduleSummary;
+        Gauge.builder("bookings.ingestion.pending", pending, ConcurrentHashMap::size)
+                .description("Bookings accepted into the journal and not yet written to the database")
+                .register(meterRegistry);
+        this.deadLetters = Counter.builder("bookings.ingestion.dead_letters")
+                .description("Journaled bookings the database kept rejecting, moved to the dead-letter file")
+                .register(meterRegistry);
+        this.applyFailures = Counter.builder("bookings.ingestion.apply_failures")
+                .description("Journaled bookings written to the database whose history, summary or event was not applied")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.getMode() == Mode.JOURNAL;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        journal = new BookingJournal(properties.getJournalDir(), objectMapper, properties.getSegmentBytes());
+        recover(journal.recover());
+        journal.start(this::onDurable);
+
+        running = true;
+        drainer = new Thread(this::drainLoop, "booking-ingest");
+        drainer.setDaemon(true);
+        drainer.start();
+        logger.info("Journal ingestion enabled in {}", properties.getJournalDir().toAbsolutePath());
+    }
+
+    @PreDestroy
+    void stop() {
+        if (!isEnabled()) {
+            return;
+        }
+        // O que ainda não chegou à base de dados fica no journal e é reaplicado no próximo arranque.
+        running = false;
+        if (journal != null) {
+            journal.close();
+        }
+        if (drainer != null) {
+            drainer.interrupt();
+            try {
+                drainer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Escreve o booking (já validado e com o slot reservado) no journal e espera pelo fsync.
+     */
+    public BookingRequest submit(BookingRequest booking) {
+        try {
+            journal.append(Entry.of(booking)).join();
+        } catch (CompletionException ex) {
+            throw new IllegalStateException("Could not write booking to the journal", ex.getCause());
+        }
+        return booking;
+    }
+
+    public Optional<BookingRequest> findPending(String token) {
+        return Optional.ofNullable(pending.get(token));
+    }
+
+    /**
+     * Entradas do journal por aplicar no arranque. As que já estão na base de dados (commit feito, checkpoint
+     * ainda não) não são inseridas; o resumo e os contadores de capacidade já as contam porque são carregados
+     * da base de dados, mas o histórico é um ficheiro à parte e a queda pode ter sido antes do append.
+     */
+    private void recover(List<Entry> unapplied) throws IOException {
+        if (unapplied.isEmpty()) {
+            return;
+        }
+        Set<String> existing = existingTokens(unapplied);
+        int replayed = 0;
+        for (Entry entry : unapplied) {
+            if (existing.contains(entry.bookingToken())) {
+                // Idempotente: só acrescenta se o booking ainda não tiver nenhuma transição.
+                if (historyLog.read(entry.bookingToken()).isEmpty()) {
+                    historyLog.append(entry.bookingToken(), BookingStatus.RECEIVED, entry.createdAt());
+                }
+                continue;
+            }
+            // Os contadores de capacidade foram carregados da base de dados, onde estes bookings ainda não estão.
+            slotCapacityService.forceReserve(entry.municipality(), entry.bookingDate(), entry.timeSlot());
+            pending.put(entry.bookingToken(), entry.toBooking());
+            replayed++;
+        }
+        // Todas voltam à fila (por ordem) para o checkpoint avançar; as que já existem não são inseridas.
+        durable.addAll(unapplied);
+        logger.info("Replaying {} journaled bookings ({} already in the database).", replayed, unapplied.size() - replayed);
+    }
+
+    // Chamado pela thread do journal depois do fsync, por ordem de sequência.
+    private void onDurable(List<Entry> entries) {
+        for (Entry entry : entries) {
+            pending.put(entry.bookingToken(), entry.toBooking());
+        }
+        durable.addAll(entries);
+    }
+
+    private void drainLoop() {
+        List<Entry> batch = new ArrayList<>(properties.getBatchSize());
+        while (running) {
+            try {
+                if (unapplied.isEmpty()) {
+                    batch.add(durable.take());
+                } else {
+                    retryUnapplied();
+                    Entry next = durable.poll(properties.getRetryDelay().toMillis(), TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        continue;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            durable.drainTo(batch, properties.getBatchSize() - 1);
+            drainedUpTo = batch.get(batch.size() - 1).sequence();
+            while (running) {
+                apply(batch);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                try {
+                    Thread.sleep(properties.getRetryDelay().toMillis());
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Grava o batch e avança o checkpoint. Tira do batch as entradas resolvidas (gravadas, já existentes ou
+     * enviadas para o dead-letter); as que lá ficam são repetidas depois do retryDelay.
+     */
+    private void apply(List<Entry> batch) {
+        List<BookingRequest> saved;
+        try {
+            saved = insertAndApply(batch);
+        } catch (RuntimeException ex) {
+            logger.warn("Failed to write {} journaled bookings as one batch; retrying them one by one", batch.size(), ex);
+            applyOneByOne(batch);
+            return;
+        }
+        batch.forEach(entry -> {
+            pending.remove(entry.bookingToken());
+            failures.remove(entry.sequence());
+        });
+        advanceCheckpoint(drainedUpTo);
+        logger.debug("Applied {} journaled bookings up to sequence {}", saved.size(), drainedUpTo);
+        batch.clear();
+    }
+
+    /**
+     * Depois de um batch falhado cada entrada vai sozinha, para uma entrada que a base de dados recusa não
+     * bloquear as outras. Se a base de dados não estiver acessível pára logo e o resto fica para a próxima volta.
+     * O checkpoint avança até antes da primeira entrada por resolver: as gravadas depois dela são reaplicadas
+     * num arranque, mas aí já existem e são ignoradas.
+     */
+    private void applyOneByOne(List<Entry> batch) {
+        List<Entry> remaining = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Entry entry = batch.get(i);
+            try {
+                insertAndApply(List.of(entry));
+                pending.remove(entry.bookingToken());
+                failures.remove(entry.sequence());
+            } catch (RuntimeException ex) {
+                if (databaseUnavailable(ex)) {
+                    logger.error("Database unavailable while writing journaled bookings; retrying in {}",
+                            properties.getRetryDelay(), ex);
+                    remaining.addAll(batch.subList(i, batch.size()));
+                    break;
+                }
+                int attempts = failures.merge(entry.sequence(), 1, Integer::sum);
+                if (attempts < properties.getMaxAttempts()) {
+                    logger.warn("Journaled booking {} was rejected by the database (attempt {} of {})",
+                            entry.sequence(), attempts, properties.getMaxAttempts(), ex);
+                    remaining.add(entry);
+                } else if (!deadLetter(entry, ex)) {
+                    remaining.add(entry);
+                }
+            }
+        }
+
+        long upTo = remaining.isEmpty() ? drainedUpTo : remaining.get(0).sequence() - 1;
+        if (upTo >= batch.get(0).sequence()) {
+            advanceCheckpoint(upTo);
+        }
+        batch.clear();
+        batch.addAll(remaining);
+    }
+
+    // Insere e atualiza caches e agregados dentro do writing(), para um rebuild do resumo não ficar a meio.
+    // Só lança se o INSERT falhar; uma falha depois do commit fica em "unapplied".
+    private List<BookingRequest> insertAndApply(List<Entry> entries) {
+        return scheduleSummary.writing(() -> {
+            List<BookingRequest> saved = insertMissing(entries);
+            for (BookingRequest booking : saved) {
+                try {
+                    applied(booking);
+                } catch (RuntimeException ex) {
+                    logger.warn("Booking {} was written but applying it failed; retrying in {}",
+                            booking.getBookingToken(), properties.getRetryDelay(), ex);
+                    unapplied.add(new Unapplied(booking, 1));
+                }
+            }
+            return saved;
+        });
+    }
+
+    private void retryUnapplied() {
+        scheduleSummary.writing(() -> {
+            ListIterator<Unapplied> it = unapplied.listIterator();
+            while (it.hasNext()) {
+                Unapplied next = it.next();
+                BookingRequest booking = next.booking();
+                try {
+                    applied(booking);
+                    it.remove();
+                } catch (RuntimeException ex) {
+                    int attempts = next.attempts() + 1;
+                    if (attempts < properties.getMaxAttempts()) {
+                        it.set(new Unapplied(booking, attempts));
+                    } else {
+                        it.remove();
+                        applyFailures.increment();
+                        logger.error("Booking {} is in the database but applying it failed {} times; its history, "
+                                + "summary or event may be missing", booking.getBookingToken(), attempts, ex);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    // Insere as entradas cujo token ainda não está na base de dados e devolve os bookings gravados.
+    private List<BookingRequest> insertMissing(List<Entry> entries) {
+        Set<String> existing = existingTokens(entries);
+        List<BookingRequest> toInsert = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (!existing.contains(entry.bookingToken())) {
+                toInsert.add(entry.toBooking());
+            }
+        }
+        return bookingRepository.saveAll(toInsert);
+    }
+
+    // Repetível depois de uma falha: a cache é idempotente e o histórico (ficheiro, o passo que pode falhar) vem
+    // antes dos passos em memória, que assim só correm uma vez.
+    private void applied(BookingRequest booking) {
+        // Primeiro a cache, depois sai de pending: as consultas por token nunca ficam sem o ver.
+        tokenCache.put(booking);
+        historyLog.append(booking.getBookingToken(), booking.getStatus(), booking.getCreatedAt());
+        scheduleSummary.bookingCreated(booking.getMunicipality(), booking.getBookingDate(), booking.getTimeSlot(),
+                booking.getStatus());
+        bookingMetrics.bookingCreated(booking.getMunicipality());
+        eventPublisher.publishEvent(BookingChangedEvent.created(booking));
+    }
+
+    // Tira a entrada do caminho: fica no dead-letter, devolve o lugar no slot e deixa de aparecer como pendente.
+    private boolean deadLetter(Entry entry, RuntimeException cause) {
+        try {
+            journal.deadLetter(entry, NestedExceptionUtils.getMostSpecificCause(cause).getMessage());
+        } catch (IOException ex) {
+            logger.error("Could not write journaled booking {} to the dead-letter file", entry.sequence(), ex);
+            return false;
+        }
+        failures.remove(entry.sequence());
+        pending.remove(entry.bookingToken());
+        slotCapacityService.release(entry.municipality(), entry.bookingDate(), entry.timeSlot());
+        deadLetters.increment();
+        logger.error("Journaled booking {} failed {} times and was moved to {}", entry.sequence(),
+                properties.getMaxAttempts(), journal.deadLetterFile());
+        return true;
+    }
+
+    private void advanceCheckpoint(long applied) {
+        try {
+            journal.writeCheckpoint(applied);
+            journal.deleteAppliedSegments(applied);
+        } catch (IOException ex) {
+            // Não perde dados: no arranque estas entradas são ignoradas por já estarem na base de dados.
+            logger.warn("Could not advance the journal checkpoint to {}", applied, ex);
+        }
+    }
+
+    // Falhas que não dependem da entrada (ligação, timeout, lock): repetem-se sem contar para o dead-letter.
+    private static boolean databaseUnavailable(RuntimeException ex) {
+        return ex instanceof TransientDataAccessException
+                || ex instanceof RecoverableDataAccessException
+                || ex instanceof DataAccessResourceFailureException
+                || ex instanceof CannotCreateTransactionException;
+    }
+
+    private Set<String> existingTokens(List<Entry> entries) {
+        List<String> tokens = new ArrayList<>(entries.size());
+        entries.forEach(entry -> tokens.add(entry.bookingToken()));
+        Set<String> existing = new HashSet<>();
+        int chunk = Math.max(1, properties.getBatchSize());
+        for (int from = 0; from < tokens.size(); from += chunk) {
+            existing.addAll(bookingRepository.findExistingTokens(tokens.subList(from, Math.min(tokens.size(), from + chunk))));
+        }
+        return existing;
+    }
+}
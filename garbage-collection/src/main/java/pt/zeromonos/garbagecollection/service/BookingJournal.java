@@ -0,0 +1,391 @@
+package pt.zeromonos.garbagecollection.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Journal local, só de acréscimo, dos bookings aceites em modo JOURNAL.
+ *
+ * Cada registo é [tamanho:int][crc32:int][entrada em JSON]. Uma única thread ("booking-journal") escreve:
+ * junta todos os pedidos que chegaram enquanto o fsync anterior decorria, escreve-os de uma vez e faz
+ * um único force(), por isso o custo do fsync é partilhado pelo grupo. Só depois do fsync os pedidos
+ * são confirmados e as entradas entregues (por ordem de sequência) a quem as vai aplicar.
+ *
+ * O journal está dividido em segmentos journal-&lt;primeira sequência&gt;.log; o checkpoint guarda a última
+ * sequência já aplicada na base de dados e os segmentos totalmente aplicados são apagados.
+ */
+final class BookingJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookingJournal.class);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String DEAD_LETTER_FILE = "dead-letter.jsonl";
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int MAX_GROUP = 1024;
+    // Intervalo com que a thread de escrita verifica se o journal foi fechado.
+    private static final long CLOSE_POLL_MILLIS = 100;
+
+    record Entry(long sequence, String bookingToken, String itemDescription, String municipality,
+                 String fullAddress, LocalDate bookingDate, TimeSlot timeSlot, LocalDateTime createdAt) {
+
+        static Entry of(BookingRequest booking) {
+            return new Entry(0, booking.getBookingToken(), booking.getItemDescription(), booking.getMunicipality(),
+                    booking.getFullAddress(), booking.getBookingDate(), booking.getTimeSlot(), booking.getCreatedAt());
+        }
+
+        Entry withSequence(long newSequence) {
+            return new Entry(newSequence, bookingToken, itemDescription, municipality, fullAddress, bookingDate,
+                    timeSlot, createdAt);
+        }
+
+        BookingRequest toBooking() {
+            BookingRequest booking = new BookingRequest();
+            booking.setBookingToken(bookingToken);
+            booking.setItemDescription(itemDescription);
+            booking.setMunicipality(municipality);
+            booking.setFullAddress(fullAddress);
+            booking.setBookingDate(bookingDate);
+            booking.setTimeSlot(timeSlot);
+            booking.setStatus(BookingStatus.RECEIVED);
+            booking.setCreatedAt(createdAt);
+            booking.setLastUpdatedAt(createdAt);
+            return booking;
+        }
+    }
+
+    // Linha do dead-letter.
+    record DeadLetter(Entry entry, String reason, LocalDateTime failedAt) {
+    }
+
+    private record Append(Entry entry, CompletableFuture<Entry> done) {
+    }
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final long segmentBytes;
+    private final LinkedBlockingQueue<Append> queue = new LinkedBlockingQueue<>();
+
+    private Thread writer;
+    private volatile boolean closed;
+    private FileChannel active;
+    private long nextSequence = 1;
+
+    BookingJournal(Path directory, ObjectMapper objectMapper, long segmentBytes) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Lê os segmentos existentes e devolve as entradas depois do checkpoint, por ordem.
+     * Um registo incompleto no fim do último segmento (queda a meio de uma escrita) é cortado:
+     * esse pedido nunca foi confirmado ao cliente. Tem de ser chamado antes de start().
+     */
+    List<Entry> recover() throws IOException {
+        Files.createDirectories(directory);
+        long checkpoint = readCheckpoint();
+        List<Path> segments = segments();
+        List<Entry> unapplied = new ArrayList<>();
+        long lastSequence = checkpoint;
+        for (int i = 0; i < segments.size(); i++) {
+            boolean last = i == segments.size() - 1;
+            for (Entry entry : readSegment(segments.get(i), last)) {
+                lastSequence = Math.max(lastSequence, entry.sequence());
+                if (entry.sequence() > checkpoint) {
+                    unapplied.add(entry);
+                }
+            }
+        }
+        nextSequence = lastSequence + 1;
+        return unapplied;
+    }
+
+    /**
+     * Começa a aceitar escritas. onDurable é chamado na thread do journal, depois de cada fsync,
+     * com as entradas do grupo por ordem de sequência.
+     */
+    void start(Consumer<List<Entry>> onDurable) throws IOException {
+        openSegment();
+        writer = new Thread(() -> writeLoop(onDurable), "booking-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Acrescenta a entrada; o future completa quando estiver em disco (com a sequência atribuída).
+     */
+    CompletableFuture<Entry> append(Entry entry) {
+        CompletableFuture<Entry> done = new CompletableFuture<>();
+        if (closed) {
+            done.completeExceptionally(new IllegalStateException("Booking journal is closed"));
+            return done;
+        }
+        queue.add(new Append(entry, done));
+        return done;
+    }
+
+    long readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(file, StandardCharsets.US_ASCII).trim());
+    }
+
+    // Escreve num ficheiro temporário (com fsync) e troca-o de forma atómica.
+    void writeCheckpoint(long appliedSequence) throws IOException {
+        Path tmp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(Long.toString(appliedSequence).getBytes(StandardCharsets.US_ASCII)));
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Guarda no dead-letter (uma linha JSON por entrada, com o motivo) uma entrada que não foi possível gravar
+     * na base de dados, para o checkpoint poder avançar sem a perder.
+     */
+    void deadLetter(Entry entry, String reason) throws IOException {
+        DeadLetter record = new DeadLetter(entry, reason, LocalDateTime.now());
+        byte[] line = (objectMapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(directory.resolve(DEAD_LETTER_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    Path deadLetterFile() {
+        return directory.resolve(DEAD_LETTER_FILE);
+    }
+
+    /**
+     * Apaga os segmentos cujas entradas já estão todas aplicadas. O último segmento (o ativo) nunca é apagado.
+     */
+    void deleteAppliedSegments(long appliedSequence) throws IOException {
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size() - 1; i++) {
+            long lastInSegment = firstSequence(segments.get(i + 1)) - 1;
+            if (lastInSegment > appliedSequence) {
+                return;
+            }
+            Files.deleteIfExists(segments.get(i));
+            logger.debug("Deleted applied journal segment {}", segments.get(i).getFileName());
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // Sem interrupt: um FileChannel interrompido a meio de um write/force fecha-se (ClosedByInterruptException).
+        // A thread de escrita termina o grupo em curso e sai no próximo poll.
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Append pending;
+        while ((pending = queue.poll()) != null) {
+            pending.done().completeExceptionally(new IllegalStateException("Booking journal is closed"));
+        }
+        closeActive();
+    }
+
+    private void writeLoop(Consumer<List<Entry>> onDurable) {
+        List<Append> group = new ArrayList<>(MAX_GROUP);
+        while (!closed) {
+            Append first;
+            try {
+                first = queue.poll(CLOSE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            group.add(first);
+            queue.drainTo(group, MAX_GROUP - 1);
+            writeGroup(group, onDurable);
+            group.clear();
+        }
+    }
+
+    private void writeGroup(List<Append> group, Consumer<List<Entry>> onDurable) {
+        long firstSequence = nextSequence;
+        long startPosition = -1;
+        List<Entry> written = new ArrayList<>(group.size());
+        try {
+            List<byte[]> payloads = new ArrayList<>(group.size());
+            int total = 0;
+            for (Append append : group) {
+                Entry entry = append.entry().withSequence(nextSequence++);
+                byte[] payload = objectMapper.writeValueAsBytes(entry);
+                written.add(entry);
+                payloads.add(payload);
+                total += HEADER_BYTES + payload.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(total);
+            CRC32 crc = new CRC32();
+            for (byte[] payload : payloads) {
+                crc.reset();
+                crc.update(payload);
+                buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            }
+            buffer.flip();
+
+            startPosition = active.size();
+            while (buffer.hasRemaining()) {
+                active.write(buffer);
+            }
+            active.force(false);
+        } catch (IOException | RuntimeException ex) {
+            // Nenhum pedido do grupo foi confirmado: desfaz o que possa ter ficado escrito.
+            logger.error("Failed to append {} bookings to the journal", group.size(), ex);
+            nextSequence = firstSequence;
+            rollback(startPosition);
+            group.forEach(append -> append.done().completeExceptionally(ex));
+            return;
+        }
+
+        try {
+            onDurable.accept(written);
+        } finally {
+            for (int i = 0; i < group.size(); i++) {
+                group.get(i).done().complete(written.get(i));
+            }
+        }
+        rollIfFull();
+    }
+
+    private void rollback(long position) {
+        if (position < 0) {
+            return;
+        }
+        try {
+            active.truncate(position);
+            active.force(false);
+        } catch (IOException e) {
+            logger.error("Could not roll back the journal after a failed write", e);
+        }
+    }
+
+    private void rollIfFull() {
+        try {
+            if (active.size() >= segmentBytes) {
+                closeActive();
+                openSegment();
+            }
+        } catch (IOException e) {
+            logger.error("Could not roll the journal to a new segment", e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        Path segment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+        active = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private void closeActive() {
+        if (active != null) {
+            try {
+                active.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close journal segment", e);
+            }
+        }
+    }
+
+    private List<Entry> readSegment(Path segment, boolean last) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            while (position < size) {
+                Entry entry = null;
+                if (size - position >= HEADER_BYTES) {
+                    header.clear();
+                    channel.read(header, position);
+                    header.flip();
+                    int length = header.getInt();
+                    int checksum = header.getInt();
+                    if (length > 0 && position + HEADER_BYTES + length <= size) {
+                        ByteBuffer payload = ByteBuffer.allocate(length);
+                        channel.read(payload, position + HEADER_BYTES);
+                        crc.reset();
+                        crc.update(payload.array());
+                        if ((int) crc.getValue() == checksum) {
+                            entry = objectMapper.readValue(payload.array(), Entry.class);
+                        }
+                    }
+                    if (entry != null) {
+                        position += HEADER_BYTES + length;
+                    }
+                }
+                if (entry == null) {
+                    if (!last) {
+                        throw new IOException("Corrupted journal segment " + segment + " at offset " + position);
+                    }
+                    logger.warn("Truncating incomplete journal record in {} at offset {}", segment.getFileName(), position);
+                    channel.truncate(position);
+                    channel.force(false);
+                    break;
+                }
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
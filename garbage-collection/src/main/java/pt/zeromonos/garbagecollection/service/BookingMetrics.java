@@ -0,0 +1,55 @@
+package pt.zeromonos.garbagecollection.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Contadores de negócio do BookingService: bookings criados por município e transições de estado, e as
+ * transições que não chegaram ao histórico.
+ * Os municípios são sempre o nome canónico, por isso a cardinalidade fica limitada à lista da GeoAPI.
+ * Os Counter são guardados para não fazer o lookup no registry em cada pedido.
+ */
+@Component
+public class BookingMetrics {
+
+    private final MeterRegistry registry;
+    private final ConcurrentHashMap<String, Counter> createdByMunicipality = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> transitions = new ConcurrentHashMap<>();
+    private final Counter historyAppendFailures;
+
+    public BookingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.historyAppendFailures = Counter.builder("bookings.history.append_failures")
+                .description("Committed booking changes that could not be written to the status history")
+                .register(registry);
+    }
+
+    public void bookingCreated(String municipality) {
+        // Não "bookings.created": o sufixo _created é reservado no formato Prometheus/OpenMetrics.
+        createdByMunicipality.computeIfAbsent(municipality, name -> Counter.builder("bookings.new")
+                .tag("municipality", name)
+                .description("Bookings created")
+                .register(registry)).increment();
+    }
+
+    public void statusChanged(BookingStatus from, BookingStatus to) {
+        statusChanged(from, to, 1);
+    }
+
+    // Nas alterações em massa: count bookings que saíram de from para to.
+    public void statusChanged(BookingStatus from, BookingStatus to, int count) {
+        transitions.computeIfAbsent(from.name() + '>' + to.name(), key -> Counter.builder("bookings.status.transitions")
+                .tag("from", from.name())
+                .tag("to", to.name())
+                .description("Booking status changes")
+                .register(registry)).increment(count);
+    }
+
+    public void historyAppendFailed() {
+        historyAppendFailures.increment();
+    }
+}
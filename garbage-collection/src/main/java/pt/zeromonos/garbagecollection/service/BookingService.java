@@ -3,38 +3,188 @@ package pt.zeromonos.garbagecollection.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import pt.zeromonos.garbagecollection.domain.BookingRequest;
 import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.BookingTokens;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.BatchBookingResultDTO;
+import pt.zeromonos.garbagecollection.dto.BookingLookupDTO;
+import pt.zeromonos.garbagecollection.dto.BookingPageDTO;
+import pt.zeromonos.garbagecollection.dto.CacheStatsDTO;
 import pt.zeromonos.garbagecollection.dto.BookingRequestDTO;
-import pt.zeromonos.garbagecollection.repository.BookingRequestRepository;
+import pt.zeromonos.garbagecollection.dto.BulkStatusUpdateDTO;
+import pt.zeromonos.garbagecollection.dto.ScheduleSummaryDTO;
+import pt.zeromonos.garbagecollection.dto.SlotAvailabilityDTO;
+import pt.zeromonos.garbagecollection.dto.StaffBookingDTO;
+import pt.zeromonos.garbagecollection.dto.StatusHistoryEntryDTO;
+import pt.zeromonos.garbagecollection.event.BookingChangedEvent;
+import pt.zeromonos.garbagecollection.repository.BookingStore;
+import pt.zeromonos.garbagecollection.repository.StatusChange;
 
 import jakarta.persistence.EntityNotFoundException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Objects;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class BookingService {
 
     private static final Logger logger = LoggerFactory.getLogger(BookingService.class);
+    public static final int MAX_PAGE_SIZE = 200;
+    public static final int MAX_AVAILABILITY_DAYS = 60;
+    public static final int MAX_BATCH_SIZE = 500;
+    public static final int MAX_BULK_IDS = 1000;
+    // Tamanho das colunas de texto (VARCHAR(255) por omissão do Hibernate).
+    private static final int MAX_TEXT_LENGTH = 255;
 
     @Autowired
-    private BookingRequestRepository bookingRepository;
+    private BookingStore bookingRepository;
 
     @Autowired
     private GeoApiService geoApiService;
 
-    public List<String> getAvailableMunicipalities() {
-        return geoApiService.getMunicipalities();
+    @Autowired
+    private SlotCapacityService slotCapacityService;
+
+    @Autowired
+    private BookingTokenCache tokenCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private BookingMetrics bookingMetrics;
+
+    @Autowired
+    private BookingIngestionService ingestionService;
+
+    @Autowired
+    private BookingHistoryLog historyLog;
+
+    @Autowired
+    private ScheduleSummaryService scheduleSummary;
+
+    // Bookings de um slot que saíram do mesmo estado numa mudança em massa.
+    private record SlotMove(String municipality, LocalDate bookingDate, TimeSlot timeSlot, BookingStatus from) {
+    }
+
+    /**
+     * true quando o POST /api/bookings só escreve no journal (ingestion.mode=journal) e o booking
+     * chega à base de dados depois.
+     */
+    public boolean isWriteBehind() {
+        return ingestionService.isEnabled();
     }
 
     public BookingRequest createBooking(BookingRequestDTO dto) {
-        // 1. Validar os dados
-        List<String> validMunicipalities = geoApiService.getMunicipalities();
-        if (dto.getMunicipality() == null || !validMunicipalities.contains(dto.getMunicipality())) {
+        BookingRequest newBooking = validateAndReserve(dto);
+
+        if (ingestionService.isEnabled()) {
+            try {
+                return ingestionService.submit(newBooking);
+            } catch (RuntimeException ex) {
+                releaseSlot(newBooking);
+                throw ex;
+            }
+        }
+
+        // Guardar na base de dados (se falhar, devolve o lugar reservado)
+        BookingRequest savedBooking = scheduleSummary.writing(() -> {
+            BookingRequest saved;
+            try {
+                saved = bookingRepository.save(newBooking);
+            } catch (RuntimeException ex) {
+                releaseSlot(newBooking);
+                throw ex;
+            }
+            summaryCreated(saved);
+            return saved;
+        });
+        logger.info("New booking created with token: {}", savedBooking.getBookingToken());
+        recordHistory(savedBooking.getBookingToken(), savedBooking.getStatus(), savedBooking.getCreatedAt());
+        bookingMetrics.bookingCreated(savedBooking.getMunicipality());
+        eventPublisher.publishEvent(BookingChangedEvent.created(savedBooking));
+
+        return savedBooking;
+    }
+
+    /**
+     * Cria vários agendamentos de uma vez. Cada DTO é validado individualmente e os válidos são
+     * inseridos com um único saveAll (o Hibernate agrupa os INSERT em batches JDBC).
+     * O resultado tem uma entrada por DTO, pela mesma ordem.
+     */
+    public List<BatchBookingResultDTO> createBookings(List<BookingRequestDTO> dtos) {
+        if (dtos == null || dtos.isEmpty() || dtos.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch must contain between 1 and " + MAX_BATCH_SIZE + " bookings.");
+        }
+
+        BookingRequest[] bookings = new BookingRequest[dtos.size()];
+        String[] errors = new String[dtos.size()];
+        List<BookingRequest> accepted = new ArrayList<>(dtos.size());
+        for (int i = 0; i < dtos.size(); i++) {
+            try {
+                bookings[i] = validateAndReserve(dtos.get(i));
+                accepted.add(bookings[i]);
+            } catch (SlotUnavailableException | IllegalArgumentException e) {
+                errors[i] = e.getMessage();
+            }
+        }
+
+        if (!accepted.isEmpty()) {
+            long start = System.nanoTime();
+            scheduleSummary.writing(() -> {
+                try {
+                    bookingRepository.saveAll(accepted);
+                } catch (RuntimeException ex) {
+                    accepted.forEach(this::releaseSlot);
+                    throw ex;
+                }
+                accepted.forEach(this::summaryCreated);
+                return accepted;
+            });
+            long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            logger.info("Batch of {} bookings inserted in {} ms ({} inserts/s).",
+                    accepted.size(), elapsedMillis, accepted.size() * 1000L / elapsedMillis);
+            accepted.forEach(booking -> {
+                recordHistory(booking.getBookingToken(), booking.getStatus(), booking.getCreatedAt());
+                bookingMetrics.bookingCreated(booking.getMunicipality());
+                eventPublisher.publishEvent(BookingChangedEvent.created(booking));
+            });
+        }
+
+        // O saveAll atribui os ids às próprias instâncias, por isso basta lê-los agora.
+        List<BatchBookingResultDTO> results = new ArrayList<>(dtos.size());
+        for (int i = 0; i < dtos.size(); i++) {
+            results.add(bookings[i] != null
+                    ? BatchBookingResultDTO.created(i, bookings[i].getId(), bookings[i].getBookingToken())
+                    : BatchBookingResultDTO.rejected(i, errors[i]));
+        }
+        return results;
+    }
+
+    // Valida o DTO, reserva lugar no slot e devolve a entidade pronta a guardar.
+    private BookingRequest validateAndReserve(BookingRequestDTO dto) {
+        // Num batch, um elemento null no JSON é rejeitado nesse índice como os outros erros de validação.
+        if (dto == null) {
+            throw new IllegalArgumentException("Booking must not be null.");
+        }
+
+        // 1. Validar os dados (lookup no índice normalizado, que também devolve o nome canónico)
+        Optional<String> municipality = geoApiService.resolveMunicipality(dto.getMunicipality());
+        if (municipality.isEmpty()) {
             logger.warn("Attempt to create booking with invalid municipality: {}", dto.getMunicipality());
             throw new IllegalArgumentException("Municipality not available for service or is null: " + dto.getMunicipality());
         }
@@ -43,45 +193,281 @@ public class BookingService {
             throw new IllegalArgumentException("Booking date must be today or in the future.");
         }
 
-        // 2. Criar a entidade a partir do DTO
-        BookingRequest newBooking = new BookingRequest(
+        if (dto.getTimeSlot() == null) {
+            throw new IllegalArgumentException("Time slot is required.");
+        }
+
+        // Tudo o que a coluna não aceita é recusado aqui, antes de reservar o slot: em modo JOURNAL o INSERT
+        // só acontece depois da resposta, e uma entrada inválida bloquearia o batch em que calhasse.
+        if (dto.getItemDescription() == null || dto.getItemDescription().isBlank()) {
+            throw new IllegalArgumentException("Item description is required.");
+        }
+        if (dto.getItemDescription().length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("Item description must be at most " + MAX_TEXT_LENGTH + " characters.");
+        }
+        if (dto.getFullAddress() != null && dto.getFullAddress().length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("Full address must be at most " + MAX_TEXT_LENGTH + " characters.");
+        }
+
+        // 2. Reservar lugar no camião (contador atómico por slot, sem lock global)
+        if (!slotCapacityService.tryReserve(municipality.get(), dto.getBookingDate(), dto.getTimeSlot())) {
+            logger.warn("Slot {} {} {} is full", municipality.get(), dto.getBookingDate(), dto.getTimeSlot());
+            throw new SlotUnavailableException("No capacity left for " + municipality.get() + " on "
+                    + dto.getBookingDate() + " " + dto.getTimeSlot());
+        }
+
+        // 3. Criar a entidade a partir do DTO
+        return new BookingRequest(
                 dto.getItemDescription(),
-                dto.getMunicipality(),
+                municipality.get(),
                 dto.getFullAddress(),
                 dto.getBookingDate(),
                 dto.getTimeSlot()
         );
+    }
 
-        // 3. Guardar na base de dados
-        BookingRequest savedBooking = bookingRepository.save(newBooking);
-        logger.info("New booking created with token: {}", savedBooking.getBookingToken());
+    private void summaryCreated(BookingRequest booking) {
+        scheduleSummary.bookingCreated(booking.getMunicipality(), booking.getBookingDate(), booking.getTimeSlot(),
+                booking.getStatus());
+    }
 
-        return savedBooking;
+    private void releaseSlot(BookingRequest booking) {
+        slotCapacityService.release(booking.getMunicipality(), booking.getBookingDate(), booking.getTimeSlot());
     }
 
-    public Optional<BookingRequest> findBookingByToken(String token) {
-        return bookingRepository.findByBookingToken(token);
+    public Optional<BookingLookupDTO> findBookingByToken(String token) {
+        // Aceita o formato curto e o UUID antigo; ambos dão a mesma chave na cache e na base de dados.
+        Optional<String> canonical = BookingTokens.normalize(token);
+        if (canonical.isEmpty()) {
+            return Optional.empty();
+        }
+        // Aceite em modo journal mas ainda não gravado na base de dados.
+        Optional<BookingRequest> pendingBooking = ingestionService.findPending(canonical.get());
+        if (pendingBooking.isPresent()) {
+            return pendingBooking.map(BookingLookupDTO::from);
+        }
+        return tokenCache.get(canonical.get(), bookingRepository::findLookupByBookingToken);
+    }
+
+    /**
+     * Transições de estado do booking, da criação até agora. Vazio se o token for inválido ou desconhecido.
+     */
+    public List<StatusHistoryEntryDTO> getStatusHistory(String token) {
+        return BookingTokens.normalize(token)
+                .map(historyLog::read)
+                .orElse(List.of());
+    }
+
+    public CacheStatsDTO getTokenCacheStats() {
+        return tokenCache.stats();
     }
 
-    public List<BookingRequest> findBookingsByMunicipality(String municipality) {
-        return bookingRepository.findByMunicipality(municipality);
+    public List<StaffBookingDTO> findBookingsByMunicipality(String municipality) {
+        return bookingRepository.findStaffViewsByMunicipality(municipality);
+    }
+
+    public BookingPageDTO findBookingsPage(String municipality, LocalDate fromDate, LocalDate toDate,
+                                           BookingStatus status, String cursor, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        BookingCursor after = cursor == null || cursor.isBlank() ? null : BookingCursor.decode(cursor);
+
+        // Pede mais um elemento para saber se existe uma página seguinte sem fazer COUNT.
+        List<StaffBookingDTO> rows = bookingRepository.findStaffPage(
+                municipality, status, fromDate, toDate,
+                after != null ? after.bookingDate() : null,
+                after != null ? after.id() : null,
+                Limit.of(size + 1));
+
+        if (rows.size() <= size) {
+            return new BookingPageDTO(rows, null);
+        }
+        List<StaffBookingDTO> page = rows.subList(0, size);
+        return new BookingPageDTO(page, BookingCursor.after(page.get(size - 1)).encode());
     }
 
-    public BookingRequest updateBookingStatus(Long bookingId, BookingStatus newStatus) {
+    /**
+     * Muda o estado de um booking. expectedVersion é a versão que o cliente viu e é obrigatória: sem ela dois
+     * pedidos com transições válidas sobrepunham-se. A escrita é um único UPDATE condicional (versão e estado
+     * de origem) que devolve a linha anterior; só quando não muda nada se lê o booking, para distinguir
+     * booking inexistente (EntityNotFoundException), versão antiga (BookingConflictException) e transição
+     * não permitida (IllegalStatusTransitionException).
+     */
+    public BookingRequest updateBookingStatus(Long bookingId, BookingStatus newStatus, Long expectedVersion) {
         Objects.requireNonNull(bookingId, "Booking id cannot be null");
 
         if (newStatus == null) {
             throw new IllegalArgumentException("Booking status cannot be null");
         }
+        if (expectedVersion == null) {
+            throw new IllegalArgumentException("Booking version is required");
+        }
 
-        BookingRequest booking = bookingRepository.findById(bookingId)
-                .orElseThrow(() -> new EntityNotFoundException("Booking with id " + bookingId + " not found"));
+        LocalDateTime now = LocalDateTime.now();
+        Optional<BookingRequest> previous = scheduleSummary.writing(() -> {
+            Optional<BookingRequest> before = bookingRepository.changeStatusIfCurrent(bookingId, expectedVersion,
+                    BookingStatus.sourcesOf(newStatus), newStatus, now);
+            before.ifPresent(booking -> scheduleSummary.statusChanged(booking.getMunicipality(),
+                    booking.getBookingDate(), booking.getTimeSlot(), booking.getStatus(), newStatus));
+            return before;
+        });
+        BookingRequest booking = previous.orElseThrow(() -> rejection(bookingId, newStatus, expectedVersion));
 
+        // A linha devolvida é a de antes do UPDATE: aplica-se a mesma mudança.
+        BookingStatus previousStatus = booking.getStatus();
         booking.setStatus(newStatus);
-        booking.setLastUpdatedAt(LocalDateTime.now());
+        booking.setLastUpdatedAt(now);
+        booking.setVersion(booking.getVersion() + 1);
+
+        adjustCapacity(booking, previousStatus, newStatus);
+        recordHistory(booking.getBookingToken(), newStatus, booking.getLastUpdatedAt());
+        bookingMetrics.statusChanged(previousStatus, newStatus);
+        tokenCache.put(booking);
+        eventPublisher.publishEvent(BookingChangedEvent.statusChanged(booking));
+        logger.info("Booking {} status updated to {}", booking.getBookingToken(), booking.getStatus());
+        return booking;
+    }
+
+    // O UPDATE condicional não mudou nada: uma leitura diz porquê.
+    private RuntimeException rejection(Long bookingId, BookingStatus newStatus, Long expectedVersion) {
+        Optional<BookingRequest> current = bookingRepository.findById(bookingId);
+        if (current.isEmpty()) {
+            return new EntityNotFoundException("Booking with id " + bookingId + " not found");
+        }
+        if (!expectedVersion.equals(current.get().getVersion())) {
+            return new BookingConflictException("Booking " + bookingId + " was modified since version " + expectedVersion);
+        }
+        return new IllegalStatusTransitionException("Booking " + bookingId + " cannot change from "
+                + current.get().getStatus() + " to " + newStatus);
+    }
+
+    /**
+     * Muda o estado de vários bookings com um único UPDATE (e.g. fecho de rota ao fim do dia).
+     * Aceita uma lista de ids ou um filtro por município/data/slot. Devolve quantos mudaram.
+     */
+    @Transactional
+    public int bulkUpdateStatus(BulkStatusUpdateDTO request) {
+        if (request.getStatus() == null) {
+            throw new IllegalArgumentException("Booking status cannot be null");
+        }
+        boolean byIds = request.getIds() != null && !request.getIds().isEmpty();
+        boolean byFilter = request.getMunicipality() != null && !request.getMunicipality().isBlank();
+        if (byIds == byFilter) {
+            throw new IllegalArgumentException("Provide either a list of ids or a municipality filter.");
+        }
+        if (byIds && request.getIds().size() > MAX_BULK_IDS) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_IDS + " ids per request.");
+        }
+
+        BookingStatus newStatus = request.getStatus();
+        // Só mudam os bookings cujo estado pode passar para o pedido; os outros ficam como estão.
+        Set<BookingStatus> changing = BookingStatus.sourcesOf(newStatus);
+        if (changing.isEmpty()) {
+            throw new IllegalArgumentException("No booking can change to " + newStatus);
+        }
+        LocalDateTime now = LocalDateTime.now();
+
+        // Os bookings que mudaram, lidos e mudados com os registos bloqueados: tudo o que se segue (capacidade,
+        // agregados, histórico) é calculado a partir deles e não de uma segunda leitura.
+        // O writing() segura o rebuild dos agregados até ao fim da transação, depois dos deltas do afterCommit.
+        List<StatusChange> changes = scheduleSummary.writing(() -> byIds
+                ? bookingRepository.changeStatusByIds(request.getIds(), changing, newStatus, now)
+                : bookingRepository.changeStatusByFilter(request.getMunicipality(), request.getBookingDate(),
+                        request.getTimeSlot(), changing, newStatus, now));
+        int updated = changes.size();
+
+        // A cache de tokens, os contadores em memória, o histórico e as métricas só mudam depois do commit (como
+        // os eventos do BookingEventStream): um rollback não os deixa a contar bookings que não mudaram, e uma
+        // consulta por token feita antes do commit não volta a pôr na cache o estado antigo.
+        afterCommit(() -> {
+            tokenCache.invalidateAll(changes.stream().map(StatusChange::bookingToken).toList());
+            Map<SlotMove, Long> moves = changes.stream().collect(Collectors.groupingBy(
+                    change -> new SlotMove(change.municipality(), change.bookingDate(), change.timeSlot(),
+                            change.previousStatus()),
+                    Collectors.counting()));
+            moves.forEach((move, total) -> {
+                // Só as transições de/para CANCELLED mexem na capacidade.
+                if (newStatus == BookingStatus.CANCELLED) {
+                    slotCapacityService.release(move.municipality(), move.bookingDate(), move.timeSlot(), total.intValue());
+                } else if (move.from() == BookingStatus.CANCELLED) {
+                    slotCapacityService.forceReserve(move.municipality(), move.bookingDate(), move.timeSlot(), total.intValue());
+                }
+                scheduleSummary.moved(move.municipality(), move.bookingDate(), move.timeSlot(), move.from(), newStatus,
+                        total.intValue());
+                bookingMetrics.statusChanged(move.from(), newStatus, total.intValue());
+            });
+            changes.forEach(change -> recordHistory(change.bookingToken(), newStatus, now));
+        });
+
+        // Um evento por município, só com os bookings que mudaram: o painel atualiza essas linhas e as versões.
+        changes.stream()
+                .collect(Collectors.groupingBy(StatusChange::municipality, LinkedHashMap::new, Collectors.toList()))
+                .forEach((municipality, changed) -> eventPublisher.publishEvent(
+                        BookingChangedEvent.bulkStatusChanged(municipality, newStatus, changed)));
 
-        BookingRequest saved = bookingRepository.save(booking);
-        logger.info("Booking {} status updated to {}", saved.getBookingToken(), saved.getStatus());
-        return saved;
+        logger.info("Bulk status update to {} changed {} bookings", newStatus, updated);
+        return updated;
+    }
+
+    // O histórico é escrito depois do commit: se falhar, a mudança já está feita e o pedido devolve-a na mesma.
+    // Fica no log e na métrica bookings.history.append_failures (o histórico desse booking fica incompleto).
+    private void recordHistory(String token, BookingStatus status, LocalDateTime changedAt) {
+        try {
+            historyLog.append(token, status, changedAt);
+        } catch (RuntimeException ex) {
+            bookingMetrics.historyAppendFailed();
+            logger.error("Could not append {} to the status history of booking {}", status, token, ex);
+        }
+    }
+
+    // Corre action depois do commit da transação atual, ou logo se não houver transação.
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Contagens por dia/slot/estado de um município, a partir dos agregados (não lê a tabela bookings).
+     */
+    public List<ScheduleSummaryDTO> getScheduleSummary(String municipality, LocalDate from, int days) {
+        if (days < 1 || days > MAX_AVAILABILITY_DAYS) {
+            throw new IllegalArgumentException("Days must be between 1 and " + MAX_AVAILABILITY_DAYS);
+        }
+        // Os agregados estão pelo nome canónico (o dos bookings): "lisboa" ou "Setubal" também servem.
+        String canonical = geoApiService.resolveMunicipality(municipality)
+                .orElseThrow(() -> new IllegalArgumentException("Municipality not available for service: " + municipality));
+        return scheduleSummary.summary(canonical, from != null ? from : LocalDate.now(), days);
+    }
+
+    // Nome canónico do município (como na lista da API), ou vazio se não for servido.
+    public Optional<String> resolveMunicipality(String municipality) {
+        return geoApiService.resolveMunicipality(municipality);
+    }
+
+    public List<SlotAvailabilityDTO> getAvailability(String municipality, int days) {
+        if (days < 1 || days > MAX_AVAILABILITY_DAYS) {
+            throw new IllegalArgumentException("Days must be between 1 and " + MAX_AVAILABILITY_DAYS);
+        }
+        String canonical = geoApiService.resolveMunicipality(municipality)
+                .orElseThrow(() -> new IllegalArgumentException("Municipality not available for service: " + municipality));
+        return slotCapacityService.availability(canonical, days);
+    }
+
+    // Um booking cancelado liberta o lugar; reabrir um cancelado volta a ocupá-lo.
+    private void adjustCapacity(BookingRequest booking, BookingStatus previousStatus, BookingStatus newStatus) {
+        if (previousStatus != BookingStatus.CANCELLED && newStatus == BookingStatus.CANCELLED) {
+            slotCapacityService.release(booking.getMunicipality(), booking.getBookingDate(), booking.getTimeSlot());
+        } else if (previousStatus == BookingStatus.CANCELLED && newStatus != BookingStatus.CANCELLED) {
+            slotCapacityService.forceReserve(booking.getMunicipality(), booking.getBookingDate(), booking.getTimeSlot());
+        }
     }
-}
\ No newline at end of file
+}
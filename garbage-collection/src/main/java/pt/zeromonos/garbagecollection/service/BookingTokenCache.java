@@ -0,0 +1,120 @@
+package pt.zeromonos.garbagecollection.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.stereotype.Component;
+import pt.zeromonos.garbagecollection.config.TokenCacheProperties;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.dto.BookingLookupDTO;
+import pt.zeromonos.garbagecollection.dto.CacheStatsDTO;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache limitada (tamanho + TTL) das consultas por token. Guarda a projeção imutável (BookingLookupDTO)
+ * e não a entidade, por isso o que está em cache não pode ser alterado por quem o lê.
+ * Também guarda os tokens que não existem (Optional.empty()) com um TTL mais curto,
+ * para que tentativas de adivinhar tokens não cheguem à base de dados.
+ *
+ * Internamente é uma AsyncCache: o mapa só guarda o CompletableFuture e a consulta à base de dados
+ * corre depois, fora do lock do ConcurrentHashMap (que é synchronized e, no JDK 21, prende a carrier
+ * thread quando o pedido corre numa virtual thread).
+ *
+ * Um carregamento pode ter lido a base de dados antes de uma mudança e acabar depois da invalidação dessa
+ * mudança. Por isso cada invalidação avança a geração, e um carregamento que acaba numa geração diferente
+ * da do início entrega o valor a quem o pediu mas não o deixa na cache.
+ */
+@Component
+public class BookingTokenCache {
+
+    private final AsyncCache<String, Optional<BookingLookupDTO>> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    public BookingTokenCache(TokenCacheProperties properties) {
+        long ttlNanos = properties.getTtl().toNanos();
+        long negativeTtlNanos = properties.getNegativeTtl().toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new Expiry<String, Optional<BookingLookupDTO>>() {
+                    @Override
+                    public long expireAfterCreate(String token, Optional<BookingLookupDTO> value, long currentTime) {
+                        return value.isPresent() ? ttlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String token, Optional<BookingLookupDTO> value, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(token, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String token, Optional<BookingLookupDTO> value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Devolve o booking em cache ou carrega-o com o loader. Pedidos concorrentes para o mesmo
+     * token esperam pelo mesmo carregamento em vez de irem todos à base de dados.
+     */
+    public Optional<BookingLookupDTO> get(String token, Function<String, Optional<BookingLookupDTO>> loader) {
+        long loadGeneration = generation.get();
+        CompletableFuture<Optional<BookingLookupDTO>> pending = new CompletableFuture<>();
+        CompletableFuture<Optional<BookingLookupDTO>> future = cache.get(token, (key, executor) -> pending);
+        if (future == pending) {
+            // Fomos nós que inserimos a entrada: carregamos na thread do pedido.
+            // Se falhar, a Caffeine remove o future e o próximo pedido tenta outra vez.
+            try {
+                pending.complete(loader.apply(token));
+            } catch (RuntimeException ex) {
+                pending.completeExceptionally(ex);
+                throw ex;
+            }
+            if (generation.get() != loadGeneration) {
+                cache.asMap().remove(token, pending);
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    public void put(BookingRequest booking) {
+        cache.put(booking.getBookingToken(), CompletableFuture.completedFuture(Optional.of(BookingLookupDTO.from(booking))));
+    }
+
+    public void invalidate(String token) {
+        generation.incrementAndGet();
+        cache.synchronous().invalidate(token);
+    }
+
+    // Usado nas alterações em massa, depois do commit, com os tokens dos bookings que mudaram.
+    public void invalidateAll(Collection<String> tokens) {
+        generation.incrementAndGet();
+        cache.synchronous().invalidateAll(tokens);
+    }
+
+    public CacheStatsDTO stats() {
+        Cache<String, Optional<BookingLookupDTO>> view = cache.synchronous();
+        CacheStats stats = view.stats();
+        return new CacheStatsDTO(view.estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.evictionCount(), stats.hitRate());
+    }
+}
@@ -1,52 +1,193 @@
 package pt.zeromonos.garbagecollection.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import pt.zeromonos.garbagecollection.config.GeoApiProperties;
+import pt.zeromonos.garbagecollection.config.GeoApiProperties.RefreshMode;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.TreeSet;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
 
 @Service
 public class GeoApiService {
 
     private static final Logger logger = LoggerFactory.getLogger(GeoApiService.class);
-    private static final String GEOAPI_URL = "https://json.geoapi.pt/municipios";
-    private static final Duration CACHE_TTL = Duration.ofHours(12);
+    // Ordem alfabética sem distinguir maiúsculas; nomes que só diferem nelas continuam distintos.
+    private static final Comparator<String> NAME_ORDER =
+            String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
     private static final Duration FALLBACK_CACHE_TTL = Duration.ofMinutes(15);
-    private static final List<String> DEFAULT_MUNICIPALITIES = List.of(
-            "Lisboa", "Porto", "Coimbra", "Faro", "Braga", "Aveiro", "Sintra"
-    );
+    private static final MunicipalityIndex DEFAULT_MUNICIPALITIES = MunicipalityIndex.of(List.of(
+            "Aveiro", "Braga", "Coimbra", "Faro", "Lisboa", "Porto", "Sintra"
+    ));
 
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final GeoApiProperties properties;
+    // ReentrantLock e não synchronized: é mantido durante a chamada HTTP e, com virtual threads
+    // (spring.threads.virtual.enabled), quem espera fica parked sem prender a carrier thread.
     private final ReentrantLock refreshLock = new ReentrantLock();
 
-    private volatile List<String> cachedMunicipalities = Collections.emptyList();
+    private volatile MunicipalityIndex cachedMunicipalities = MunicipalityIndex.EMPTY;
     private volatile Instant cacheExpiry = Instant.EPOCH;
 
+    private final MunicipalitySnapshotStore snapshotStore;
+
+    private ScheduledExecutorService refreshScheduler;
+    private int consecutiveFailures;
+
+    // Métricas: hits/misses da cache, fallbacks (lista por omissão ou lista antiga) e duração das chamadas.
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+    private final Counter defaultFallbacks;
+    private final Counter staleFallbacks;
+    private final Timer refreshSuccess;
+    private final Timer refreshFailure;
+
     public GeoApiService(RestTemplate restTemplate, ObjectMapper objectMapper) {
+        this(restTemplate, objectMapper, new GeoApiProperties());
+    }
+
+    public GeoApiService(RestTemplate restTemplate, ObjectMapper objectMapper, GeoApiProperties properties) {
+        this(restTemplate, objectMapper, properties, new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public GeoApiService(RestTemplate restTemplate, ObjectMapper objectMapper, GeoApiProperties properties,
+                         MeterRegistry meterRegistry) {
         this.restTemplate = restTemplate;
         this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.snapshotStore = properties.getSnapshotFile() != null
+                ? new MunicipalitySnapshotStore(properties.getSnapshotFile(), objectMapper)
+                : null;
+
+        this.cacheHits = cacheCounter(meterRegistry, "hit");
+        this.cacheMisses = cacheCounter(meterRegistry, "miss");
+        this.defaultFallbacks = fallbackCounter(meterRegistry, "default");
+        this.staleFallbacks = fallbackCounter(meterRegistry, "stale");
+        this.refreshSuccess = refreshTimer(meterRegistry, "success");
+        this.refreshFailure = refreshTimer(meterRegistry, "failure");
+        Gauge.builder("geoapi.municipalities", this, service -> service.cachedMunicipalities.size())
+                .description("Municipalities in the current GeoAPI snapshot")
+                .register(meterRegistry);
+    }
+
+    private static Counter cacheCounter(MeterRegistry registry, String result) {
+        return Counter.builder("geoapi.cache").tag("result", result)
+                .description("Municipality lookups served from the cache (hit) or that needed a GeoAPI call (miss)")
+                .register(registry);
+    }
+
+    private static Counter fallbackCounter(MeterRegistry registry, String source) {
+        return Counter.builder("geoapi.fallbacks").tag("source", source)
+                .description("Lookups answered with the default list or a stale list because the GeoAPI was unavailable")
+                .register(registry);
+    }
+
+    private static Timer refreshTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("geoapi.refresh").tag("outcome", outcome)
+                .description("Duration of GeoAPI calls")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void init() {
+        loadSnapshot();
+        startBackgroundRefresh();
+    }
+
+    /**
+     * Carrega o último snapshot guardado em disco. Fica válido até fetchedAt + TTL, como se tivesse
+     * acabado de vir da GeoAPI, por isso o serviço fica pronto sem nenhuma chamada de rede.
+     */
+    void loadSnapshot() {
+        if (snapshotStore == null) {
+            return;
+        }
+        snapshotStore.load().ifPresent(snapshot -> {
+            cachedMunicipalities = MunicipalityIndex.of(snapshot.municipalities());
+            cacheExpiry = snapshot.fetchedAt().plus(properties.getCacheTtl());
+            logger.info("Loaded {} municipalities from snapshot fetched at {}.",
+                    cachedMunicipalities.size(), snapshot.fetchedAt());
+        });
+    }
+
+    void startBackgroundRefresh() {
+        if (properties.getRefreshMode() != RefreshMode.BACKGROUND) {
+            return;
+        }
+        refreshScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "geoapi-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refreshScheduler.execute(this::backgroundRefresh);
+    }
+
+    @PreDestroy
+    void stopBackgroundRefresh() {
+        if (refreshScheduler != null) {
+            refreshScheduler.shutdownNow();
+        }
     }
 
     public List<String> getMunicipalities() {
+        return getMunicipalityIndex().names();
+    }
+
+    /**
+     * Resolve o nome recebido para o nome canónico do município, ignorando maiúsculas e acentos.
+     */
+    public Optional<String> resolveMunicipality(String name) {
+        return getMunicipalityIndex().resolve(name);
+    }
+
+    public MunicipalityIndex getMunicipalityIndex() {
+        if (properties.getRefreshMode() == RefreshMode.BACKGROUND) {
+            // Stale-while-revalidate: nunca bloqueia, o scheduler trata da renovação.
+            MunicipalityIndex current = cachedMunicipalities;
+            if (current.isEmpty()) {
+                defaultFallbacks.increment();
+                return DEFAULT_MUNICIPALITIES;
+            }
+            cacheHits.increment();
+            return current;
+        }
+
         Instant now = Instant.now();
         if (now.isBefore(cacheExpiry) && !cachedMunicipalities.isEmpty()) {
+            cacheHits.increment();
             return cachedMunicipalities;
         }
+        cacheMisses.increment();
 
         refreshLock.lock();
         try {
@@ -54,81 +195,192 @@ public class GeoApiService {
                 return cachedMunicipalities;
             }
 
-            ResponseEntity<String> response = restTemplate.getForEntity(GEOAPI_URL, String.class);
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                List<String> municipalities = extractMunicipalities(response.getBody());
-
-                if (!municipalities.isEmpty()) {
-                    cachedMunicipalities = municipalities;
-                    cacheExpiry = Instant.now().plus(CACHE_TTL);
-                    logger.info("Fetched {} municipalities from GeoAPI.", municipalities.size());
-                    return cachedMunicipalities;
-                }
-
-                logger.warn("GeoAPI responded with an empty municipality list.");
-            } else {
-                logger.warn("GeoAPI responded with status {}. Keeping previous cache.", response.getStatusCode());
+            if (fetchMunicipalities()) {
+                return cachedMunicipalities;
             }
-        } catch (RestClientException | JsonProcessingException ex) {
-            logger.error("Failed to fetch municipalities from GeoAPI", ex);
         } finally {
             refreshLock.unlock();
         }
 
         if (cachedMunicipalities.isEmpty()) {
             logger.warn("Municipality cache is empty after attempting GeoAPI refresh. Returning fallback list.");
+            defaultFallbacks.increment();
             cachedMunicipalities = DEFAULT_MUNICIPALITIES;
             cacheExpiry = Instant.now().plus(FALLBACK_CACHE_TTL);
         } else {
             logger.info("Returning {} cached municipalities after GeoAPI failure.", cachedMunicipalities.size());
+            staleFallbacks.increment();
         }
 
         return cachedMunicipalities;
     }
 
-    private List<String> extractMunicipalities(String responseBody) throws JsonProcessingException {
-        JsonNode root = objectMapper.readTree(responseBody);
+    // Chamado apenas pela thread do scheduler, por isso consecutiveFailures não precisa de sincronização.
+    private void backgroundRefresh() {
+        boolean refreshed;
+        refreshLock.lock();
+        try {
+            refreshed = fetchMunicipalities();
+        } finally {
+            refreshLock.unlock();
+        }
 
-        if (!root.isArray()) {
-            if (root.has("municipios") && root.get("municipios").isArray()) {
-                root = root.get("municipios");
-            } else {
-                return Collections.emptyList();
-            }
+        Duration nextRun;
+        if (refreshed) {
+            consecutiveFailures = 0;
+            nextRun = Duration.ofMillis((long) (properties.getCacheTtl().toMillis() * properties.getRefreshAhead()));
+        } else {
+            consecutiveFailures++;
+            nextRun = backoffDelay(consecutiveFailures);
+            logger.warn("Background GeoAPI refresh failed ({} in a row). Retrying in {}.", consecutiveFailures, nextRun);
         }
 
-        List<String> names = new ArrayList<>();
-        for (JsonNode node : root) {
-            Optional<String> extracted = nodeToName(node);
-            extracted.ifPresent(names::add);
+        scheduleNext(withJitter(nextRun));
+    }
+
+    private void scheduleNext(Duration delay) {
+        try {
+            refreshScheduler.schedule(this::backgroundRefresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            logger.debug("GeoAPI refresh scheduler is shut down; not rescheduling.");
         }
+    }
 
-        return names.stream()
-                .map(String::trim)
-                .filter(name -> !name.isEmpty())
-                .distinct()
-                .sorted(String.CASE_INSENSITIVE_ORDER)
-                .collect(Collectors.toUnmodifiableList());
+    Duration backoffDelay(int failures) {
+        long initial = properties.getInitialBackoff().toMillis();
+        long max = properties.getMaxBackoff().toMillis();
+        int shift = Math.min(failures - 1, 20);
+        return Duration.ofMillis(Math.min(max, initial << shift));
     }
 
-    private Optional<String> nodeToName(JsonNode node) {
-        if (node == null || node.isNull()) {
-            return Optional.empty();
+    Duration withJitter(Duration delay) {
+        double jitter = properties.getRefreshJitter();
+        if (jitter <= 0) {
+            return delay;
         }
+        double factor = 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+        return Duration.ofMillis((long) (delay.toMillis() * factor));
+    }
+
+    /**
+     * Faz o pedido à GeoAPI e, se tiver sucesso, publica o novo snapshot.
+     * Tem de ser chamado com o refreshLock adquirido.
+     */
+    private boolean fetchMunicipalities() {
+        long start = System.nanoTime();
+        boolean refreshed = fetchAndPublish();
+        (refreshed ? refreshSuccess : refreshFailure).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return refreshed;
+    }
 
-        if (node.isTextual()) {
-            return Optional.ofNullable(node.asText());
+    private boolean fetchAndPublish() {
+        try {
+            // O corpo é lido diretamente do InputStream da resposta, sem passar por uma String.
+            List<String> municipalities = restTemplate.execute(properties.getUrl(), HttpMethod.GET,
+                    request -> request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON)),
+                    response -> {
+                        if (!response.getStatusCode().is2xxSuccessful()) {
+                            logger.warn("GeoAPI responded with status {}. Keeping previous cache.", response.getStatusCode());
+                            return null;
+                        }
+                        return extractMunicipalities(response.getBody());
+                    });
+
+            if (municipalities == null) {
+                return false;
+            }
+            if (!municipalities.isEmpty()) {
+                Instant fetchedAt = Instant.now();
+                cachedMunicipalities = MunicipalityIndex.of(municipalities);
+                cacheExpiry = fetchedAt.plus(properties.getCacheTtl());
+                logger.info("Fetched {} municipalities from GeoAPI.", municipalities.size());
+                if (snapshotStore != null) {
+                    snapshotStore.save(municipalities, fetchedAt);
+                }
+                return true;
+            }
+
+            logger.warn("GeoAPI responded with an empty municipality list.");
+        } catch (RestClientException ex) {
+            // Inclui JSON inválido: o RestTemplate embrulha as IOException do extractor em ResourceAccessException.
+            logger.error("Failed to fetch municipalities from GeoAPI", ex);
         }
+        return false;
+    }
 
-        if (node.hasNonNull("nome")) {
-            return Optional.ofNullable(node.get("nome").asText());
+    /**
+     * Lê a resposta da GeoAPI token a token, numa só passagem: aceita um array de topo ou um objeto
+     * com o array em "municipios", e de cada elemento guarda apenas o texto, ou o campo "nome"
+     * (ou "municipio"); o resto de cada objeto é saltado sem ser materializado.
+     * Os nomes vão diretamente para um TreeSet, que já deduplica e ordena sem maiúsculas/minúsculas.
+     *
+     * Package-private para os testes e o GeoApiServiceBenchmark.
+     */
+    List<String> extractMunicipalities(InputStream body) throws IOException {
+        TreeSet<String> names = new TreeSet<>(NAME_ORDER);
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken root = parser.nextToken();
+            if (root == JsonToken.START_OBJECT && !moveToField(parser, "municipios")) {
+                return List.of();
+            }
+            if (parser.currentToken() != JsonToken.START_ARRAY) {
+                return List.of();
+            }
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                addName(names, readName(parser));
+            }
         }
+        return List.copyOf(names);
+    }
 
-        if (node.hasNonNull("municipio")) {
-            return Optional.ofNullable(node.get("municipio").asText());
+    // Avança até ao valor do campo pedido no objeto atual; devolve false se o campo não existir.
+    private static boolean moveToField(JsonParser parser, String field) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            boolean found = field.equals(parser.currentName());
+            JsonToken value = parser.nextToken();
+            if (found && value == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
         }
+        return false;
+    }
 
-        return Optional.empty();
+    // Lê um elemento do array: texto direto ou objeto com "nome"/"municipio". Outros valores são ignorados.
+    private static String readName(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String nome = null;
+        String municipio = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                if ("nome".equals(field)) {
+                    nome = parser.getText();
+                } else if ("municipio".equals(field)) {
+                    municipio = parser.getText();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return nome != null ? nome : municipio;
+    }
+
+    private static void addName(TreeSet<String> names, String name) {
+        if (name == null) {
+            return;
+        }
+        String trimmed = name.trim();
+        if (!trimmed.isEmpty()) {
+            names.add(trimmed);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,9 @@
+package pt.zeromonos.garbagecollection.service;
+
+// Lançada quando uma Idempotency-Key já usada chega com um pedido diferente do original.
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    public IdempotencyKeyReusedException(String message) {
+        super(message);
+    }
+}
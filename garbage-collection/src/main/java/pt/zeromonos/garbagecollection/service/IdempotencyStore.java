@@ -0,0 +1,110 @@
+package pt.zeromonos.garbagecollection.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import pt.zeromonos.garbagecollection.config.IdempotencyProperties;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Respostas do POST /api/bookings guardadas pela Idempotency-Key do cliente (Caffeine, limitada em
+ * tamanho e com TTL). Um retry com a mesma chave recebe a resposta original sem tocar na base de dados.
+ *
+ * As chaves são por cliente (a mesma identidade do AdmissionControl.clientKey): a chave de um cliente
+ * não colide com a de outro nem lhe devolve a resposta dele.
+ *
+ * A entrada é inserida antes de o booking ser criado, com um CompletableFuture: pedidos repetidos que
+ * chegam enquanto o primeiro ainda está a correr esperam por esse mesmo resultado, por isso só há um
+ * INSERT mesmo numa rajada de retries. Só as respostas 2xx ficam guardadas; um 400, 409, 429 ou uma
+ * exceção saem da cache e o cliente pode tentar outra vez com a mesma chave (por exemplo depois de
+ * corrigir o pedido ou quando o slot tiver lugar).
+ */
+@Component
+public class IdempotencyStore {
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private record Key(String client, String idempotencyKey) {
+    }
+
+    // O pedido original (para detetar chaves reutilizadas) e a resposta, que pode ainda estar a ser calculada.
+    private record Entry(Object request, CompletableFuture<ResponseEntity<BookingRequest>> response) {
+    }
+
+    private final Cache<Key, Entry> entries;
+    private final Counter replays;
+
+    public IdempotencyStore(IdempotencyProperties properties, MeterRegistry registry) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .build();
+        this.replays = Counter.builder("bookings.idempotent.replays")
+                .description("Booking creations answered from the Idempotency-Key store")
+                .register(registry);
+    }
+
+    /**
+     * Executa "action" uma única vez por cliente e chave e devolve a mesma resposta aos pedidos repetidos,
+     * marcada com o header Idempotent-Replayed. "request" tem de ser igual (equals) ao do pedido original,
+     * senão é lançada IdempotencyKeyReusedException.
+     */
+    public ResponseEntity<BookingRequest> execute(String client, String idempotencyKey, Object request,
+                                                  Supplier<ResponseEntity<BookingRequest>> action) {
+        Key key = new Key(client, idempotencyKey);
+        Entry created = new Entry(request, new CompletableFuture<>());
+        Entry entry = entries.asMap().putIfAbsent(key, created);
+        if (entry != null) {
+            if (!Objects.equals(entry.request(), request)) {
+                throw new IdempotencyKeyReusedException("Idempotency-Key was already used with a different request");
+            }
+            replays.increment();
+            return replayed(join(entry.response()));
+        }
+
+        ResponseEntity<BookingRequest> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException ex) {
+            entries.asMap().remove(key, created);
+            created.response().completeExceptionally(ex);
+            throw ex;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            // Os pedidos repetidos que já esperavam por este recebem-no na mesma; os seguintes executam de novo.
+            entries.asMap().remove(key, created);
+        }
+        created.response().complete(response);
+        return response;
+    }
+
+    public long size() {
+        return entries.estimatedSize();
+    }
+
+    private static ResponseEntity<BookingRequest> replayed(ResponseEntity<BookingRequest> original) {
+        return ResponseEntity.status(original.getStatusCode())
+                .headers(original.getHeaders())
+                .header(REPLAYED_HEADER, "true")
+                .body(original.getBody());
+    }
+
+    private static ResponseEntity<BookingRequest> join(CompletableFuture<ResponseEntity<BookingRequest>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package pt.zeromonos.garbagecollection.service;
+
+// Lançada quando o estado atual do booking não pode passar para o pedido (ver BookingStatus.canChangeTo):
+// ao contrário de um conflito de versão, repetir o pedido com a versão nova não ajuda.
+public class IllegalStatusTransitionException extends RuntimeException {
+
+    public IllegalStatusTransitionException(String message) {
+        super(message);
+    }
+}
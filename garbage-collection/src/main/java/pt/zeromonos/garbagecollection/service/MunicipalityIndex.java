@@ -0,0 +1,75 @@
+package pt.zeromonos.garbagecollection.service;
+
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Snapshot imutável dos municípios: a lista ordenada que é mostrada aos utilizadores
+ * e um índice (nome normalizado -> nome canónico) para validar em tempo constante.
+ */
+public final class MunicipalityIndex {
+
+    public static final MunicipalityIndex EMPTY = new MunicipalityIndex(List.of(), Map.of());
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final List<String> names;
+    private final Map<String, String> canonicalByKey;
+
+    private MunicipalityIndex(List<String> names, Map<String, String> canonicalByKey) {
+        this.names = names;
+        this.canonicalByKey = canonicalByKey;
+    }
+
+    /**
+     * Constrói o índice a partir de uma lista já ordenada e sem duplicados.
+     * Se dois nomes colidirem depois de normalizados, fica o primeiro da lista.
+     */
+    public static MunicipalityIndex of(List<String> sortedNames) {
+        List<String> names = List.copyOf(sortedNames);
+        Map<String, String> index = new HashMap<>(Math.max(16, (int) (names.size() / 0.75f) + 1));
+        for (String name : names) {
+            index.putIfAbsent(fold(name), name);
+        }
+        return new MunicipalityIndex(names, Collections.unmodifiableMap(index));
+    }
+
+    /**
+     * Normaliza um nome para comparação: sem acentos, minúsculas e espaços colapsados.
+     * "  Évora " e "evora" dão a mesma chave.
+     */
+    public static String fold(String name) {
+        String decomposed = Normalizer.normalize(name.trim(), Normalizer.Form.NFD);
+        String withoutMarks = DIACRITICS.matcher(decomposed).replaceAll("");
+        return WHITESPACE.matcher(withoutMarks).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    public List<String> names() {
+        return names;
+    }
+
+    public boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Devolve o nome canónico do município, ignorando maiúsculas e acentos.
+     */
+    public Optional<String> resolve(String name) {
+        if (name == null || name.isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(canonicalByKey.get(fold(name)));
+    }
+}
@@ -0,0 +1,92 @@
+package pt.zeromonos.garbagecollection.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Resposta de GET /api/bookings/municipalities já serializada (JSON e gzip), com os ETags respetivos.
+ *
+ * O MunicipalityIndex do GeoApiService é imutável e só é trocado quando a lista é renovada, por isso
+ * a identidade do snapshot serve de versão: enquanto for o mesmo objeto, os bytes são reutilizados.
+ * O ETag é um hash do JSON, portanto uma renovação que devolva os mesmos nomes mantém o ETag e os
+ * browsers continuam a receber 304.
+ */
+@Service
+public class MunicipalityPayloadCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(MunicipalityPayloadCache.class);
+
+    /**
+     * Bytes prontos a enviar. O gzip tem um ETag próprio porque é outra representação do recurso.
+     */
+    public record Payload(byte[] json, byte[] gzip, String etag, String gzipEtag) {
+    }
+
+    private record Entry(MunicipalityIndex source, Payload payload) {
+    }
+
+    private final GeoApiService geoApiService;
+    private final ObjectMapper objectMapper;
+    private volatile Entry current;
+
+    public MunicipalityPayloadCache(GeoApiService geoApiService, ObjectMapper objectMapper) {
+        this.geoApiService = geoApiService;
+        this.objectMapper = objectMapper;
+    }
+
+    public Payload current() {
+        MunicipalityIndex index = geoApiService.getMunicipalityIndex();
+        Entry entry = current;
+        if (entry != null && entry.source() == index) {
+            return entry.payload();
+        }
+        // Duas threads podem serializar o mesmo snapshot ao mesmo tempo; o resultado é igual.
+        Payload payload = serialize(index);
+        current = new Entry(index, payload);
+        return payload;
+    }
+
+    private Payload serialize(MunicipalityIndex index) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(index.names());
+            byte[] gzip = gzip(json);
+            String hash = hash(json);
+            logger.info("Serialized {} municipalities ({} bytes, {} gzipped).", index.names().size(), json.length,
+                    gzip.length);
+            return new Payload(json, gzip, "\"" + hash + "\"", "\"" + hash + "-gzip\"");
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize municipalities", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
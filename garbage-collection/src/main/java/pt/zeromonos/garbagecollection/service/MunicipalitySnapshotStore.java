@@ -0,0 +1,78 @@
+package pt.zeromonos.garbagecollection.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Guarda em disco o último snapshot válido da GeoAPI (lista + instante do fetch),
+ * para que o serviço arranque já com os municípios carregados.
+ */
+class MunicipalitySnapshotStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(MunicipalitySnapshotStore.class);
+
+    // Formato do ficheiro. O instante fica em epoch millis para não depender do módulo java.time do Jackson.
+    record Snapshot(long fetchedAtEpochMillis, List<String> municipalities) {
+        Instant fetchedAt() {
+            return Instant.ofEpochMilli(fetchedAtEpochMillis);
+        }
+    }
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+
+    MunicipalitySnapshotStore(Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+    }
+
+    Optional<Snapshot> load() {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try {
+            Snapshot snapshot = objectMapper.readValue(file.toFile(), Snapshot.class);
+            if (snapshot.municipalities() == null || snapshot.municipalities().isEmpty()) {
+                logger.warn("Ignoring empty municipality snapshot at {}", file);
+                return Optional.empty();
+            }
+            return Optional.of(snapshot);
+        } catch (IOException ex) {
+            logger.warn("Could not read municipality snapshot at {}", file, ex);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Escreve para um ficheiro temporário e depois faz rename, para nunca deixar um snapshot meio escrito.
+     */
+    void save(List<String> municipalities, Instant fetchedAt) {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try {
+                objectMapper.writeValue(tmp.toFile(), new Snapshot(fetchedAt.toEpochMilli(), municipalities));
+                try {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException ex) {
+            logger.warn("Could not write municipality snapshot to {}", file, ex);
+        }
+    }
+}
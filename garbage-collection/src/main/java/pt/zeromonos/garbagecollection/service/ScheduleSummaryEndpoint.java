@@ -0,0 +1,30 @@
+package pt.zeromonos.garbagecollection.service;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Rebuild manual dos agregados do resumo (recuperação), como endpoint do actuator e fora da API pública:
+ * o rebuild fica com o write lock e segura todas as escritas em bookings durante o GROUP BY.
+ * Não está exposto por omissão; para o usar, acrescentar "schedulesummary" a
+ * management.endpoints.web.exposure.include numa porta de gestão interna (management.server.port) e chamar
+ * POST /actuator/schedulesummary. No arranque o resumo já é reconstruído.
+ */
+@Component
+@Endpoint(id = "schedulesummary")
+public class ScheduleSummaryEndpoint {
+
+    private final ScheduleSummaryService scheduleSummary;
+
+    public ScheduleSummaryEndpoint(ScheduleSummaryService scheduleSummary) {
+        this.scheduleSummary = scheduleSummary;
+    }
+
+    @WriteOperation
+    public Map<String, Integer> rebuild() {
+        return Map.of("slots", scheduleSummary.rebuild());
+    }
+}
@@ -0,0 +1,149 @@
+package pt.zeromonos.garbagecollection.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.ScheduleSummaryDTO;
+import pt.zeromonos.garbagecollection.repository.BookingStore;
+import pt.zeromonos.garbagecollection.repository.SlotStatusCount;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Contagens de bookings por município/data/TimeSlot/estado para o dashboard de planeamento.
+ *
+ * Cada slot tem um AtomicIntegerArray indexado pelo ordinal do estado. BookingService (e a ingestão
+ * por journal) atualiza-o em cada escrita, por isso o resumo de um dia custa o mesmo com 10 ou com
+ * 10 milhões de bookings: são sempre TimeSlot x BookingStatus contadores.
+ *
+ * rebuild() volta a calcular tudo com um único GROUP BY; corre no arranque e pode ser chamado pelo
+ * staff se houver suspeita de desvio. Cada escrita em bookings corre dentro de writing(), com o read lock
+ * desde a escrita na base de dados até ao delta nos contadores (depois do commit, se houver transação).
+ * O rebuild fica com o write lock durante o GROUP BY e a troca do mapa: não há escritas a meio, por isso
+ * nenhuma fica contada duas vezes ou esquecida. O preço é que as escritas esperam pelo GROUP BY.
+ */
+@Service
+public class ScheduleSummaryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScheduleSummaryService.class);
+    private static final BookingStatus[] STATUSES = BookingStatus.values();
+
+    record SlotKey(String municipality, LocalDate date, TimeSlot timeSlot) {
+    }
+
+    private final BookingStore bookingRepository;
+    private volatile ConcurrentHashMap<SlotKey, AtomicIntegerArray> counts = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    public ScheduleSummaryService(BookingStore bookingRepository) {
+        this.bookingRepository = bookingRepository;
+    }
+
+    /**
+     * Recalcula os agregados a partir da base de dados e substitui os atuais. Devolve o número de slots.
+     */
+    @PostConstruct
+    public int rebuild() {
+        ConcurrentHashMap<SlotKey, AtomicIntegerArray> rebuilt = new ConcurrentHashMap<>();
+        rebuildLock.writeLock().lock();
+        try {
+            List<SlotStatusCount> rows = bookingRepository.countBySlotAndStatus();
+            for (SlotStatusCount row : rows) {
+                SlotKey key = new SlotKey(row.getMunicipality(), row.getBookingDate(), row.getTimeSlot());
+                rebuilt.computeIfAbsent(key, k -> new AtomicIntegerArray(STATUSES.length))
+                        .addAndGet(row.getStatus().ordinal(), (int) row.getTotal());
+            }
+            counts = rebuilt;
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+        logger.info("Rebuilt schedule summary for {} slots.", rebuilt.size());
+        return rebuilt.size();
+    }
+
+    /**
+     * Corre uma escrita em bookings cujos deltas vão ser aplicados aqui. Sem transação, os deltas têm de ser
+     * aplicados dentro de write; numa transação o lock só é largado no fim dela (os deltas vão no afterCommit).
+     */
+    public <T> T writing(Supplier<T> write) {
+        Lock lock = rebuildLock.readLock();
+        lock.lock();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                return write.get();
+            } finally {
+                lock.unlock();
+            }
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+        return write.get();
+    }
+
+    public void bookingCreated(String municipality, LocalDate date, TimeSlot timeSlot, BookingStatus status) {
+        add(municipality, date, timeSlot, status, 1);
+    }
+
+    public void statusChanged(String municipality, LocalDate date, TimeSlot timeSlot, BookingStatus from,
+                              BookingStatus to) {
+        moved(municipality, date, timeSlot, from, to, 1);
+    }
+
+    /**
+     * Move "count" bookings do slot de um estado para outro (mudanças em massa).
+     */
+    public void moved(String municipality, LocalDate date, TimeSlot timeSlot, BookingStatus from, BookingStatus to,
+                      int count) {
+        if (from == to) {
+            return;
+        }
+        add(municipality, date, timeSlot, from, -count);
+        add(municipality, date, timeSlot, to, count);
+    }
+
+    /**
+     * Contagens de cada dia/slot a partir de "from", lidas apenas dos contadores.
+     */
+    public List<ScheduleSummaryDTO> summary(String municipality, LocalDate from, int days) {
+        Map<SlotKey, AtomicIntegerArray> snapshot = counts;
+        List<ScheduleSummaryDTO> result = new ArrayList<>(days * TimeSlot.values().length);
+        for (int i = 0; i < days; i++) {
+            LocalDate date = from.plusDays(i);
+            for (TimeSlot timeSlot : TimeSlot.values()) {
+                AtomicIntegerArray slot = snapshot.get(new SlotKey(municipality, date, timeSlot));
+                Map<BookingStatus, Integer> byStatus = new EnumMap<>(BookingStatus.class);
+                int total = 0;
+                for (BookingStatus status : STATUSES) {
+                    int count = slot == null ? 0 : slot.get(status.ordinal());
+                    byStatus.put(status, count);
+                    total += count;
+                }
+                result.add(new ScheduleSummaryDTO(date, timeSlot, total, byStatus));
+            }
+        }
+        return result;
+    }
+
+    private void add(String municipality, LocalDate date, TimeSlot timeSlot, BookingStatus status, int delta) {
+        counts.computeIfAbsent(new SlotKey(municipality, date, timeSlot), key -> new AtomicIntegerArray(STATUSES.length))
+                .addAndGet(status.ordinal(), delta);
+    }
+}
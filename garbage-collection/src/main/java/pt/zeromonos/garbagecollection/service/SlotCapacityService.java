@@ -0,0 +1,133 @@
+package pt.zeromonos.garbagecollection.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pt.zeromonos.garbagecollection.config.CapacityProperties;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.SlotAvailabilityDTO;
+import pt.zeromonos.garbagecollection.repository.BookingStore;
+import pt.zeromonos.garbagecollection.repository.SlotCount;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Controla a ocupação de cada município/data/TimeSlot com um contador atómico por slot.
+ * Não há lock global: reservas em slots diferentes não competem entre si e no mesmo slot
+ * a reserva é um compare-and-set.
+ *
+ * Os contadores são inicializados no arranque com um único GROUP BY e depois mantidos por
+ * BookingService em cada escrita, por isso a disponibilidade nunca precisa de COUNT.
+ */
+@Service
+public class SlotCapacityService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlotCapacityService.class);
+
+    record SlotKey(String municipality, LocalDate date, TimeSlot timeSlot) {
+    }
+
+    private final BookingStore bookingRepository;
+    private final CapacityProperties properties;
+    private final ConcurrentHashMap<SlotKey, AtomicInteger> reserved = new ConcurrentHashMap<>();
+    private final Map<String, Map<TimeSlot, Integer>> limitsByFoldedName = new HashMap<>();
+
+    public SlotCapacityService(BookingStore bookingRepository, CapacityProperties properties) {
+        this.bookingRepository = bookingRepository;
+        this.properties = properties;
+        properties.getLimits().forEach((name, limits) -> limitsByFoldedName.put(MunicipalityIndex.fold(name), limits));
+    }
+
+    @PostConstruct
+    void loadCounters() {
+        reserved.clear();
+        List<SlotCount> counts = bookingRepository.countBySlotFrom(LocalDate.now(), BookingStatus.CANCELLED);
+        for (SlotCount count : counts) {
+            SlotKey key = new SlotKey(count.getMunicipality(), count.getBookingDate(), count.getTimeSlot());
+            reserved.put(key, new AtomicInteger((int) count.getTotal()));
+        }
+        logger.info("Loaded capacity counters for {} slots.", counts.size());
+    }
+
+    public int capacityOf(String municipality, TimeSlot timeSlot) {
+        Map<TimeSlot, Integer> limits = limitsByFoldedName.get(MunicipalityIndex.fold(municipality));
+        if (limits != null && limits.get(timeSlot) != null) {
+            return limits.get(timeSlot);
+        }
+        return properties.getDefaultLimit();
+    }
+
+    /**
+     * Tenta ocupar um lugar no slot. Devolve false se já estiver cheio.
+     */
+    public boolean tryReserve(String municipality, LocalDate date, TimeSlot timeSlot) {
+        int capacity = capacityOf(municipality, timeSlot);
+        AtomicInteger counter = counterFor(municipality, date, timeSlot);
+        while (true) {
+            int current = counter.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Ocupa um lugar mesmo que o slot esteja cheio (e.g. reabrir um booking cancelado).
+     */
+    public void forceReserve(String municipality, LocalDate date, TimeSlot timeSlot) {
+        forceReserve(municipality, date, timeSlot, 1);
+    }
+
+    public void forceReserve(String municipality, LocalDate date, TimeSlot timeSlot, int places) {
+        counterFor(municipality, date, timeSlot).addAndGet(places);
+    }
+
+    public void release(String municipality, LocalDate date, TimeSlot timeSlot) {
+        release(municipality, date, timeSlot, 1);
+    }
+
+    public void release(String municipality, LocalDate date, TimeSlot timeSlot, int places) {
+        counterFor(municipality, date, timeSlot).updateAndGet(current -> Math.max(0, current - places));
+    }
+
+    /**
+     * Lugares livres para cada dia/slot a partir de hoje, lidos apenas dos contadores.
+     */
+    public List<SlotAvailabilityDTO> availability(String municipality, int days) {
+        List<SlotAvailabilityDTO> result = new ArrayList<>(days * TimeSlot.values().length);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < days; i++) {
+            LocalDate date = today.plusDays(i);
+            for (TimeSlot timeSlot : TimeSlot.values()) {
+                int capacity = capacityOf(municipality, timeSlot);
+                AtomicInteger counter = reserved.get(new SlotKey(municipality, date, timeSlot));
+                int taken = counter == null ? 0 : counter.get();
+                result.add(new SlotAvailabilityDTO(date, timeSlot, capacity, Math.max(0, capacity - taken)));
+            }
+        }
+        return result;
+    }
+
+    // Os slots de dias passados já não recebem reservas; remove-os para o mapa não crescer sem limite.
+    @Scheduled(cron = "0 5 0 * * *")
+    void evictPastSlots() {
+        LocalDate today = LocalDate.now();
+        reserved.keySet().removeIf(key -> key.date().isBefore(today));
+    }
+
+    private AtomicInteger counterFor(String municipality, LocalDate date, TimeSlot timeSlot) {
+        return reserved.computeIfAbsent(new SlotKey(municipality, date, timeSlot), key -> new AtomicInteger());
+    }
+}
@@ -0,0 +1,9 @@
+package pt.zeromonos.garbagecollection.service;
+
+// Lançada quando o slot pedido já atingiu a capacidade do camião.
+public class SlotUnavailableException extends RuntimeException {
+
+    public SlotUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -27,6 +27,10 @@ document.addEventListener('DOMContentLoaded', () => {
             municipalitySelect.innerHTML = '<option value="">Não foi possível carregar</option>';
         });
 
+    // Chave do pedido em curso: se a ligação falhar e o utilizador submeter outra vez, o servidor
+    // reconhece o retry (Idempotency-Key) e não cria um segundo agendamento.
+    let idempotencyKey = null;
+
     // 2. Lidar com a submissão do formulário de agendamento.
     bookingForm.addEventListener('submit', event => {
         event.preventDefault(); // Impede que a página recarregue ao submeter.
@@ -35,15 +39,23 @@ document.addEventListener('DOMContentLoaded', () => {
         const formData = new FormData(bookingForm);
         const data = Object.fromEntries(formData.entries());
 
+        const headers = { 'Content-Type': 'application/json' };
+        if (!idempotencyKey && window.crypto && crypto.randomUUID) {
+            idempotencyKey = crypto.randomUUID();
+        }
+        if (idempotencyKey) {
+            headers['Idempotency-Key'] = idempotencyKey;
+        }
+
         // Faz o pedido POST para a nossa API.
         fetch('/api/bookings', {
             method: 'POST',
-            headers: {
-                'Content-Type': 'application/json',
-            },
+            headers: headers,
             body: JSON.stringify(data), // Converte o nosso objeto de dados para uma string JSON.
         })
         .then(response => {
+            // O servidor respondeu: a próxima submissão é um pedido novo (os dados podem ter mudado).
+            idempotencyKey = null;
             if (!response.ok) {
                 // Se a resposta não for 2xx (e.g., 400 Bad Request), lança um erro.
                 throw new Error('Falha no agendamento. Verifique os dados (e.g., a data é no futuro?).');
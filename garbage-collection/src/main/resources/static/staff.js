@@ -15,19 +15,104 @@ document.addEventListener('DOMContentLoaded', () => {
         return map;
     }, {});
 
+    // Ligação SSE ao município selecionado (recebe só as alterações, não a lista completa).
+    let eventSource = null;
+
     loadMunicipalities();
 
-    municipalitySelect.addEventListener('change', () => {
+    municipalitySelect.addEventListener('change', async () => {
         const selectedMunicipality = municipalitySelect.value;
         bookingsTbody.innerHTML = '';
+        closeEventStream();
 
         if (!selectedMunicipality) {
             return;
         }
 
-        loadBookingsForMunicipality(selectedMunicipality);
+        await showMunicipality(selectedMunicipality);
     });
 
+    // Carrega a lista e só depois liga o stream, a partir do X-Event-Sequence da lista: o servidor envia
+    // as alterações feitas entretanto (ou "reset", se já não as tiver).
+    async function showMunicipality(municipality) {
+        closeEventStream();
+        const sequence = await loadBookingsForMunicipality(municipality);
+        if (municipalitySelect.value !== municipality) {
+            return; // Entretanto foi escolhido outro município.
+        }
+        openEventStream(municipality, sequence);
+    }
+
+    function closeEventStream() {
+        if (eventSource) {
+            eventSource.close();
+            eventSource = null;
+        }
+    }
+
+    // O EventSource volta a ligar sozinho e envia o Last-Event-ID, por isso só recebemos o que falhou.
+    function openEventStream(municipality, sequence) {
+        const since = sequence !== null ? `?since=${encodeURIComponent(sequence)}` : '';
+        eventSource = new EventSource(`/api/bookings/staff/${encodeURIComponent(municipality)}/events${since}`);
+
+        eventSource.addEventListener('booking-created', event => {
+            const booking = JSON.parse(event.data);
+            if (findRow(booking.bookingId)) {
+                return;
+            }
+            if (!bookingsTbody.querySelector('tr[data-booking-id]')) {
+                bookingsTbody.innerHTML = '';
+            }
+            bookingsTbody.appendChild(createBookingRow({ ...booking, id: booking.bookingId }));
+        });
+
+        eventSource.addEventListener('status-changed', event => {
+            const change = JSON.parse(event.data);
+            const row = findRow(change.bookingId);
+            if (row && isNewer(row, change.version)) {
+                applyStatus(row, change.status);
+                row.dataset.version = change.version ?? '';
+            }
+        });
+
+        // Só as linhas que mudaram de facto, cada uma com a versão nova (os finais, por exemplo, ficam como estão).
+        eventSource.addEventListener('bulk-status-changed', event => {
+            const change = JSON.parse(event.data);
+            (change.bookings || []).forEach(booking => {
+                const row = findRow(booking.id);
+                if (row && isNewer(row, booking.version)) {
+                    applyStatus(row, change.status);
+                    row.dataset.version = booking.version ?? '';
+                }
+            });
+        });
+
+        // O servidor já não tem os eventos que perdemos: voltar a carregar a lista.
+        eventSource.addEventListener('reset', () => {
+            showMunicipality(municipality);
+        });
+    }
+
+    function findRow(bookingId) {
+        return bookingsTbody.querySelector(`tr[data-booking-id="${bookingId}"]`);
+    }
+
+    // A lista pode já trazer a alteração que o stream repete: ignorar versões que a linha já tem.
+    function isNewer(row, version) {
+        if (version === null || version === undefined || row.dataset.version === '') {
+            return true;
+        }
+        return Number(version) > Number(row.dataset.version);
+    }
+
+    function applyStatus(row, status) {
+        row.querySelector('.status-cell').textContent = formatStatus(status);
+        row.querySelector('.actions-cell select').value = status;
+        row.classList.remove('status-updated');
+        void row.offsetWidth;
+        row.classList.add('status-updated');
+    }
+
     function formatStatus(status) {
         return STATUS_LABELS[status] || status || 'Desconhecido';
     }
@@ -49,17 +134,19 @@ document.addEventListener('DOMContentLoaded', () => {
         }
     }
 
+    // Devolve o X-Event-Sequence da resposta (ou null, e o stream começa sem cursor).
     async function loadBookingsForMunicipality(municipality) {
         try {
-            const response = await fetch(`/api/bookings/staff/${municipality}`);
+            const response = await fetch(`/api/bookings/staff/${encodeURIComponent(municipality)}`);
             if (!response.ok) {
                 throw new Error('Não foi possível carregar os agendamentos.');
             }
+            const sequence = response.headers.get('X-Event-Sequence');
             const bookings = await response.json();
 
             if (!Array.isArray(bookings) || bookings.length === 0) {
                 bookingsTbody.innerHTML = '<tr><td colspan="6">Não existem agendamentos para este município.</td></tr>';
-                return;
+                return sequence;
             }
 
             bookingsTbody.innerHTML = '';
@@ -67,15 +154,20 @@ document.addEventListener('DOMContentLoaded', () => {
                 const row = createBookingRow(booking);
                 bookingsTbody.appendChild(row);
             });
+            return sequence;
         } catch (error) {
             console.error('Erro ao carregar agendamentos:', error);
             bookingsTbody.innerHTML = '<tr><td colspan="6" style="color: red;">Erro ao carregar dados.</td></tr>';
+            return null;
         }
     }
 
     function createBookingRow(booking) {
         const row = document.createElement('tr');
         row.dataset.bookingId = booking.id;
+        row.dataset.bookingDate = booking.bookingDate || '';
+        row.dataset.timeSlot = booking.timeSlot || '';
+        row.dataset.version = booking.version ?? '';
 
         const idCell = document.createElement('td');
         idCell.textContent = booking.id ?? '—';
@@ -140,9 +232,10 @@ document.addEventListener('DOMContentLoaded', () => {
             updateButton.disabled = true;
             updateButton.textContent = 'A atualizar...';
 
-            const updatedBooking = await updateBookingStatus(bookingId, newStatus);
+            const updatedBooking = await updateBookingStatus(bookingId, newStatus, row.dataset.version);
             statusCell.textContent = formatStatus(updatedBooking.status);
             statusSelect.value = updatedBooking.status;
+            row.dataset.version = updatedBooking.version ?? '';
 
             row.classList.remove('status-updated');
             // Força reflow para reiniciar a animação
@@ -157,15 +250,21 @@ document.addEventListener('DOMContentLoaded', () => {
         }
     }
 
-    async function updateBookingStatus(bookingId, status) {
+    async function updateBookingStatus(bookingId, status, version) {
         const response = await fetch(`/api/bookings/staff/${bookingId}/status`, {
             method: 'PATCH',
             headers: {
                 'Content-Type': 'application/json'
             },
-            body: JSON.stringify({ status })
+            body: JSON.stringify({ status, version: version !== '' ? Number(version) : null })
         });
 
+        if (response.status === 409) {
+            throw new Error('O agendamento foi alterado entretanto. Atualize a lista.');
+        }
+        if (response.status === 422) {
+            throw new Error('O agendamento não pode passar para este estado.');
+        }
         if (!response.ok) {
             let errorMessage = 'Não foi possível atualizar o estado.';
             try {
@@ -0,0 +1,96 @@
+package pt.zeromonos.garbagecollection.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.repository.BookingRequestRepository;
+import pt.zeromonos.garbagecollection.service.BookingService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Débito de inserção do POST /api/bookings/batch (saveAll de até MAX_BATCH_SIZE bookings numa transação,
+ * com hibernate.jdbc.batch_size) contra o mesmo número de POST /api/bookings (um save e um commit cada).
+ *
+ * Não corre no build normal (tag "benchmark"). Para correr:
+ *   mvn test -Dgroups=benchmark -Dbenchmark.excludedGroups= -Dtest=BatchInsertBenchmarkTest
+ */
+@Tag("benchmark")
+@DataJpaTest(showSql = false)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BatchInsertBenchmarkTest {
+
+    private static final int BOOKINGS = Integer.getInteger("benchmark.bookings", 20_000);
+    private static final List<String> MUNICIPALITIES = List.of("Lisboa", "Porto", "Braga", "Faro", "Coimbra");
+
+    @Autowired
+    private BookingRequestRepository bookingRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    record Result(String mode, double millis) {
+    }
+
+    @Test
+    void compareBatchAndSingleInserts() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        // Aquecimento dos dois caminhos (JIT, pool de ligações, sequência).
+        insertOneByOne(transaction, BOOKINGS / 10);
+        insertInBatches(transaction, BOOKINGS / 10);
+        bookingRepository.deleteAllInBatch();
+
+        List<Result> results = new ArrayList<>();
+        results.add(measure("single", () -> insertOneByOne(transaction, BOOKINGS)));
+        results.add(measure("batch", () -> insertInBatches(transaction, BOOKINGS)));
+
+        System.out.printf("%nBatch insert benchmark: %d bookings per mode, batch of %d%n", BOOKINGS,
+                BookingService.MAX_BATCH_SIZE);
+        System.out.printf("%-8s %12s %12s%n", "mode", "ms", "inserts/s");
+        for (Result result : results) {
+            System.out.printf("%-8s %12.0f %12.0f%n", result.mode(), result.millis(), BOOKINGS * 1000.0 / result.millis());
+        }
+        assertThat(bookingRepository.count()).isEqualTo(2L * BOOKINGS);
+    }
+
+    // Como o POST /api/bookings: um INSERT e um commit por booking.
+    private void insertOneByOne(TransactionTemplate transaction, int count) {
+        for (int i = 0; i < count; i++) {
+            BookingRequest booking = booking(i);
+            transaction.executeWithoutResult(status -> bookingRepository.save(booking));
+        }
+    }
+
+    // Como o POST /api/bookings/batch: um saveAll e um commit por batch.
+    private void insertInBatches(TransactionTemplate transaction, int count) {
+        for (int from = 0; from < count; from += BookingService.MAX_BATCH_SIZE) {
+            List<BookingRequest> batch = new ArrayList<>(BookingService.MAX_BATCH_SIZE);
+            for (int i = from; i < Math.min(count, from + BookingService.MAX_BATCH_SIZE); i++) {
+                batch.add(booking(i));
+            }
+            transaction.executeWithoutResult(status -> bookingRepository.saveAll(batch));
+        }
+    }
+
+    private Result measure(String mode, Runnable body) {
+        long start = System.nanoTime();
+        body.run();
+        return new Result(mode, (System.nanoTime() - start) / 1e6);
+    }
+
+    private static BookingRequest booking(int i) {
+        return new BookingRequest("Item " + i, MUNICIPALITIES.get(i % MUNICIPALITIES.size()), "Rua " + i,
+                LocalDate.now().plusDays(i % 30), TimeSlot.values()[i % TimeSlot.values().length]);
+    }
+}
@@ -0,0 +1,203 @@
+package pt.zeromonos.garbagecollection.benchmark;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Gerador de carga em modelo aberto: os pedidos chegam a um ritmo fixo (ratePerSecond), quer o servidor
+ * esteja a acompanhar quer não, como utilizadores reais. Cada pedido corre numa virtual thread.
+ *
+ * A latência é medida a partir do instante em que o pedido devia ter saído e não de quando saiu, por isso
+ * um servidor lento aparece nos percentis (sem "coordinated omission"). Os tempos ficam num histograma
+ * HdrHistogram por operação (µs, 3 dígitos significativos); o HdrHistogram vem com o micrometer-core.
+ *
+ * Se houver mais do que maxInFlight pedidos à espera, os seguintes contam como "dropped" e como erro.
+ */
+class LoadHarness {
+
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    // Uma operação do cenário: o supplier devolve o pedido a enviar, ou null se não houver nada para fazer.
+    record Step(String name, int weight, Supplier<HttpRequest> request) {
+    }
+
+    record Thresholds(Duration p95, Duration p99, double maxErrorRate) {
+    }
+
+    record Scenario(String name, double ratePerSecond, Duration duration, List<Step> mix, Thresholds thresholds) {
+    }
+
+    record OperationStats(String name, Histogram latencies, long errors) {
+    }
+
+    record Report(Scenario scenario, double elapsedSeconds, long dropped, List<OperationStats> operations,
+                  Histogram overall) {
+
+        long requests() {
+            return overall.getTotalCount();
+        }
+
+        long errors() {
+            return dropped + operations.stream().mapToLong(OperationStats::errors).sum();
+        }
+
+        double errorRate() {
+            long total = requests() + dropped;
+            return total == 0 ? 0 : errors() / (double) total;
+        }
+
+        // Limites ultrapassados; vazio quando o cenário passou.
+        List<String> breaches() {
+            List<String> breaches = new ArrayList<>();
+            Thresholds thresholds = scenario.thresholds();
+            long p95 = overall.getValueAtPercentile(95);
+            long p99 = overall.getValueAtPercentile(99);
+            if (requests() == 0) {
+                breaches.add(scenario.name() + ": no requests completed");
+            }
+            if (p95 > thresholds.p95().toNanos() / 1000) {
+                breaches.add(String.format("%s: p95 %.1f ms > %d ms", scenario.name(), p95 / 1000.0,
+                        thresholds.p95().toMillis()));
+            }
+            if (p99 > thresholds.p99().toNanos() / 1000) {
+                breaches.add(String.format("%s: p99 %.1f ms > %d ms", scenario.name(), p99 / 1000.0,
+                        thresholds.p99().toMillis()));
+            }
+            if (errorRate() > thresholds.maxErrorRate()) {
+                breaches.add(String.format("%s: error rate %.2f%% > %.2f%%", scenario.name(), errorRate() * 100,
+                        thresholds.maxErrorRate() * 100));
+            }
+            return breaches;
+        }
+
+        void print(PrintStream out) {
+            out.printf("%nScenario %s: %.0f req/s target, %.1f s, %d requests (%.1f req/s), %d errors, %d dropped%n",
+                    scenario.name(), scenario.ratePerSecond(), elapsedSeconds, requests(), requests() / elapsedSeconds,
+                    errors(), dropped);
+            out.printf("%-18s %9s %7s %9s %9s %9s %9s %9s%n",
+                    "operation", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+            for (OperationStats operation : operations) {
+                printRow(out, operation.name(), operation.latencies(), operation.errors());
+            }
+            printRow(out, "all", overall, errors());
+        }
+
+        private void printRow(PrintStream out, String name, Histogram histogram, long errors) {
+            out.printf("%-18s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, histogram.getTotalCount(), errors,
+                    histogram.getTotalCount() / elapsedSeconds,
+                    histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(95) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0, histogram.getMaxValue() / 1000.0);
+        }
+    }
+
+    private final HttpClient http;
+    private final int maxInFlight;
+
+    LoadHarness(HttpClient http, int maxInFlight) {
+        this.http = http;
+        this.maxInFlight = maxInFlight;
+    }
+
+    Report run(Scenario scenario) {
+        List<Step> mix = scenario.mix();
+        int[] cumulative = new int[mix.size()];
+        int totalWeight = 0;
+        Histogram[] latencies = new Histogram[mix.size()];
+        LongAdder[] errors = new LongAdder[mix.size()];
+        for (int i = 0; i < mix.size(); i++) {
+            totalWeight += mix.get(i).weight();
+            cumulative[i] = totalWeight;
+            latencies[i] = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+            errors[i] = new LongAdder();
+        }
+
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / scenario.ratePerSecond());
+        AtomicInteger inFlight = new AtomicInteger();
+        LongAdder dropped = new LongAdder();
+        long start = System.nanoTime();
+        long end = start + scenario.duration().toNanos();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long arrival = 0; ; arrival++) {
+                long intended = start + arrival * intervalNanos;
+                if (intended >= end) {
+                    break;
+                }
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                int step = pick(cumulative, totalWeight);
+                HttpRequest request = mix.get(step).request().get();
+                if (request == null) {
+                    continue;
+                }
+                if (inFlight.incrementAndGet() > maxInFlight) {
+                    inFlight.decrementAndGet();
+                    dropped.increment();
+                    continue;
+                }
+                executor.execute(() -> {
+                    try {
+                        if (!send(request)) {
+                            errors[step].increment();
+                        }
+                        long micros = (System.nanoTime() - intended) / 1000;
+                        latencies[step].recordValue(Math.min(micros, HIGHEST_MICROS));
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Histogram overall = new Histogram(HIGHEST_MICROS, 3);
+        List<OperationStats> operations = new ArrayList<>(mix.size());
+        for (int i = 0; i < mix.size(); i++) {
+            overall.add(latencies[i]);
+            operations.add(new OperationStats(mix.get(i).name(), latencies[i], errors[i].sum()));
+        }
+        return new Report(scenario, elapsedSeconds, dropped.sum(), operations, overall);
+    }
+
+    // 2xx e 304 contam como sucesso; tudo o resto (incluindo 429 e timeouts) é erro.
+    private boolean send(HttpRequest request) {
+        try {
+            int status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            return (status >= 200 && status < 300) || status == 304;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static int pick(int[] cumulative, int totalWeight) {
+        int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (roll < cumulative[i]) {
+                return i;
+            }
+        }
+        return cumulative.length - 1;
+    }
+}
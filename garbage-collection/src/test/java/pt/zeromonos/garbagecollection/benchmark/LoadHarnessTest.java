@@ -0,0 +1,257 @@
+package pt.zeromonos.garbagecollection.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import pt.zeromonos.garbagecollection.GarbageCollectionServiceApplication;
+import pt.zeromonos.garbagecollection.benchmark.LoadHarness.Report;
+import pt.zeromonos.garbagecollection.benchmark.LoadHarness.Scenario;
+import pt.zeromonos.garbagecollection.benchmark.LoadHarness.Step;
+import pt.zeromonos.garbagecollection.benchmark.LoadHarness.Thresholds;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Teste de carga com a aplicação completa (Tomcat, H2, caches) e uma GeoAPI simulada localmente, para
+ * substituir o k6: não precisa de binários externos nem de uma instância já a correr.
+ *
+ * Semeia N bookings pelo POST /batch e corre três cenários em modelo aberto (ver LoadHarness):
+ *   citizen  - consultas por token, municípios (gzip), disponibilidade e histórico
+ *   staff    - páginas da listagem, resumo do dashboard, listagem completa e mudanças de estado
+ *   campaign - pico de criações (com Idempotency-Key, 10% são retries) e consultas por token
+ * Cada cliente simulado tem o seu IP (X-Forwarded-For), como atrás de um proxy, por isso o rate limit
+ * por cliente está ativo tal como em produção. Falha se algum cenário ultrapassar os limites de p95/p99
+ * ou de taxa de erros, depois de imprimir os relatórios de todos.
+ *
+ * Não corre no build normal (tags "benchmark" e "load"). Para correr:
+ *   mvn -Pload test
+ * Parâmetros opcionais: -Dload.bookings=5000 -Dload.seconds=20 -Dload.scale=1.0 (multiplica os ritmos)
+ * e -Dload.backend=memory (storage.backend; por omissão jpa)
+ */
+@Tag("benchmark")
+@Tag("load")
+class LoadHarnessTest {
+
+    private static final int BOOKINGS = Integer.getInteger("load.bookings", 5_000);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 20);
+    private static final double SCALE = Double.parseDouble(System.getProperty("load.scale", "1.0"));
+    private static final String BACKEND = System.getProperty("load.backend", "jpa");
+    private static final int CLIENTS = 10_000;
+    private static final int SEED_BATCH = 500;
+    private static final List<String> MUNICIPALITIES = List.of(
+            "Aveiro", "Beja", "Braga", "Bragança", "Castelo Branco", "Coimbra", "Évora", "Faro", "Guarda", "Leiria",
+            "Lisboa", "Portalegre", "Porto", "Santarém", "Setúbal", "Sintra", "Viana do Castelo", "Vila Real", "Viseu");
+
+    private static HttpServer geoApi;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> tokens = new ArrayList<>(BOOKINGS);
+    private final Queue<Long> receivedIds = new ConcurrentLinkedQueue<>();
+    // Últimas criações do cenário campaign (chave + corpo), para simular retries.
+    private final AtomicReferenceArray<String[]> recentCreations = new AtomicReferenceArray<>(256);
+
+    private String baseUrl;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void startGeoApi() throws IOException {
+        byte[] body = new ObjectMapper().writeValueAsBytes(MUNICIPALITIES);
+        geoApi = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        geoApi.createContext("/municipios", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        geoApi.start();
+    }
+
+    @AfterAll
+    static void stopGeoApi() {
+        geoApi.stop(0);
+    }
+
+    @Test
+    void mixedWorkloadStaysWithinThresholds() throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(GarbageCollectionServiceApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:load-harness",
+                        "geoapi.url=http://127.0.0.1:" + geoApi.getAddress().getPort() + "/municipios",
+                        "geoapi.snapshot-file=" + tempDir.resolve("municipalities-snapshot.json"),
+                        "history.dir=" + tempDir.resolve("history"),
+                        "ingestion.journal-dir=" + tempDir.resolve("journal"),
+                        "storage.backend=" + BACKEND,
+                        "storage.dir=" + tempDir.resolve("store"),
+                        "capacity.default-limit=1000000",
+                        "admission.client-header=X-Forwarded-For",
+                        "logging.level.pt.zeromonos=WARN")
+                .run();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/bookings";
+            HttpClient http = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(executor)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+            seed(http);
+
+            LoadHarness harness = new LoadHarness(http, 2_000);
+            // Aquecimento (JIT, pools de ligações, caches); o relatório é descartado.
+            harness.run(citizen(Duration.ofSeconds(Math.max(3, SECONDS / 4))));
+
+            List<Report> reports = List.of(
+                    harness.run(citizen(Duration.ofSeconds(SECONDS))),
+                    harness.run(staff(Duration.ofSeconds(SECONDS))),
+                    harness.run(campaign(Duration.ofSeconds(SECONDS))));
+
+            System.out.printf("%nLoad harness: %d seeded bookings, %d municipalities, scale %.2f, %s backend%n",
+                    BOOKINGS, MUNICIPALITIES.size(), SCALE, BACKEND);
+            List<String> breaches = new ArrayList<>();
+            for (Report report : reports) {
+                report.print(System.out);
+                breaches.addAll(report.breaches());
+            }
+            assertThat(breaches).as("threshold breaches").isEmpty();
+        } finally {
+            context.close();
+        }
+    }
+
+    private Scenario citizen(Duration duration) {
+        return new Scenario("citizen", 200 * SCALE, duration, List.of(
+                new Step("token lookup", 60, () -> get("/token/" + randomToken())),
+                new Step("municipalities", 20, () -> request("/municipalities")
+                        .header("Accept-Encoding", "gzip").GET().build()),
+                new Step("availability", 15, () -> get("/availability/" + randomMunicipality() + "?days=7")),
+                new Step("history", 5, () -> get("/token/" + randomToken() + "/history"))),
+                new Thresholds(Duration.ofMillis(100), Duration.ofMillis(250), 0.01));
+    }
+
+    private Scenario staff(Duration duration) {
+        return new Scenario("staff", 50 * SCALE, duration, List.of(
+                new Step("staff page", 40, () -> get("/staff/" + randomMunicipality() + "/page?size=50")),
+                new Step("summary", 30, () -> get("/staff/" + randomMunicipality() + "/summary?days=7")),
+                new Step("staff listing", 10, () -> get("/staff/" + randomMunicipality())),
+                new Step("status update", 20, this::scheduleNext)),
+                new Thresholds(Duration.ofMillis(200), Duration.ofMillis(500), 0.01));
+    }
+
+    private Scenario campaign(Duration duration) {
+        return new Scenario("campaign", 100 * SCALE, duration, List.of(
+                new Step("create", 70, this::create),
+                new Step("token lookup", 30, () -> get("/token/" + randomToken()))),
+                new Thresholds(Duration.ofMillis(250), Duration.ofMillis(800), 0.01));
+    }
+
+    // Cria um booking novo ou, 10% das vezes, repete uma criação recente com a mesma Idempotency-Key.
+    private HttpRequest create() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int slot = random.nextInt(recentCreations.length());
+        String[] previous = recentCreations.get(slot);
+        String[] creation = previous != null && random.nextInt(10) == 0
+                ? previous
+                : new String[]{UUID.randomUUID().toString(), bookingJson(random.nextInt(1_000_000))};
+        recentCreations.set(slot, creation);
+        return request("")
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", creation[0])
+                .POST(HttpRequest.BodyPublishers.ofString(creation[1]))
+                .build();
+    }
+
+    // RECEIVED -> SCHEDULED, cada booking semeado no máximo uma vez (ainda na versão 0); sem bookings por agendar
+    // não envia nada.
+    private HttpRequest scheduleNext() {
+        Long id = receivedIds.poll();
+        if (id == null) {
+            return null;
+        }
+        return request("/staff/" + id + "/status")
+                .header("Content-Type", "application/json")
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"status\":\"SCHEDULED\",\"version\":0}"))
+                .build();
+    }
+
+    private void seed(HttpClient http) throws Exception {
+        for (int offset = 0; offset < BOOKINGS; offset += SEED_BATCH) {
+            StringBuilder body = new StringBuilder("[");
+            for (int i = offset; i < Math.min(BOOKINGS, offset + SEED_BATCH); i++) {
+                body.append(i == offset ? "" : ",").append(bookingJson(i));
+            }
+            // Cada batch de um importador diferente: um batch de SEED_BATCH gasta o bucket inteiro do cliente.
+            HttpResponse<String> response = http.send(request("/batch")
+                    .setHeader("X-Forwarded-For", "10.255.0." + offset / SEED_BATCH)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body.append(']').toString()))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertThat(response.statusCode()).as("seed batch").isEqualTo(200);
+            for (JsonNode result : objectMapper.readTree(response.body())) {
+                assertThat(result.path("created").asBoolean()).as(result.path("error").asText()).isTrue();
+                tokens.add(result.path("bookingToken").asText());
+                receivedIds.add(result.path("id").asLong());
+            }
+        }
+    }
+
+    private String bookingJson(int i) {
+        return String.format("{\"itemDescription\":\"Item %d\",\"municipality\":\"%s\",\"fullAddress\":\"Rua %d\","
+                        + "\"bookingDate\":\"%s\",\"timeSlot\":\"%s\"}",
+                i, MUNICIPALITIES.get(i % MUNICIPALITIES.size()), i, LocalDate.now().plusDays(1 + i % 30),
+                TimeSlot.values()[i % TimeSlot.values().length]);
+    }
+
+    private HttpRequest get(String path) {
+        return request(path).GET().build();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        int client = ThreadLocalRandom.current().nextInt(CLIENTS);
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("X-Forwarded-For", "10.0." + (client / 256) + "." + (client % 256));
+    }
+
+    private String randomToken() {
+        return tokens.get(ThreadLocalRandom.current().nextInt(tokens.size()));
+    }
+
+    // Já codificado para usar no path ("Castelo Branco", "Évora").
+    private static String randomMunicipality() {
+        String name = MUNICIPALITIES.get(ThreadLocalRandom.current().nextInt(MUNICIPALITIES.size()));
+        return URLEncoder.encode(name, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
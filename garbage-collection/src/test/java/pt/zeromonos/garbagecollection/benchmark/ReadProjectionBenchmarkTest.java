@@ -0,0 +1,122 @@
+package pt.zeromonos.garbagecollection.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.repository.BookingRequestRepository;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compara as leituras da API com a entidade (caminho antigo) e com as projeções em records.
+ *
+ * Cada operação corre na sua própria transação, como um pedido HTTP: carrega e serializa para JSON.
+ * Mede o tempo e os bytes alocados pela thread (com.sun.management.ThreadMXBean) por operação.
+ *
+ * Não corre no build normal (tag "benchmark"). Para correr:
+ *   mvn test -Dgroups=benchmark -Dbenchmark.excludedGroups= -Dtest=ReadProjectionBenchmarkTest
+ */
+@Tag("benchmark")
+@DataJpaTest(showSql = false)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReadProjectionBenchmarkTest {
+
+    private static final int BOOKINGS = 5_000;
+    private static final int STAFF_ROWS = 500;
+    private static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 20_000);
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Autowired
+    private BookingRequestRepository bookingRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    record Result(String path, double micros, long bytes) {
+    }
+
+    @Test
+    void compareEntityAndProjectionReads() {
+        List<String> tokens = seed();
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        int[] next = {0};
+        Supplier<String> token = () -> tokens.get(next[0]++ % tokens.size());
+
+        List<Result> results = new ArrayList<>();
+        results.add(measure("token / entity", ITERATIONS, () -> readWrite.execute(status ->
+                json(bookingRepository.findByBookingToken(token.get()).orElseThrow()))));
+        results.add(measure("token / projection", ITERATIONS, () -> readOnly.execute(status ->
+                json(bookingRepository.findLookupByBookingToken(token.get()).orElseThrow()))));
+        int staffIterations = Math.max(1, ITERATIONS / 50);
+        results.add(measure("staff / entity", staffIterations, () -> readWrite.execute(status ->
+                json(bookingRepository.findByMunicipality("Lisboa")))));
+        results.add(measure("staff / projection", staffIterations, () -> readOnly.execute(status ->
+                json(bookingRepository.findStaffViewsByMunicipality("Lisboa")))));
+
+        System.out.printf("%nRead projections benchmark: %d bookings, %d staff rows%n", BOOKINGS, STAFF_ROWS);
+        System.out.printf("%-20s %12s %14s%n", "path", "µs/op", "bytes/op");
+        for (Result result : results) {
+            System.out.printf("%-20s %12.1f %14d%n", result.path(), result.micros(), result.bytes());
+        }
+
+        assertThat(results).allSatisfy(result -> assertThat(result.bytes()).isPositive());
+    }
+
+    private Result measure(String path, int iterations, Supplier<String> operation) {
+        // Aquecimento com o mesmo número de operações.
+        for (int i = 0; i < iterations; i++) {
+            operation.get();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long length = 0;
+        for (int i = 0; i < iterations; i++) {
+            length += operation.get().length();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        assertThat(length).isPositive();
+        return new Result(path, elapsed / 1000.0 / iterations, bytes / iterations);
+    }
+
+    private List<String> seed() {
+        List<BookingRequest> bookings = new ArrayList<>(BOOKINGS);
+        for (int i = 0; i < BOOKINGS; i++) {
+            String municipality = i < STAFF_ROWS ? "Lisboa" : "Porto";
+            bookings.add(new BookingRequest("Item " + i, municipality, "Rua " + i,
+                    LocalDate.now().plusDays(i % 30), TimeSlot.values()[i % TimeSlot.values().length]));
+        }
+        bookingRepository.saveAll(bookings);
+        return bookings.stream().map(BookingRequest::getBookingToken).toList();
+    }
+
+    private String json(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
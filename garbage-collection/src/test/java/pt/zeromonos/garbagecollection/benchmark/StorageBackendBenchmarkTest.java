@@ -0,0 +1,137 @@
+package pt.zeromonos.garbagecollection.benchmark;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import pt.zeromonos.garbagecollection.config.StorageProperties;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.repository.BookingRequestRepository;
+import pt.zeromonos.garbagecollection.repository.BookingStore;
+import pt.zeromonos.garbagecollection.repository.InMemoryBookingStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compara os dois backends de storage.backend (JPA sobre H2 e InMemoryBookingStore) nas operações mais
+ * frequentes da API: criação, consulta por token e página da listagem da equipa.
+ *
+ * Do lado JPA cada operação corre na sua própria transação, como um pedido HTTP, sem o log de SQL que o
+ * DataJpaTest liga por omissão (só pesaria de um dos lados). O backend em memória escreve o change log num
+ * diretório temporário (sem fsync, como por omissão).
+ *
+ * Não corre no build normal (tag "benchmark"). Para correr:
+ *   mvn test -Dgroups=benchmark -Dbenchmark.excludedGroups= -Dtest=StorageBackendBenchmarkTest
+ */
+@Tag("benchmark")
+@DataJpaTest(showSql = false)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StorageBackendBenchmarkTest {
+
+    private static final int BOOKINGS = 5_000;
+    private static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 20_000);
+    private static final List<String> MUNICIPALITIES = List.of("Lisboa", "Porto", "Braga", "Faro", "Coimbra");
+
+    @Autowired
+    private BookingRequestRepository bookingRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path dir;
+
+    private InMemoryBookingStore memoryStore;
+
+    record Result(String backend, String operation, double micros) {
+    }
+
+    @BeforeEach
+    void openMemoryStore() throws IOException {
+        StorageProperties properties = new StorageProperties();
+        properties.setBackend(StorageProperties.Backend.MEMORY);
+        properties.setDir(dir);
+        properties.setSnapshotInterval(Duration.ofHours(1));
+        memoryStore = new InMemoryBookingStore(properties, Jackson2ObjectMapperBuilder.json().build());
+        memoryStore.open();
+    }
+
+    @AfterEach
+    void closeMemoryStore() throws IOException {
+        memoryStore.close();
+    }
+
+    @Test
+    void compareJpaAndMemoryBackends() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        List<Result> results = new ArrayList<>();
+        results.addAll(run("jpa", bookingRepository, operation -> transaction.execute(status -> operation.get())));
+        results.addAll(run("memory", memoryStore, Supplier::get));
+
+        System.out.printf("%nStorage backend benchmark: %d bookings, %d iterations%n", BOOKINGS, ITERATIONS);
+        System.out.printf("%-8s %-14s %12s %12s%n", "backend", "operation", "µs/op", "ops/s");
+        for (Result result : results) {
+            System.out.printf("%-8s %-14s %12.2f %12.0f%n", result.backend(), result.operation(), result.micros(),
+                    1e6 / result.micros());
+        }
+        assertThat(memoryStore.size()).isEqualTo(bookingRepository.count());
+    }
+
+    // Como cada backend corre uma operação (na transação, para o JPA).
+    private interface Runner {
+        Object execute(Supplier<?> operation);
+    }
+
+    private List<Result> run(String backend, BookingStore store, Runner runner) {
+        List<String> tokens = new ArrayList<>(BOOKINGS);
+        for (int i = 0; i < BOOKINGS; i++) {
+            tokens.add(store.save(booking(i)).getBookingToken());
+        }
+        int[] next = {BOOKINGS};
+
+        List<Result> results = new ArrayList<>();
+        results.add(measure(backend, "save", ITERATIONS, () ->
+                runner.execute(() -> store.save(booking(next[0]++)))));
+        results.add(measure(backend, "token lookup", ITERATIONS, () ->
+                runner.execute(() -> store.findLookupByBookingToken(tokens.get(next[0]++ % BOOKINGS)).orElseThrow())));
+        results.add(measure(backend, "staff page", ITERATIONS, () ->
+                runner.execute(() -> store.findStaffPage(MUNICIPALITIES.get(next[0]++ % MUNICIPALITIES.size()), null,
+                        LocalDate.now(), null, null, null, Limit.of(50)))));
+        return results;
+    }
+
+    private Result measure(String backend, String operation, int iterations, Runnable body) {
+        // Aquecimento com o mesmo número de operações.
+        for (int i = 0; i < iterations; i++) {
+            body.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            body.run();
+        }
+        return new Result(backend, operation, (System.nanoTime() - start) / 1000.0 / iterations);
+    }
+
+    private static BookingRequest booking(int i) {
+        return new BookingRequest("Item " + i, MUNICIPALITIES.get(i % MUNICIPALITIES.size()), "Rua " + i,
+                LocalDate.now().plusDays(i % 30), TimeSlot.values()[i % TimeSlot.values().length]);
+    }
+}
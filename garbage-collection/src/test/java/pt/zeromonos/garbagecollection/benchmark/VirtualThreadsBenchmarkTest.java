@@ -0,0 +1,237 @@
+package pt.zeromonos.garbagecollection.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import pt.zeromonos.garbagecollection.GarbageCollectionServiceApplication;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compara o modo normal (threads de plataforma do Tomcat) com spring.threads.virtual.enabled=true.
+ *
+ * A GeoAPI é simulada por um servidor local que demora a responder e a cache de municípios expira
+ * a cada segundo em modo BLOCKING, por isso parte dos pedidos fica à espera da GeoAPI enquanto os
+ * outros só tocam na base de dados. Cada modo corre com N clientes em ciclo fechado durante um
+ * tempo fixo; o throughput medido é o máximo sustentado para essa concorrência.
+ *
+ * Não corre no build normal (tag "benchmark"). Para correr:
+ *   mvn test -Dgroups=benchmark -Dbenchmark.excludedGroups= -Dtest=VirtualThreadsBenchmarkTest
+ * Parâmetros opcionais: -Dbenchmark.seconds=10 -Dbenchmark.concurrency=400 -Dbenchmark.geoapi-delay-ms=250
+ */
+@Tag("benchmark")
+class VirtualThreadsBenchmarkTest {
+
+    private static final int SECONDS = Integer.getInteger("benchmark.seconds", 10);
+    private static final int WARMUP_SECONDS = 3;
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 400);
+    private static final int GEOAPI_DELAY_MS = Integer.getInteger("benchmark.geoapi-delay-ms", 250);
+    private static final List<String> MUNICIPALITIES = List.of("Aveiro", "Braga", "Coimbra", "Lisboa", "Porto");
+
+    private static HttpServer geoApi;
+    private static ExecutorService geoApiExecutor;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path tempDir;
+
+    record Result(String mode, long requests, long errors, double throughput, long p50Micros, long p99Micros) {
+    }
+
+    @BeforeAll
+    static void startSlowGeoApi() throws IOException {
+        byte[] body = new ObjectMapper().writeValueAsBytes(MUNICIPALITIES);
+        geoApiExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        geoApi = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        geoApi.setExecutor(geoApiExecutor);
+        geoApi.createContext("/municipios", exchange -> {
+            try {
+                Thread.sleep(GEOAPI_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        geoApi.start();
+    }
+
+    @AfterAll
+    static void stopSlowGeoApi() {
+        geoApi.stop(0);
+        geoApiExecutor.shutdownNow();
+    }
+
+    @Test
+    void comparePlatformAndVirtualThreads() throws Exception {
+        Result platform = run("platform", false);
+        Result virtual = run("virtual", true);
+
+        System.out.printf("%nVirtual threads benchmark: %d clients, %ds, GeoAPI delay %dms%n",
+                CONCURRENCY, SECONDS, GEOAPI_DELAY_MS);
+        System.out.printf("%-10s %10s %8s %12s %10s %10s%n", "mode", "requests", "errors", "req/s", "p50 ms", "p99 ms");
+        for (Result result : List.of(platform, virtual)) {
+            System.out.printf("%-10s %10d %8d %12.1f %10.1f %10.1f%n", result.mode(), result.requests(),
+                    result.errors(), result.throughput(), result.p50Micros() / 1000.0, result.p99Micros() / 1000.0);
+        }
+
+        assertThat(platform.requests()).isPositive();
+        assertThat(virtual.requests()).isPositive();
+    }
+
+    private Result run(String mode, boolean virtualThreads) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(GarbageCollectionServiceApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.datasource.url=jdbc:h2:mem:benchmark-" + mode,
+                        "geoapi.url=http://127.0.0.1:" + geoApi.getAddress().getPort() + "/municipios",
+                        "geoapi.refresh-mode=blocking",
+                        "geoapi.cache-ttl=1s",
+                        "geoapi.snapshot-file=" + tempDir.resolve(mode + "-snapshot.json"),
+                        "capacity.default-limit=1000000",
+                        "logging.level.pt.zeromonos=WARN")
+                .run();
+        try {
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/bookings";
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                HttpClient http = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .executor(clients)
+                        .connectTimeout(Duration.ofSeconds(10))
+                        .build();
+
+                load(http, clients, baseUrl, WARMUP_SECONDS);
+                List<long[]> samples = load(http, clients, baseUrl, SECONDS);
+                return summarize(mode, samples);
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    // Corre CONCURRENCY clientes durante "seconds"; cada um devolve {latências em µs..., erros} no último elemento.
+    private List<long[]> load(HttpClient http, ExecutorService clients, String baseUrl, int seconds) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        List<Future<long[]>> futures = new ArrayList<>(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            futures.add(clients.submit(() -> client(http, baseUrl, deadline)));
+        }
+        List<long[]> samples = new ArrayList<>(CONCURRENCY);
+        for (Future<long[]> future : futures) {
+            samples.add(future.get());
+        }
+        return samples;
+    }
+
+    // Mistura por iteração: 1 criação (resolve o município na GeoAPI), 2 consultas por token e 1 disponibilidade.
+    private long[] client(HttpClient http, String baseUrl, long deadline) {
+        long[] latencies = new long[1024];
+        int count = 0;
+        long errors = 0;
+        iterations:
+        while (System.nanoTime() < deadline) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            String municipality = MUNICIPALITIES.get(random.nextInt(MUNICIPALITIES.size()));
+            String body = String.format("{\"itemDescription\":\"Sofá\",\"municipality\":\"%s\",\"fullAddress\":\"Rua %d\","
+                            + "\"bookingDate\":\"%s\",\"timeSlot\":\"MORNING\"}",
+                    municipality, random.nextInt(1000), LocalDate.now().plusDays(1 + random.nextInt(30)));
+
+            String token = null;
+            for (int step = 0; step < 4; step++) {
+                HttpRequest request;
+                if (step == 0) {
+                    request = HttpRequest.newBuilder(URI.create(baseUrl))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(body))
+                            .build();
+                } else if (step < 3) {
+                    if (token == null) {
+                        continue;
+                    }
+                    request = HttpRequest.newBuilder(URI.create(baseUrl + "/token/" + token)).GET().build();
+                } else {
+                    request = HttpRequest.newBuilder(URI.create(baseUrl + "/availability/" + municipality)).GET().build();
+                }
+
+                long start = System.nanoTime();
+                try {
+                    HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                    if (response.statusCode() >= 300) {
+                        errors++;
+                    } else if (step == 0) {
+                        JsonNode created = objectMapper.readTree(response.body());
+                        token = created.path("bookingToken").asText(null);
+                    }
+                } catch (IOException e) {
+                    errors++;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break iterations;
+                }
+                if (count == latencies.length - 1) {
+                    latencies = Arrays.copyOf(latencies, latencies.length * 2);
+                }
+                latencies[count++] = (System.nanoTime() - start) / 1000;
+            }
+        }
+        long[] result = Arrays.copyOf(latencies, count + 1);
+        result[count] = errors;
+        return result;
+    }
+
+    private static Result summarize(String mode, List<long[]> samples) {
+        long errors = 0;
+        int total = 0;
+        for (long[] sample : samples) {
+            total += sample.length - 1;
+            errors += sample[sample.length - 1];
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (long[] sample : samples) {
+            System.arraycopy(sample, 0, all, offset, sample.length - 1);
+            offset += sample.length - 1;
+        }
+        Arrays.sort(all);
+        return new Result(mode, total, errors, total / (double) SECONDS, percentile(all, 0.50), percentile(all, 0.99));
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -6,21 +6,47 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import pt.zeromonos.garbagecollection.domain.BookingRequest;
 import pt.zeromonos.garbagecollection.domain.BookingStatus;
 import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.BatchBookingResultDTO;
+import pt.zeromonos.garbagecollection.dto.BookingLookupDTO;
 import pt.zeromonos.garbagecollection.dto.BookingRequestDTO;
+import pt.zeromonos.garbagecollection.dto.BulkStatusUpdateDTO;
+import pt.zeromonos.garbagecollection.dto.StatusHistoryEntryDTO;
+import pt.zeromonos.garbagecollection.event.BookingEventStream;
+import pt.zeromonos.garbagecollection.service.AdmissionControl;
+import pt.zeromonos.garbagecollection.service.BookingConflictException;
+import pt.zeromonos.garbagecollection.service.BookingExportService;
 import pt.zeromonos.garbagecollection.service.BookingService;
+import pt.zeromonos.garbagecollection.service.IdempotencyKeyReusedException;
+import pt.zeromonos.garbagecollection.service.IdempotencyStore;
+import pt.zeromonos.garbagecollection.service.IllegalStatusTransitionException;
+import pt.zeromonos.garbagecollection.service.MunicipalityPayloadCache;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -38,6 +64,22 @@ class BookingControllerTest {
     // por um mock do Mockito. Essencial para isolar a camada web.
     @MockBean
     private BookingService bookingService;
+
+    @MockBean
+    private BookingEventStream bookingEventStream;
+
+    @MockBean
+    private BookingExportService bookingExportService;
+
+    @MockBean
+    private MunicipalityPayloadCache municipalityPayloadCache;
+
+    // Sem stubs, acquire() devolve 0 (ADMITTED) e os outros testes passam pela admissão.
+    @MockBean
+    private AdmissionControl admissionControl;
+
+    @MockBean
+    private IdempotencyStore idempotencyStore;
     
     // O ObjectMapper ajuda-nos a converter objetos Java para uma string JSON.
     @Autowired
@@ -71,7 +113,133 @@ class BookingControllerTest {
                 .andExpect(jsonPath("$.bookingToken").exists()); // Verifica se o token foi gerado na resposta.
     }
 
+    // Em modo journal o booking fica aceite mas ainda não gravado: 202 com o token.
+    @Test
+    void whenPostBooking_inWriteBehindMode_thenReturns202WithToken() throws Exception {
+        BookingRequestDTO dto = new BookingRequestDTO();
+        dto.setMunicipality("Lisboa");
+        dto.setItemDescription("Um monitor");
+        dto.setBookingDate(LocalDate.parse("2026-05-10"));
+        dto.setTimeSlot(TimeSlot.MORNING);
+        BookingRequest accepted = new BookingRequest(
+            dto.getItemDescription(), dto.getMunicipality(), "", dto.getBookingDate(), dto.getTimeSlot());
+
+        when(bookingService.createBooking(any(BookingRequestDTO.class))).thenReturn(accepted);
+        when(bookingService.isWriteBehind()).thenReturn(true);
+
+        mockMvc.perform(post("/api/bookings")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(dto)))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.bookingToken").value(accepted.getBookingToken()));
+    }
+
     // Testar o POST quando o serviço lança uma excepção (dados inválidos).
+    @Test
+    void whenGetHistory_thenReturnsTransitionsOrUnknownTokenIs404() throws Exception {
+        LocalDateTime created = LocalDateTime.parse("2026-05-01T10:00:00");
+        when(bookingService.getStatusHistory("abc")).thenReturn(List.of(
+                new StatusHistoryEntryDTO(BookingStatus.RECEIVED, created),
+                new StatusHistoryEntryDTO(BookingStatus.SCHEDULED, created.plusHours(1))));
+        when(bookingService.getStatusHistory("unknown")).thenReturn(List.of());
+
+        mockMvc.perform(get("/api/bookings/token/abc/history"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("RECEIVED"))
+                .andExpect(jsonPath("$[1].status").value("SCHEDULED"));
+        mockMvc.perform(get("/api/bookings/token/unknown/history"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void whenGetMunicipalities_thenServesCachedBytesAndRevalidatesWithEtag() throws Exception {
+        byte[] json = "[\"Lisboa\"]".getBytes(StandardCharsets.UTF_8);
+        byte[] gzip = {31, -117, 8, 0};
+        when(municipalityPayloadCache.current())
+                .thenReturn(new MunicipalityPayloadCache.Payload(json, gzip, "\"abc\"", "\"abc-gzip\""));
+
+        mockMvc.perform(get("/api/bookings/municipalities"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=3600, public"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(jsonPath("$[0]").value("Lisboa"));
+        mockMvc.perform(get("/api/bookings/municipalities").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc-gzip\""))
+                .andExpect(content().bytes(gzip));
+        mockMvc.perform(get("/api/bookings/municipalities").header(HttpHeaders.IF_NONE_MATCH, "\"abc\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void whenGetTerminalBookingByToken_thenReturnsEtagAndNotModified() throws Exception {
+        LocalDateTime updated = LocalDateTime.parse("2026-05-01T10:00:00");
+        when(bookingService.findBookingByToken("done")).thenReturn(Optional.of(new BookingLookupDTO(1L, "done",
+                "Sofá", "Lisboa", LocalDate.parse("2026-05-10"), TimeSlot.MORNING, BookingStatus.COMPLETED, updated)));
+        when(bookingService.findBookingByToken("open")).thenReturn(Optional.of(new BookingLookupDTO(2L, "open",
+                "Sofá", "Lisboa", LocalDate.parse("2026-05-10"), TimeSlot.MORNING, BookingStatus.SCHEDULED, updated)));
+
+        String etag = mockMvc.perform(get("/api/bookings/token/done"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).startsWith("\"COMPLETED-");
+        mockMvc.perform(get("/api/bookings/token/done").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/bookings/token/open"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void whenPostBooking_andClientIsRateLimited_thenReturns429WithRetryAfter() throws Exception {
+        BookingRequestDTO dto = new BookingRequestDTO();
+        dto.setMunicipality("Lisboa");
+        when(admissionControl.clientKey(any())).thenReturn("127.0.0.1");
+        when(admissionControl.acquire("127.0.0.1")).thenReturn(3L);
+
+        mockMvc.perform(post("/api/bookings")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(dto)))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "3"));
+        verify(bookingService, never()).createBooking(any());
+        verify(admissionControl, never()).release();
+    }
+
+    @Test
+    void whenPostBooking_withIdempotencyKey_thenGoesThroughTheStore() throws Exception {
+        BookingRequestDTO dto = new BookingRequestDTO();
+        dto.setMunicipality("Lisboa");
+        dto.setItemDescription("Sofá");
+        BookingRequest saved = new BookingRequest("Sofá", "Lisboa", "", LocalDate.parse("2026-05-10"), TimeSlot.MORNING);
+        when(bookingService.createBooking(any(BookingRequestDTO.class))).thenReturn(saved);
+        when(admissionControl.clientKey(any())).thenReturn("127.0.0.1");
+        when(idempotencyStore.execute(eq("127.0.0.1"), eq("retry-1"), eq(dto), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(3).get());
+        when(idempotencyStore.execute(eq("127.0.0.1"), eq("reused"), any(), any()))
+                .thenThrow(new IdempotencyKeyReusedException("different request"));
+
+        mockMvc.perform(post("/api/bookings")
+                .header("Idempotency-Key", "retry-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(dto)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.bookingToken").value(saved.getBookingToken()));
+        mockMvc.perform(post("/api/bookings")
+                .header("Idempotency-Key", "reused")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(dto)))
+                .andExpect(status().isUnprocessableEntity());
+        mockMvc.perform(post("/api/bookings")
+                .header("Idempotency-Key", "x".repeat(256))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(dto)))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void whenPostBooking_withInvalidData_thenReturns400BadRequest() throws Exception {
         // Arrange
@@ -102,34 +270,131 @@ class BookingControllerTest {
     booking.setId(1L);
     booking.setStatus(BookingStatus.COMPLETED);
 
-    when(bookingService.updateBookingStatus(eq(1L), eq(BookingStatus.COMPLETED))).thenReturn(booking);
+    when(bookingService.updateBookingStatus(1L, BookingStatus.COMPLETED, 0L)).thenReturn(booking);
 
     mockMvc.perform(patch("/api/bookings/staff/1/status")
             .contentType(MediaType.APPLICATION_JSON)
-            .content("{\"status\":\"COMPLETED\"}"))
+            .content("{\"status\":\"COMPLETED\",\"version\":0}"))
         .andExpect(status().isOk())
         .andExpect(jsonPath("$.status").value("COMPLETED"));
     }
 
+    @Test
+    void whenPatchStatus_withoutVersion_thenReturns428() throws Exception {
+    mockMvc.perform(patch("/api/bookings/staff/1/status")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"status\":\"COMPLETED\"}"))
+        .andExpect(status().isPreconditionRequired());
+
+    verify(bookingService, never()).updateBookingStatus(any(), any(), any());
+    }
+
+    @Test
+    void whenPatchStatus_withIllegalTransition_thenReturns422() throws Exception {
+    when(bookingService.updateBookingStatus(1L, BookingStatus.RECEIVED, 2L))
+        .thenThrow(new IllegalStatusTransitionException("Booking 1 cannot change from COMPLETED to RECEIVED"));
+
+    mockMvc.perform(patch("/api/bookings/staff/1/status")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"status\":\"RECEIVED\",\"version\":2}"))
+        .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void whenStreamEvents_forUnknownMunicipality_thenReturns404() throws Exception {
+    when(bookingService.resolveMunicipality("Atlantida")).thenReturn(Optional.empty());
+
+    mockMvc.perform(get("/api/bookings/staff/Atlantida/events").accept(MediaType.TEXT_EVENT_STREAM))
+        .andExpect(status().isNotFound());
+
+    verify(bookingEventStream, never()).subscribe(any(), any());
+    }
+
+    @Test
+    void whenStreamEvents_withSince_thenSubscribesWithCanonicalName() throws Exception {
+    when(bookingService.resolveMunicipality("setubal")).thenReturn(Optional.of("Setúbal"));
+    when(bookingEventStream.subscribe("Setúbal", 42L)).thenReturn(new SseEmitter());
+
+    mockMvc.perform(get("/api/bookings/staff/setubal/events?since=42").accept(MediaType.TEXT_EVENT_STREAM))
+        .andExpect(status().isOk());
+
+    verify(bookingEventStream).subscribe("Setúbal", 42L);
+    }
+
     @Test
     void whenPatchStatus_withUnknownBooking_thenReturns404() throws Exception {
-    when(bookingService.updateBookingStatus(eq(99L), eq(BookingStatus.CANCELLED)))
+    when(bookingService.updateBookingStatus(eq(99L), eq(BookingStatus.CANCELLED), any()))
         .thenThrow(new EntityNotFoundException("Booking not found"));
 
     mockMvc.perform(patch("/api/bookings/staff/99/status")
             .contentType(MediaType.APPLICATION_JSON)
-            .content("{\"status\":\"CANCELLED\"}"))
+            .content("{\"status\":\"CANCELLED\",\"version\":0}"))
         .andExpect(status().isNotFound());
     }
 
     @Test
     void whenPatchStatus_withInvalidPayload_thenReturns400() throws Exception {
-    when(bookingService.updateBookingStatus(eq(1L), any()))
+    when(bookingService.updateBookingStatus(eq(1L), any(), any()))
         .thenThrow(new IllegalArgumentException("Estado inválido"));
 
     mockMvc.perform(patch("/api/bookings/staff/1/status")
             .contentType(MediaType.APPLICATION_JSON)
-            .content("{\"status\":\"INVALIDO\"}"))
+            .content("{\"status\":\"INVALIDO\",\"version\":0}"))
         .andExpect(status().isBadRequest());
     }
-}
\ No newline at end of file
+
+    @Test
+    void whenPatchStatus_withStaleVersion_thenReturns409() throws Exception {
+    when(bookingService.updateBookingStatus(1L, BookingStatus.SCHEDULED, 3L))
+        .thenThrow(new BookingConflictException("Booking 1 was modified since version 3"));
+
+    mockMvc.perform(patch("/api/bookings/staff/1/status")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"status\":\"SCHEDULED\",\"version\":3}"))
+        .andExpect(status().isConflict());
+    }
+
+    @Test
+    void whenPostBatch_thenReturnsPerItemResults() throws Exception {
+        when(bookingService.createBookings(anyList())).thenReturn(List.of(
+                BatchBookingResultDTO.created(0, 10L, "token-1"),
+                BatchBookingResultDTO.rejected(1, "Municipality not available")));
+
+        mockMvc.perform(post("/api/bookings/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"municipality\":\"Lisboa\"},{\"municipality\":\"X\"}]"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].created").value(true))
+            .andExpect(jsonPath("$[0].bookingToken").value("token-1"))
+            .andExpect(jsonPath("$[1].created").value(false));
+
+        verify(admissionControl).acquire(any(), eq(2));
+        verify(admissionControl).release();
+    }
+
+    @Test
+    void whenPostBatch_overTheClientRate_thenReturns429WithoutCreating() throws Exception {
+        when(admissionControl.clientKey(any())).thenReturn("127.0.0.1");
+        when(admissionControl.acquire("127.0.0.1", 2)).thenReturn(5L);
+
+        mockMvc.perform(post("/api/bookings/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"municipality\":\"Lisboa\"},{\"municipality\":\"Porto\"}]"))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"));
+
+        verify(bookingService, never()).createBookings(anyList());
+        verify(admissionControl, never()).release();
+    }
+
+    @Test
+    void whenBulkPatchStatus_thenReturnsAffectedCount() throws Exception {
+        when(bookingService.bulkUpdateStatus(any(BulkStatusUpdateDTO.class))).thenReturn(12);
+
+        mockMvc.perform(patch("/api/bookings/staff/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"status\":\"COMPLETED\",\"municipality\":\"Lisboa\",\"bookingDate\":\"2026-05-10\"}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.updated").value(12));
+    }
+}
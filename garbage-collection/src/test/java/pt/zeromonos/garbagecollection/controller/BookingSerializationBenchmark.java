@@ -0,0 +1,59 @@
+package pt.zeromonos.garbagecollection.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialização das listas de BookingRequest devolvidas aos endpoints do staff, com um ObjectMapper
+ * configurado como o do Spring Boot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookingSerializationBenchmark {
+
+    @Param({"50", "200"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private List<BookingRequest> bookings;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        bookings = new ArrayList<>(size);
+        TimeSlot[] slots = TimeSlot.values();
+        for (int i = 0; i < size; i++) {
+            BookingRequest booking = new BookingRequest("Colchão de casal " + i, "Lisboa",
+                    "Avenida da Liberdade, " + i, LocalDate.now().plusDays(i % 30), slots[i % slots.length]);
+            booking.setId((long) i);
+            bookings.add(booking);
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeBookingList() throws Exception {
+        return objectMapper.writeValueAsBytes(bookings);
+    }
+}
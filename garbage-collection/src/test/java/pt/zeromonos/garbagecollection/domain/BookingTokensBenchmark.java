@@ -0,0 +1,66 @@
+package pt.zeromonos.garbagecollection.domain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Geração de tokens e conversões feitas em cada consulta (normalização do token recebido e
+ * conversão para os 16 bytes guardados na base de dados).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookingTokensBenchmark {
+
+    private final BookingTokenConverter converter = new BookingTokenConverter();
+    private String token;
+    private String legacyToken;
+    private byte[] column;
+
+    @Setup
+    public void setUp() {
+        token = BookingTokens.newToken();
+        legacyToken = UUID.randomUUID().toString();
+        column = converter.convertToDatabaseColumn(token);
+    }
+
+    @Benchmark
+    public String newToken() {
+        return BookingTokens.newToken();
+    }
+
+    @Benchmark
+    public Optional<String> normalizeCompact() {
+        return BookingTokens.normalize(token);
+    }
+
+    @Benchmark
+    public Optional<String> normalizeLegacyUuid() {
+        return BookingTokens.normalize(legacyToken);
+    }
+
+    @Benchmark
+    public byte[] toDatabaseColumn() {
+        return converter.convertToDatabaseColumn(token);
+    }
+
+    @Benchmark
+    public String fromDatabaseColumn() {
+        return converter.convertToEntityAttribute(column);
+    }
+}
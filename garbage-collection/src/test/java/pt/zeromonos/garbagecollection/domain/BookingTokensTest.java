@@ -0,0 +1,60 @@
+package pt.zeromonos.garbagecollection.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BookingTokensTest {
+
+    @Test
+    void newTokenShouldBeShortUrlSafeUuidV7() {
+        String token = BookingTokens.newToken();
+        byte[] bytes = BookingTokens.decode(token).orElseThrow();
+
+        assertThat(token).hasSize(22).matches("[A-Za-z0-9_-]+");
+        assertThat(bytes).hasSize(16);
+        assertThat(bytes[6] >> 4 & 0x0F).isEqualTo(7);
+        assertThat(bytes[8] & 0xC0).isEqualTo(0x80);
+    }
+
+    @Test
+    void tokensShouldBeTimeOrdered() throws InterruptedException {
+        String first = BookingTokens.newToken();
+        Thread.sleep(2);
+        String second = BookingTokens.newToken();
+
+        byte[] a = BookingTokens.decode(first).orElseThrow();
+        byte[] b = BookingTokens.decode(second).orElseThrow();
+        assertThat(Arrays.compareUnsigned(a, 0, 6, b, 0, 6)).isNegative();
+    }
+
+    @Test
+    void concurrentTokensFromVirtualThreadsShouldBeUnique() throws Exception {
+        Set<String> tokens = ConcurrentHashMap.newKeySet();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 10_000; i++) {
+                executor.submit(() -> tokens.add(BookingTokens.newToken()));
+            }
+        }
+
+        assertThat(tokens).hasSize(10_000);
+    }
+
+    @Test
+    void legacyUuidTokenShouldNormalizeToTheSameBytes() {
+        UUID legacy = UUID.randomUUID();
+        String compact = BookingTokens.normalize(legacy.toString()).orElseThrow();
+
+        assertThat(compact).hasSize(22);
+        assertThat(BookingTokens.normalize(compact)).contains(compact);
+        assertThat(BookingTokens.normalize("not-a-token")).isEmpty();
+        assertThat(BookingTokens.normalize(null)).isEmpty();
+    }
+}
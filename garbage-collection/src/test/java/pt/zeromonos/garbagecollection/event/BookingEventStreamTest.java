@@ -0,0 +1,259 @@
+package pt.zeromonos.garbagecollection.event;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.repository.StatusChange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * O stream SSE pelo endpoint público (GET /api/bookings/staff/{municipality}/events), com a aplicação a
+ * correr numa porta real: replay por Last-Event-ID, "reset", encaminhamento por município e clientes lentos.
+ * Cada teste usa municípios seus, porque o BookingEventStream é partilhado pelo contexto; só municípios
+ * servidos têm stream (os outros dão 404).
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class BookingEventStreamTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(20);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private BookingEventStream stream;
+
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final List<SseClient> clients = new ArrayList<>();
+
+    record Event(String id, String name, String data) {
+    }
+
+    @AfterEach
+    void tearDown() {
+        clients.forEach(SseClient::close);
+    }
+
+    @Test
+    void reconnectingClientShouldReceiveOnlyMissedEventsForItsMunicipality() throws Exception {
+        SseClient panel = connected("Lisboa");
+
+        stream.onBookingChanged(BookingChangedEvent.created(booking(1L, "Lisboa")));
+        stream.onBookingChanged(BookingChangedEvent.created(booking(2L, "Porto")));
+        stream.onBookingChanged(BookingChangedEvent.statusChanged(booking(1L, "Lisboa")));
+
+        Event created = panel.next();
+        assertThat(created.name()).isEqualTo("booking-created");
+        assertThat(panel.next().name()).isEqualTo("status-changed");
+
+        SseClient reconnected = open("Lisboa", created.id());
+        assertThat(reconnected.next().name()).isEqualTo("status-changed");
+    }
+
+    @Test
+    void panelSubscribingFromTheListSequenceShouldReceiveOnlyChangesAfterTheList() throws Exception {
+        SseClient other = connected("Coimbra");
+        stream.onBookingChanged(BookingChangedEvent.created(booking(1L, "Coimbra")));
+        assertThat(other.next().name()).isEqualTo("booking-created");
+
+        HttpResponse<String> list = http.send(HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + port + "/api/bookings/staff/Coimbra")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        String sequence = list.headers().firstValue("X-Event-Sequence").orElseThrow();
+        stream.onBookingChanged(BookingChangedEvent.statusChanged(booking(1L, "Coimbra")));
+
+        SseClient panel = track(HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                        + "/api/bookings/staff/Coimbra/events?since=" + sequence))
+                .header("Accept", "text/event-stream")
+                .build());
+        Event missed = panel.next();
+        assertThat(missed.name()).isEqualTo("status-changed");
+        assertThat(Long.parseLong(missed.id())).isEqualTo(Long.parseLong(sequence) + 1);
+    }
+
+    @Test
+    void unknownMunicipalityShouldBeRejected() throws Exception {
+        HttpResponse<Void> response = http.send(HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + port + "/api/bookings/staff/Atlantida/events"))
+                .header("Accept", "text/event-stream")
+                .build(), HttpResponse.BodyHandlers.discarding());
+
+        assertThat(response.statusCode()).isEqualTo(404);
+    }
+
+    @Test
+    void clientTooFarBehindShouldBeToldToReset() throws Exception {
+        SseClient panel = connected("Faro");
+        for (int i = 0; i < BookingEventStream.BUFFER_SIZE + 10; i++) {
+            stream.onBookingChanged(BookingChangedEvent.created(booking((long) i, "Faro")));
+        }
+        List<Event> received = new ArrayList<>();
+        for (int i = 0; i < BookingEventStream.BUFFER_SIZE + 10; i++) {
+            received.add(panel.next());
+        }
+
+        assertThat(open("Faro", received.get(0).id()).next().name()).isEqualTo("reset");
+        SseClient recent = open("Faro", received.get(BookingEventStream.BUFFER_SIZE + 4).id());
+        assertThat(recent.next().id()).isEqualTo(received.get(BookingEventStream.BUFFER_SIZE + 5).id());
+    }
+
+    @Test
+    void bulkUpdateShouldReachOnlyItsMunicipality() throws Exception {
+        SseClient braga = connected("Braga");
+        SseClient aveiro = connected("Aveiro");
+        LocalDate day = LocalDate.now().plusDays(1);
+
+        stream.onBookingChanged(BookingChangedEvent.bulkStatusChanged("Braga", BookingStatus.COMPLETED, List.of(
+                new StatusChange(3L, "t3", "Braga", day, TimeSlot.MORNING, BookingStatus.RECEIVED, 1L))));
+        stream.onBookingChanged(BookingChangedEvent.created(booking(4L, "Aveiro")));
+
+        Event bulk = braga.next();
+        assertThat(bulk.name()).isEqualTo("bulk-status-changed");
+        assertThat(bulk.data()).contains("\"bookings\":[{\"id\":3,\"version\":1}]");
+        assertThat(aveiro.next().name()).isEqualTo("booking-created");
+    }
+
+    @Test
+    void slowClientShouldNotDelayOthersAndIsDropped() throws Exception {
+        // Um cliente que nunca lê: o emitter.send dele bloqueia quando os buffers do socket enchem.
+        stream.onBookingChanged(BookingChangedEvent.created(booking(0L, "Viseu")));
+        Socket slow = new Socket();
+        slow.setReceiveBufferSize(4096);
+        slow.setSoTimeout((int) TIMEOUT.toMillis());
+        slow.connect(new InetSocketAddress("localhost", port));
+        slow.getOutputStream().write(("GET /api/bookings/staff/Setubal/events HTTP/1.1\r\nHost: localhost\r\n"
+                + "Accept: text/event-stream\r\nLast-Event-ID: 0\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        StringBuilder response = new StringBuilder(readUntil(slow.getInputStream(), "event:reset"));
+        SseClient fast = connected("Setubal");
+
+        int events = 4 * BookingEventStream.CLIENT_QUEUE_SIZE;
+        BookingRequest large = booking(1L, "Setubal");
+        large.setItemDescription("x".repeat(2000));
+        // Em levas menores que a fila de cada cliente: o cliente rápido acompanha, o lento fica para trás.
+        int wave = BookingEventStream.CLIENT_QUEUE_SIZE / 4;
+        for (int sent = 0; sent < events; sent += wave) {
+            for (int i = 0; i < wave; i++) {
+                stream.onBookingChanged(BookingChangedEvent.created(large));
+            }
+            for (int i = 0; i < wave; i++) {
+                assertThat(fast.next().name()).isEqualTo("booking-created");
+            }
+        }
+
+        // A resposta do cliente lento termina (chunk final) antes de ter recebido todos os eventos.
+        response.append(readUntil(slow.getInputStream(), "\r\n0\r\n\r\n"));
+        slow.close();
+        assertThat(response).endsWith("\r\n0\r\n\r\n");
+        assertThat(response.toString().split("event:booking-created", -1).length - 1).isLessThan(events);
+    }
+
+    // Um painel já ligado: o "reset" da ligação com Last-Event-ID 0 confirma que o stream já o registou.
+    private SseClient connected(String municipality) throws InterruptedException {
+        stream.onBookingChanged(BookingChangedEvent.created(booking(0L, "Viseu")));
+        SseClient client = open(municipality, "0");
+        assertThat(client.next().name()).isEqualTo("reset");
+        return client;
+    }
+
+    private SseClient open(String municipality, String lastEventId) {
+        HttpRequest request = HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + port + "/api/bookings/staff/" + municipality + "/events"))
+                .header("Accept", "text/event-stream")
+                .header("Last-Event-ID", lastEventId)
+                .build();
+        return track(request);
+    }
+
+    private SseClient track(HttpRequest request) {
+        SseClient client = new SseClient(http.sendAsync(request, HttpResponse.BodyHandlers.ofLines()));
+        clients.add(client);
+        return client;
+    }
+
+    // Lê do socket até a resposta conter (ou, no fim da resposta, terminar em) marker.
+    private static String readUntil(InputStream in, String marker) throws IOException {
+        StringBuilder response = new StringBuilder();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while (!response.toString().contains(marker) && (read = in.read(buffer)) != -1) {
+            response.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+        }
+        return response.toString();
+    }
+
+    private static BookingRequest booking(Long id, String municipality) {
+        BookingRequest booking = new BookingRequest("Item", municipality, "Rua", LocalDate.now().plusDays(1), TimeSlot.MORNING);
+        booking.setId(id);
+        return booking;
+    }
+
+    // Lê a resposta linha a linha numa thread à parte e junta as linhas de cada evento SSE.
+    private static final class SseClient {
+
+        private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+        private final CompletableFuture<HttpResponse<Stream<String>>> response;
+
+        SseClient(CompletableFuture<HttpResponse<Stream<String>>> response) {
+            this.response = response;
+            response.thenAccept(opened -> Thread.ofVirtual().start(() -> parse(opened.body())));
+        }
+
+        Event next() throws InterruptedException {
+            Event event = events.poll(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            assertThat(event).as("SSE event").isNotNull();
+            return event;
+        }
+
+        // Fechar o Stream das linhas cancela a leitura do body e a ligação.
+        void close() {
+            response.thenAccept(opened -> opened.body().close());
+        }
+
+        private void parse(Stream<String> lines) {
+            String[] current = new String[3];
+            try (lines) {
+                lines.forEach(line -> {
+                    if (line.isEmpty()) {
+                        if (current[1] != null) {
+                            events.add(new Event(current[0], current[1], current[2]));
+                        }
+                        current[0] = current[1] = current[2] = null;
+                    } else if (line.startsWith("id:")) {
+                        current[0] = line.substring(3);
+                    } else if (line.startsWith("event:")) {
+                        current[1] = line.substring(6);
+                    } else if (line.startsWith("data:")) {
+                        current[2] = line.substring(5);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Ligação fechada pelo teste ou pelo servidor.
+            }
+        }
+    }
+}
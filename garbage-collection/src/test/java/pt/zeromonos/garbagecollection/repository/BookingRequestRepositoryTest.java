@@ -0,0 +1,236 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.BookingTokens;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.BookingLookupDTO;
+import pt.zeromonos.garbagecollection.dto.StaffBookingDTO;
+import pt.zeromonos.garbagecollection.service.BookingExportService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+// Usa uma base de dados H2 em memória, só com a camada JPA. O SqlCapture guarda o SQL gerado, para os testes
+// que verificam o SQL e não só o resultado.
+@DataJpaTest(properties = SqlCapture.PROPERTY)
+class BookingRequestRepositoryTest {
+
+    private static final LocalDate DAY = LocalDate.now().plusDays(10);
+
+    @Autowired
+    private BookingRequestRepository bookingRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        // 3 bookings no mesmo dia, 2 no dia seguinte, 1 noutro município.
+        save("Lisboa", DAY, BookingStatus.RECEIVED);
+        save("Lisboa", DAY, BookingStatus.COMPLETED);
+        save("Lisboa", DAY, BookingStatus.RECEIVED);
+        save("Lisboa", DAY.plusDays(1), BookingStatus.RECEIVED);
+        save("Lisboa", DAY.plusDays(1), BookingStatus.CANCELLED);
+        save("Porto", DAY, BookingStatus.RECEIVED);
+    }
+
+    @Test
+    void findStaffPage_walksAllRowsInKeysetOrder() {
+        List<StaffBookingDTO> first = bookingRepository.findStaffPage("Lisboa", null, null, null, null, null, Limit.of(2));
+        StaffBookingDTO last = first.get(1);
+        List<StaffBookingDTO> second = bookingRepository.findStaffPage(
+                "Lisboa", null, null, null, last.bookingDate(), last.id(), Limit.of(2));
+        last = second.get(1);
+        List<StaffBookingDTO> third = bookingRepository.findStaffPage(
+                "Lisboa", null, null, null, last.bookingDate(), last.id(), Limit.of(2));
+
+        assertThat(first).hasSize(2);
+        assertThat(second).hasSize(2);
+        assertThat(third).hasSize(1);
+        assertThat(second.get(0).bookingDate()).isEqualTo(DAY);
+        assertThat(second.get(1).bookingDate()).isEqualTo(DAY.plusDays(1));
+        assertThat(first.get(0).id()).isLessThan(first.get(1).id());
+    }
+
+    @Test
+    void findStaffPage_appliesStatusAndDateFilters() {
+        List<StaffBookingDTO> received = bookingRepository.findStaffPage(
+                "Lisboa", BookingStatus.RECEIVED, DAY.plusDays(1), DAY.plusDays(1), null, null, Limit.of(10));
+
+        assertThat(received).hasSize(1);
+        assertThat(received.get(0).bookingDate()).isEqualTo(DAY.plusDays(1));
+        assertThat(received.get(0).status()).isEqualTo(BookingStatus.RECEIVED);
+    }
+
+    @Test
+    void projectionsSelectOnlyTheReadColumns() {
+        BookingRequest porto = bookingRepository.findByMunicipality("Porto").get(0);
+
+        // A base de dados guarda os instantes ao microssegundo; a entidade em memória tem nanossegundos.
+        assertThat(bookingRepository.findLookupByBookingToken(porto.getBookingToken())).get()
+                .usingRecursiveComparison()
+                .ignoringFields("lastUpdatedAt")
+                .isEqualTo(BookingLookupDTO.from(porto));
+        assertThat(bookingRepository.findLookupByBookingToken(BookingTokens.newToken())).isEmpty();
+        assertThat(bookingRepository.findStaffViewsByMunicipality("Lisboa"))
+                .hasSize(5)
+                .extracting(StaffBookingDTO::bookingDate)
+                .isSorted();
+    }
+
+    @Test
+    void bookingsTableHasCompositeKeysetIndexes() {
+        @SuppressWarnings("unchecked")
+        List<String> indexes = entityManager.createNativeQuery(
+                "select index_name from information_schema.indexes where table_name = 'BOOKINGS'")
+                .getResultList();
+
+        assertThat(indexes).contains("IDX_BOOKINGS_MUNICIPALITY_DATE_ID", "IDX_BOOKINGS_MUNICIPALITY_STATUS_DATE_ID");
+    }
+
+    @Test
+    void changeStatusByFilter_returnsExactlyTheRowsItChanged() {
+        Set<BookingStatus> fromStatuses = BookingStatus.sourcesOf(BookingStatus.CANCELLED);
+        List<StatusChange> changes = bookingRepository.changeStatusByFilter(
+                "Lisboa", DAY, null, fromStatuses, BookingStatus.CANCELLED, LocalDateTime.now());
+
+        // O COMPLETED do mesmo dia é final e fica como está.
+        assertThat(changes).extracting(StatusChange::bookingDate, StatusChange::previousStatus, StatusChange::version)
+                .containsOnly(tuple(DAY, BookingStatus.RECEIVED, 1L))
+                .hasSize(2);
+        assertThat(bookingRepository.findAllById(changes.stream().map(StatusChange::id).toList()))
+                .extracting(BookingRequest::getStatus, BookingRequest::getVersion)
+                .containsOnly(tuple(BookingStatus.CANCELLED, 1L));
+        assertThat(bookingRepository.findByMunicipality("Lisboa"))
+                .filteredOn(b -> b.getBookingDate().equals(DAY))
+                .extracting(BookingRequest::getStatus)
+                .containsExactlyInAnyOrder(BookingStatus.CANCELLED, BookingStatus.COMPLETED, BookingStatus.CANCELLED);
+    }
+
+    @Test
+    void changeStatusByIds_locksTheCandidateRows() {
+        List<Long> ids = bookingRepository.findByMunicipality("Lisboa").stream()
+                .map(BookingRequest::getId)
+                .toList();
+        SqlCapture.STATEMENTS.clear();
+
+        List<StatusChange> changes = bookingRepository.changeStatusByIds(ids,
+                BookingStatus.sourcesOf(BookingStatus.COMPLETED), BookingStatus.COMPLETED, LocalDateTime.now());
+
+        // Os 3 RECEIVED, lidos com SELECT ... FOR UPDATE antes do UPDATE.
+        assertThat(changes).extracting(StatusChange::previousStatus).containsOnly(BookingStatus.RECEIVED).hasSize(3);
+        assertThat(SqlCapture.STATEMENTS)
+                .filteredOn(sql -> sql.startsWith("select") && sql.contains("from bookings"))
+                .last().asString().endsWith("for update");
+    }
+
+    @Test
+    void bulkUpdateStatusByIds_skipsRowsThatCannotChangeToTargetStatus() {
+        List<Long> ids = bookingRepository.findByMunicipality("Lisboa").stream()
+                .map(BookingRequest::getId)
+                .toList();
+
+        int updated = bookingRepository.bulkUpdateStatusByIds(ids, BookingStatus.sourcesOf(BookingStatus.COMPLETED),
+                BookingStatus.COMPLETED, LocalDateTime.now());
+
+        // Os 3 RECEIVED; o COMPLETED já está no estado pedido e o CANCELLED é final.
+        assertThat(updated).isEqualTo(3);
+        assertThat(bookingRepository.findAllById(ids)).extracting(BookingRequest::getStatus)
+                .containsOnly(BookingStatus.COMPLETED, BookingStatus.CANCELLED);
+        assertThat(bookingRepository.findAllById(ids))
+                .filteredOn(b -> b.getStatus() == BookingStatus.COMPLETED)
+                .extracting(BookingRequest::getVersion)
+                .containsExactlyInAnyOrder(0L, 1L, 1L, 1L);
+    }
+
+    @Test
+    void changeStatusIfCurrent_appliesOnlyToTheExpectedVersionAndStatus() {
+        BookingRequest booking = bookingRepository.findByMunicipality("Porto").get(0);
+        Long id = booking.getId();
+        Set<BookingStatus> fromStatuses = BookingStatus.sourcesOf(BookingStatus.SCHEDULED);
+        // Em microssegundos, a precisão guardada pela base de dados.
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        entityManager.clear();
+
+        // Devolve a linha como estava antes do UPDATE, no mesmo statement.
+        SqlCapture.STATEMENTS.clear();
+        BookingRequest previous = bookingRepository.changeStatusIfCurrent(id, 0L, fromStatuses,
+                BookingStatus.SCHEDULED, now).orElseThrow();
+        assertThat(SqlCapture.STATEMENTS).hasSize(1);
+        assertThat(previous.getStatus()).isEqualTo(BookingStatus.RECEIVED);
+        assertThat(previous.getVersion()).isZero();
+        assertThat(previous.getBookingToken()).isEqualTo(booking.getBookingToken());
+        // A versão 0 já não é a atual: o segundo pedido com a mesma leitura não se sobrepõe ao primeiro.
+        assertThat(bookingRepository.changeStatusIfCurrent(id, 0L, BookingStatus.sourcesOf(BookingStatus.CANCELLED),
+                BookingStatus.CANCELLED, LocalDateTime.now())).isEmpty();
+        // Versão certa, mas SCHEDULED não pode voltar a SCHEDULED.
+        assertThat(bookingRepository.changeStatusIfCurrent(id, 1L, fromStatuses, BookingStatus.SCHEDULED,
+                LocalDateTime.now())).isEmpty();
+
+        entityManager.clear();
+        BookingRequest reloaded = bookingRepository.findById(id).orElseThrow();
+        assertThat(reloaded.getStatus()).isEqualTo(BookingStatus.SCHEDULED);
+        assertThat(reloaded.getVersion()).isEqualTo(1L);
+        assertThat(reloaded.getLastUpdatedAt()).isEqualTo(now);
+    }
+
+    @Test
+    void findByBookingToken_resolvesCompactAndLegacyUuidForms() {
+        BookingRequest booking = bookingRepository.findByMunicipality("Porto").get(0);
+        byte[] raw = BookingTokens.decode(booking.getBookingToken()).orElseThrow();
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        String legacy = new UUID(buffer.getLong(), buffer.getLong()).toString();
+        entityManager.clear();
+
+        assertThat(booking.getBookingToken()).hasSize(22);
+        assertThat(bookingRepository.findByBookingToken(booking.getBookingToken()))
+                .map(BookingRequest::getId).contains(booking.getId());
+        assertThat(bookingRepository.findByBookingToken(legacy))
+                .map(BookingRequest::getId).contains(booking.getId());
+    }
+
+    @Test
+    void exportService_streamsNdjsonAndCsvRows() throws IOException {
+        BookingExportService exportService = new BookingExportService(bookingRepository, entityManager, new ObjectMapper());
+
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        long rows = exportService.export("Lisboa", null, null, BookingExportService.ExportFormat.NDJSON, ndjson);
+        String[] lines = ndjson.toString(StandardCharsets.UTF_8).split("\n");
+
+        assertThat(rows).isEqualTo(5);
+        assertThat(lines).hasSize(5).allMatch(line -> line.startsWith("{\"id\":") && line.contains("\"municipality\":\"Lisboa\""));
+        assertThat(lines[0]).doesNotContain("bookingToken");
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        exportService.export(null, DAY.plusDays(1), null, BookingExportService.ExportFormat.CSV, csv);
+        String[] csvLines = csv.toString(StandardCharsets.UTF_8).split("\r\n");
+
+        assertThat(csvLines[0]).startsWith("id,municipality,");
+        assertThat(csvLines).hasSize(3);
+    }
+
+    private void save(String municipality, LocalDate date, BookingStatus status) {
+        BookingRequest booking = new BookingRequest("Item", municipality, "Rua", date, TimeSlot.MORNING);
+        booking.setStatus(status);
+        bookingRepository.save(booking);
+    }
+}
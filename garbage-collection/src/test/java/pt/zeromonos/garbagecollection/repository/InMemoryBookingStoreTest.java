@@ -0,0 +1,354 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import pt.zeromonos.garbagecollection.config.StorageProperties;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.StaffBookingDTO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class InMemoryBookingStoreTest {
+
+    private static final LocalDate DAY = LocalDate.now().plusDays(10);
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @TempDir
+    Path dir;
+
+    private InMemoryBookingStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = open();
+        // Os mesmos dados do BookingRequestRepositoryTest.
+        save("Lisboa", DAY, BookingStatus.RECEIVED);
+        save("Lisboa", DAY, BookingStatus.COMPLETED);
+        save("Lisboa", DAY, BookingStatus.RECEIVED);
+        save("Lisboa", DAY.plusDays(1), BookingStatus.RECEIVED);
+        save("Lisboa", DAY.plusDays(1), BookingStatus.CANCELLED);
+        save("Porto", DAY, BookingStatus.RECEIVED);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    void save_assignsIdsAndRejectsDuplicateTokens() {
+        BookingRequest booking = save("Braga", DAY, BookingStatus.RECEIVED);
+
+        assertThat(booking.getId()).isEqualTo(7L);
+        assertThat(store.findLookupByBookingToken(booking.getBookingToken()))
+                .hasValueSatisfying(lookup -> assertThat(lookup.municipality()).isEqualTo("Braga"));
+        assertThat(store.findExistingTokens(List.of(booking.getBookingToken(), "unknown")))
+                .containsExactly(booking.getBookingToken());
+
+        BookingRequest duplicate = new BookingRequest("Sofá", "Braga", "Rua", DAY, TimeSlot.MORNING);
+        duplicate.setBookingToken(booking.getBookingToken());
+        assertThatThrownBy(() -> store.save(duplicate)).isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    void findById_returnsACopy() {
+        BookingRequest copy = store.findById(1L).orElseThrow();
+        copy.setStatus(BookingStatus.CANCELLED);
+
+        assertThat(store.findById(1L).orElseThrow().getStatus()).isEqualTo(BookingStatus.RECEIVED);
+    }
+
+    @Test
+    void findStaffPage_walksAllRowsInKeysetOrder() {
+        List<StaffBookingDTO> first = store.findStaffPage("Lisboa", null, null, null, null, null, Limit.of(2));
+        StaffBookingDTO last = first.get(1);
+        List<StaffBookingDTO> second = store.findStaffPage(
+                "Lisboa", null, null, null, last.bookingDate(), last.id(), Limit.of(2));
+        last = second.get(1);
+        List<StaffBookingDTO> third = store.findStaffPage(
+                "Lisboa", null, null, null, last.bookingDate(), last.id(), Limit.of(2));
+
+        assertThat(Stream.of(first, second, third).flatMap(List::stream).map(StaffBookingDTO::id))
+                .containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void findStaffPage_appliesStatusAndDateFilters() {
+        assertThat(store.findStaffPage("Lisboa", BookingStatus.RECEIVED, DAY.plusDays(1), null, null, null,
+                Limit.unlimited())).extracting(StaffBookingDTO::id).containsExactly(4L);
+        assertThat(store.findStaffPage("Lisboa", null, null, DAY, null, null, Limit.unlimited()))
+                .extracting(StaffBookingDTO::id).containsExactly(1L, 2L, 3L);
+        assertThat(store.findStaffPage("Faro", null, null, null, null, null, Limit.of(10))).isEmpty();
+    }
+
+    @Test
+    void findStaffPage_statusIndexFollowsStatusChanges() {
+        store.changeStatusByIds(List.of(1L), BookingStatus.sourcesOf(BookingStatus.SCHEDULED),
+                BookingStatus.SCHEDULED, LocalDateTime.now());
+
+        assertThat(store.findStaffPage("Lisboa", BookingStatus.RECEIVED, null, null, null, null, Limit.unlimited()))
+                .extracting(StaffBookingDTO::id).containsExactly(3L, 4L);
+        assertThat(store.findStaffPage("Lisboa", BookingStatus.SCHEDULED, null, null, DAY, 0L, Limit.unlimited()))
+                .extracting(StaffBookingDTO::id).containsExactly(1L);
+    }
+
+    @Test
+    void changeStatus_changesOnlyRowsThatCanMoveToTheStatus() {
+        LocalDateTime now = LocalDateTime.now();
+        Set<BookingStatus> fromStatuses = BookingStatus.sourcesOf(BookingStatus.SCHEDULED);
+
+        assertThat(store.changeStatusByFilter("Lisboa", DAY, null, fromStatuses, BookingStatus.SCHEDULED, now))
+                .extracting(StatusChange::id, StatusChange::previousStatus, StatusChange::version)
+                .containsExactly(tuple(1L, BookingStatus.RECEIVED, 1L), tuple(3L, BookingStatus.RECEIVED, 1L));
+        assertThat(store.changeStatusByIds(List.of(1L, 4L, 4L, 5L, 99L), fromStatuses, BookingStatus.SCHEDULED, now))
+                .extracting(StatusChange::id, StatusChange::bookingDate)
+                .containsExactly(tuple(4L, DAY.plusDays(1)));
+
+        assertThat(store.findById(4L).orElseThrow().getLastUpdatedAt()).isEqualTo(now);
+        assertThat(store.findById(4L).orElseThrow().getVersion()).isEqualTo(1L);
+        assertThat(store.countBySlotAndStatus())
+                .filteredOn(slot -> slot.getStatus() == BookingStatus.SCHEDULED)
+                .extracting(SlotStatusCount::getBookingDate, SlotStatusCount::getTotal)
+                .containsExactlyInAnyOrder(tuple(DAY, 2L), tuple(DAY.plusDays(1), 1L));
+    }
+
+    @Test
+    void changeStatusIfCurrent_appliesOnlyToTheExpectedVersionAndStatus() {
+        Set<BookingStatus> fromStatuses = BookingStatus.sourcesOf(BookingStatus.SCHEDULED);
+
+        assertThat(store.changeStatusIfCurrent(1L, 0L, fromStatuses, BookingStatus.SCHEDULED, LocalDateTime.now()))
+                .hasValueSatisfying(previous -> assertThat(previous.getStatus()).isEqualTo(BookingStatus.RECEIVED));
+        assertThat(store.changeStatusIfCurrent(1L, 0L, BookingStatus.sourcesOf(BookingStatus.CANCELLED),
+                BookingStatus.CANCELLED, LocalDateTime.now())).isEmpty();
+        assertThat(store.changeStatusIfCurrent(2L, 0L, BookingStatus.sourcesOf(BookingStatus.CANCELLED),
+                BookingStatus.CANCELLED, LocalDateTime.now())).isEmpty();
+
+        BookingRequest stale = store.findById(1L).orElseThrow();
+        stale.setVersion(0L);
+        assertThatThrownBy(() -> store.save(stale)).isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(store.findById(1L).orElseThrow().getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    void countBySlotFrom_skipsTheExcludedStatus() {
+        List<SlotCount> counts = store.countBySlotFrom(DAY, BookingStatus.CANCELLED);
+
+        assertThat(counts).extracting(SlotCount::getMunicipality, SlotCount::getBookingDate, SlotCount::getTotal)
+                .containsExactlyInAnyOrder(
+                        tuple("Lisboa", DAY, 3L),
+                        tuple("Lisboa", DAY.plusDays(1), 1L),
+                        tuple("Porto", DAY, 1L));
+    }
+
+    @Test
+    void reopen_recoversFromSnapshotAndChangeLog() throws IOException {
+        store.snapshot();
+        store.changeStatusByIds(List.of(1L), BookingStatus.sourcesOf(BookingStatus.SCHEDULED),
+                BookingStatus.SCHEDULED, LocalDateTime.now());
+        BookingRequest added = save("Faro", DAY, BookingStatus.RECEIVED);
+
+        // Simula uma queda: o estado em disco é o snapshot mais o change log, sem o snapshot do close().
+        InMemoryBookingStore recovered = open();
+        try {
+            assertThat(recovered.size()).isEqualTo(7);
+            assertThat(recovered.findById(1L).orElseThrow().getStatus()).isEqualTo(BookingStatus.SCHEDULED);
+            assertThat(recovered.findById(1L).orElseThrow().getVersion()).isEqualTo(1L);
+            assertThat(recovered.findLookupByBookingToken(added.getBookingToken())).isPresent();
+            assertThat(recovered.save(new BookingRequest("Mesa", "Faro", "Rua", DAY, TimeSlot.MORNING)).getId())
+                    .isEqualTo(8L);
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    void reopen_dropsAnIncompleteLastRecord() throws IOException {
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.filter(path -> path.getFileName().toString().startsWith("changes-")).findFirst().orElseThrow();
+        }
+        Files.writeString(segment, "{\"id\":7,\"bookingTok", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        InMemoryBookingStore recovered = open();
+        try {
+            assertThat(recovered.size()).isEqualTo(6);
+            recovered.save(new BookingRequest("Mesa", "Faro", "Rua", DAY, TimeSlot.MORNING));
+        } finally {
+            recovered.close();
+        }
+        InMemoryBookingStore reopened = open();
+        try {
+            assertThat(reopened.size()).isEqualTo(7);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void failedAppend_isRolledBackSoTheNextWriteAndRestartStillWork() throws IOException {
+        FileChannel segment = (FileChannel) ReflectionTestUtils.getField(store, "changeLog");
+        ReflectionTestUtils.setField(store, "changeLog", new FailingOnceChannel(segment));
+
+        assertThatThrownBy(() -> save("Faro", DAY, BookingStatus.RECEIVED)).isInstanceOf(UncheckedIOException.class);
+        save("Faro", DAY, BookingStatus.RECEIVED);
+
+        InMemoryBookingStore recovered = open();
+        try {
+            assertThat(recovered.size()).isEqualTo(7);
+        } finally {
+            recovered.close();
+        }
+    }
+
+    private InMemoryBookingStore open() throws IOException {
+        StorageProperties properties = new StorageProperties();
+        properties.setBackend(StorageProperties.Backend.MEMORY);
+        properties.setDir(dir);
+        properties.setSnapshotInterval(Duration.ofHours(1));
+        InMemoryBookingStore opened = new InMemoryBookingStore(properties, objectMapper);
+        opened.open();
+        return opened;
+    }
+
+    private BookingRequest save(String municipality, LocalDate date, BookingStatus status) {
+        BookingRequest booking = new BookingRequest("Sofá", municipality, "Rua", date, TimeSlot.MORNING);
+        booking.setStatus(status);
+        return store.save(booking);
+    }
+
+    // Escreve metade da primeira linha e falha, como um disco cheio; as escritas seguintes passam.
+    private static final class FailingOnceChannel extends FileChannel {
+
+        private final FileChannel delegate;
+        private boolean failed;
+
+        FailingOnceChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (failed) {
+                return delegate.write(src);
+            }
+            failed = true;
+            ByteBuffer half = src.duplicate();
+            half.limit(src.position() + src.remaining() / 2);
+            delegate.write(half);
+            throw new IOException("No space left on device");
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Guarda o SQL de cada statement preparado pelo Hibernate, para os testes que verificam o SQL e não só o
+ * resultado. Ativa-se no teste com a propriedade PROPERTY.
+ */
+public class SqlCapture implements StatementInspector {
+
+    static final String PROPERTY = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+            + "pt.zeromonos.garbagecollection.repository.SqlCapture";
+
+    static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.add(sql);
+        return sql;
+    }
+}
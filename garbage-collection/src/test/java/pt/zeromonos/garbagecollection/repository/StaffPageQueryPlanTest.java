@@ -0,0 +1,130 @@
+package pt.zeromonos.garbagecollection.repository;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Plano do H2 (EXPLAIN) para o SQL que o Hibernate gera para cada combinação de filtros da listagem da
+ * equipa, do lock das mudanças em massa por filtro e do export: cada uma tem de usar o índice composto certo
+ * e a listagem tem de sair já ordenada do índice. O ANALYZE faz commit, por isso os dados são gravados fora
+ * de uma transação de teste e apagados no fim.
+ */
+@DataJpaTest(properties = SqlCapture.PROPERTY)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StaffPageQueryPlanTest {
+
+    private static final LocalDate DAY = LocalDate.now().plusDays(10);
+
+    @Autowired
+    private BookingRequestRepository bookingRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        // Um município com histórico e estatísticas: com meia dúzia de linhas os custos dos índices empatam.
+        BookingStatus[] statuses = BookingStatus.values();
+        List<BookingRequest> bookings = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            BookingRequest booking = new BookingRequest("Sofá", i % 4 == 0 ? "Porto" : "Lisboa", "Rua",
+                    DAY.minusDays(i % 200), TimeSlot.MORNING);
+            booking.setStatus(statuses[i % statuses.length]);
+            bookings.add(booking);
+        }
+        bookingRepository.saveAll(bookings);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                entityManager.createNativeQuery("analyze").executeUpdate());
+    }
+
+    @AfterEach
+    void tearDown() {
+        bookingRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void withStatusUsesTheMunicipalityStatusDateIndex() {
+        assertThat(plan(() -> bookingRepository.findStaffPage(
+                "Lisboa", BookingStatus.RECEIVED, null, null, null, null, Limit.of(50))))
+                .contains("IDX_BOOKINGS_MUNICIPALITY_STATUS_DATE_ID", "index sorted");
+        assertThat(plan(() -> bookingRepository.findStaffPage(
+                "Lisboa", BookingStatus.SCHEDULED, DAY.minusDays(30), DAY, DAY.minusDays(10), 42L, Limit.of(50))))
+                .contains("IDX_BOOKINGS_MUNICIPALITY_STATUS_DATE_ID");
+    }
+
+    @Test
+    void withoutStatusUsesTheMunicipalityDateIndex() {
+        assertThat(plan(() -> bookingRepository.findStaffPage(
+                "Lisboa", null, null, null, null, null, Limit.of(50))))
+                .contains("IDX_BOOKINGS_MUNICIPALITY_DATE_ID", "index sorted");
+        assertThat(plan(() -> bookingRepository.findStaffPage(
+                "Lisboa", null, DAY.minusDays(30), DAY, DAY.minusDays(10), 42L, Limit.of(50))))
+                .contains("IDX_BOOKINGS_MUNICIPALITY_DATE_ID", "MUNICIPALITY = ?1", "BOOKING_DATE >= ?");
+    }
+
+    // Com a lista de estados o H2 pode escolher qualquer um dos dois índices; o que conta é não ler a tabela toda.
+    @Test
+    void bulkLockByFilterUsesAMunicipalityIndex() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        String plan = plan(() -> transaction.executeWithoutResult(status -> bookingRepository.lockForStatusChangeByFilter(
+                "Lisboa", DAY, TimeSlot.MORNING, BookingStatus.sourcesOf(BookingStatus.COMPLETED))));
+
+        assertThat(plan).contains("/* PUBLIC.IDX_BOOKINGS_MUNICIPALITY_", "MUNICIPALITY = ?1")
+                .doesNotContain("IS NULL", "tableScan");
+    }
+
+    @Test
+    void exportByMunicipalityUsesTheMunicipalityDateIndex() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        String plan = plan(() -> transaction.executeWithoutResult(status ->
+                bookingRepository.streamForExport("Lisboa", DAY.minusDays(30), null).close()));
+
+        assertThat(plan).contains("IDX_BOOKINGS_MUNICIPALITY_DATE_ID", "BOOKING_DATE >= ?2")
+                .doesNotContain("IS NULL");
+    }
+
+    private String plan(Runnable query) {
+        SqlCapture.STATEMENTS.clear();
+        query.run();
+        String sql = SqlCapture.STATEMENTS.stream()
+                .filter(statement -> statement.startsWith("select") && statement.contains("from bookings"))
+                .reduce((first, second) -> second)
+                .orElseThrow();
+        return new TransactionTemplate(transactionManager).execute(status ->
+                entityManager.unwrap(Session.class).doReturningWork(connection -> {
+                    try (PreparedStatement explain = connection.prepareStatement("explain " + sql)) {
+                        for (int i = 1; i <= explain.getParameterMetaData().getParameterCount(); i++) {
+                            explain.setObject(i, null);
+                        }
+                        try (ResultSet plan = explain.executeQuery()) {
+                            plan.next();
+                            return plan.getString(1);
+                        }
+                    }
+                }));
+    }
+}
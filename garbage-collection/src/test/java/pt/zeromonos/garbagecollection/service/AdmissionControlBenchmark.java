@@ -0,0 +1,65 @@
+package pt.zeromonos.garbagecollection.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import pt.zeromonos.garbagecollection.config.AdmissionProperties;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo do controlo de admissão num pedido admitido (acquire + release), com 4 threads a disputar
+ * o contador global. "clients" = 1 é o pior caso: todas as threads fazem CAS no mesmo bucket.
+ * O refill é alto para que nenhum pedido seja recusado. Correr com: mvn -Pjmh test-compile exec:exec@jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class AdmissionControlBenchmark {
+
+    @Param({"1", "10000"})
+    public int clients;
+
+    private AdmissionControl admission;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setBurst(1_000_000);
+        properties.setRefillPerSecond(1e9);
+        properties.setMaxConcurrent(1_000);
+        admission = new AdmissionControl(properties, new SimpleMeterRegistry());
+        keys = new String[clients];
+        for (int i = 0; i < clients; i++) {
+            keys[i] = "10.0." + (i / 256) + "." + (i % 256);
+        }
+    }
+
+    @Benchmark
+    public long admitted() {
+        long result = admission.acquire(keys[ThreadLocalRandom.current().nextInt(keys.length)]);
+        admission.release();
+        return result;
+    }
+
+    @Benchmark
+    public String baseline() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+}
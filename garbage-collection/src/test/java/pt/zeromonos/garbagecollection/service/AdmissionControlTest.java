@@ -0,0 +1,109 @@
+package pt.zeromonos.garbagecollection.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import pt.zeromonos.garbagecollection.config.AdmissionProperties;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void allowsTheBurstThenAsksTheClientToWaitForTheRefill() {
+        AdmissionControl admission = admission(3, 0.5, 10);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(admission.acquire("10.0.0.1")).isEqualTo(AdmissionControl.ADMITTED);
+            admission.release();
+        }
+        // Um token a cada 2 segundos.
+        assertThat(admission.acquire("10.0.0.1")).isEqualTo(2);
+        assertThat(admission.acquire("10.0.0.2")).isEqualTo(AdmissionControl.ADMITTED);
+        admission.release();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertThat(admission.acquire("10.0.0.1")).isEqualTo(AdmissionControl.ADMITTED);
+        admission.release();
+        assertThat(admission.inFlight()).isZero();
+        assertThat(registry.get("bookings.admission.rejected").tag("reason", "rate").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsWhenTooManyCreationsAreInFlight() {
+        AdmissionControl admission = admission(100, 100, 2);
+
+        assertThat(admission.acquire("a")).isEqualTo(AdmissionControl.ADMITTED);
+        assertThat(admission.acquire("b")).isEqualTo(AdmissionControl.ADMITTED);
+        assertThat(admission.acquire("c")).isEqualTo(1);
+
+        admission.release();
+        assertThat(admission.acquire("c")).isEqualTo(AdmissionControl.ADMITTED);
+        assertThat(registry.get("bookings.admission.rejected").tag("reason", "concurrency").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void evictsOnlyClientsThatHaveBeenIdle() {
+        AdmissionControl admission = admission(1, 1, 10);
+        admission.acquire("idle");
+        admission.release();
+        now.addAndGet(Duration.ofMinutes(9).toNanos());
+        admission.acquire("active");
+        admission.release();
+
+        now.addAndGet(Duration.ofMinutes(2).toNanos());
+
+        assertThat(admission.evictIdle()).isEqualTo(1);
+        assertThat(registry.get("bookings.admission.clients").gauge().value()).isEqualTo(1);
+        // Um cliente removido volta com o bucket cheio.
+        assertThat(admission.acquire("idle")).isEqualTo(AdmissionControl.ADMITTED);
+    }
+
+    @Test
+    void usesTheConfiguredHeaderToIdentifyTheClient() {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setClientHeader("X-Forwarded-For");
+        AdmissionControl admission = new AdmissionControl(properties, registry, now::get);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.9");
+
+        assertThat(admission.clientKey(request)).isEqualTo("10.0.0.9");
+        request.addHeader("X-Forwarded-For", "203.0.113.7, 10.0.0.9");
+        assertThat(admission.clientKey(request)).isEqualTo("203.0.113.7");
+    }
+
+    @Test
+    void chargesOneTokenPerBookingAndLetsALargeBatchInOnlyWithAFullBucket() {
+        AdmissionControl admission = admission(10, 1, 10);
+
+        assertThat(admission.acquire("importer", 4)).isEqualTo(AdmissionControl.ADMITTED);
+        admission.release();
+        // Restam 6 tokens: um batch de 8 espera pelos 2 que faltam.
+        assertThat(admission.acquire("importer", 8)).isEqualTo(2);
+        // Maior do que a rajada: só com o bucket cheio (mais 4 segundos).
+        assertThat(admission.acquire("importer", 50)).isEqualTo(4);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        assertThat(admission.acquire("importer", 50)).isEqualTo(AdmissionControl.ADMITTED);
+        admission.release();
+        // Em dívida: os 50 tokens repõem-se antes do pedido seguinte.
+        assertThat(admission.acquire("importer")).isEqualTo(41);
+        assertThat(admission.inFlight()).isZero();
+    }
+
+    private AdmissionControl admission(int burst, double refillPerSecond, int maxConcurrent) {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setBurst(burst);
+        properties.setRefillPerSecond(refillPerSecond);
+        properties.setMaxConcurrent(maxConcurrent);
+        return new AdmissionControl(properties, registry, now::get);
+    }
+}
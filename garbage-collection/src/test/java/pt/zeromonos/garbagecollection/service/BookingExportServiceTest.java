@@ -0,0 +1,37 @@
+package pt.zeromonos.garbagecollection.service;
+
+import org.junit.jupiter.api.Test;
+import pt.zeromonos.garbagecollection.service.BookingExportService.ExportFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pt.zeromonos.garbagecollection.service.BookingExportService.escapeCsv;
+
+class BookingExportServiceTest {
+
+    @Test
+    void escapeCsvShouldQuoteSeparatorsAndQuotes() {
+        assertThat(escapeCsv("Sofá velho")).isEqualTo("Sofá velho");
+        assertThat(escapeCsv("Rua A, 1")).isEqualTo("\"Rua A, 1\"");
+        assertThat(escapeCsv("Móvel \"antigo\"")).isEqualTo("\"Móvel \"\"antigo\"\"\"");
+        assertThat(escapeCsv(null)).isEmpty();
+    }
+
+    @Test
+    void escapeCsvShouldNeutralizeFormulas() {
+        assertThat(escapeCsv("=HYPERLINK(\"http://x\")")).isEqualTo("\"'=HYPERLINK(\"\"http://x\"\")\"");
+        assertThat(escapeCsv("+351 912")).isEqualTo("\"'+351 912\"");
+        assertThat(escapeCsv("-2+3")).isEqualTo("\"'-2+3\"");
+        assertThat(escapeCsv("@SUM(A1)")).isEqualTo("\"'@SUM(A1)\"");
+        assertThat(escapeCsv("\t=1")).isEqualTo("\"'\t=1\"");
+        assertThat(escapeCsv("\r=1")).isEqualTo("\"'\r=1\"");
+        assertThat(escapeCsv("a=1")).isEqualTo("a=1");
+    }
+
+    @Test
+    void exportFormatShouldRejectMissingOrUnknownValues() {
+        assertThat(ExportFormat.from(" csv ")).isEqualTo(ExportFormat.CSV);
+        assertThatThrownBy(() -> ExportFormat.from(null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ExportFormat.from("xlsx")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
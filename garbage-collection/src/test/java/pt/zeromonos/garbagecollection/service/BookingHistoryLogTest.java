@@ -0,0 +1,114 @@
+package pt.zeromonos.garbagecollection.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pt.zeromonos.garbagecollection.config.HistoryProperties;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.BookingTokens;
+import pt.zeromonos.garbagecollection.dto.StatusHistoryEntryDTO;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BookingHistoryLogTest {
+
+    // Os instantes são guardados ao milissegundo.
+    private final LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void transitionsAreReadOldestFirstAndSurviveARestart() throws IOException {
+        BookingHistoryLog log = open(1024 * 1024);
+        String lisboa = BookingTokens.newToken();
+        String porto = BookingTokens.newToken();
+        log.append(lisboa, BookingStatus.RECEIVED, now.minusHours(2));
+        log.append(porto, BookingStatus.RECEIVED, now.minusHours(2));
+        log.append(lisboa, BookingStatus.SCHEDULED, now.minusHours(1));
+        log.append(lisboa, BookingStatus.COMPLETED, now);
+        log.close();
+
+        BookingHistoryLog restarted = open(1024 * 1024);
+        assertThat(restarted.read(lisboa)).containsExactly(
+                new StatusHistoryEntryDTO(BookingStatus.RECEIVED, now.minusHours(2)),
+                new StatusHistoryEntryDTO(BookingStatus.SCHEDULED, now.minusHours(1)),
+                new StatusHistoryEntryDTO(BookingStatus.COMPLETED, now));
+        assertThat(restarted.read(porto)).extracting(StatusHistoryEntryDTO::getStatus)
+                .containsExactly(BookingStatus.RECEIVED);
+        assertThat(restarted.read(BookingTokens.newToken())).isEmpty();
+
+        // Depois do arranque as novas transições continuam a cadeia existente.
+        restarted.append(porto, BookingStatus.CANCELLED, now);
+        assertThat(restarted.read(porto)).extracting(StatusHistoryEntryDTO::getStatus)
+                .containsExactly(BookingStatus.RECEIVED, BookingStatus.CANCELLED);
+    }
+
+    @Test
+    void historySpansSegmentsWhenTheActiveOneFills() throws IOException {
+        // Três registos por segmento.
+        BookingHistoryLog log = open(3 * BookingHistoryLog.RECORD_BYTES);
+        String token = BookingTokens.newToken();
+        for (int i = 0; i < 10; i++) {
+            log.append(token, i % 2 == 0 ? BookingStatus.SCHEDULED : BookingStatus.IN_PROGRESS, now.plusMinutes(i));
+            log.append(BookingTokens.newToken(), BookingStatus.RECEIVED, now);
+        }
+        log.close();
+
+        assertThat(segmentFiles()).hasSize(7);
+        assertThat(open(3 * BookingHistoryLog.RECORD_BYTES).read(token))
+                .extracting(StatusHistoryEntryDTO::getChangedAt)
+                .containsExactlyElementsOf(Stream.iterate(now, time -> time.plusMinutes(1)).limit(10).toList());
+    }
+
+    @Test
+    void compactionMergesSealedSegmentsAndDropsExpiredTransitions() throws IOException {
+        BookingHistoryLog log = open(2 * BookingHistoryLog.RECORD_BYTES);
+        String old = BookingTokens.newToken();
+        String recent = BookingTokens.newToken();
+        log.append(old, BookingStatus.RECEIVED, now.minusDays(800));
+        log.append(recent, BookingStatus.RECEIVED, now.minusDays(800));
+        log.append(recent, BookingStatus.SCHEDULED, now.minusDays(1));
+        log.append(old, BookingStatus.COMPLETED, now.minusDays(799));
+        log.append(recent, BookingStatus.COMPLETED, now);
+
+        log.compact();
+
+        // Um compactado com o que ficou dentro da retenção, mais o segmento ativo.
+        assertThat(segmentFiles()).extracting(file -> file.getFileName().toString())
+                .anyMatch(name -> name.endsWith(".compact"))
+                .hasSize(2);
+        assertThat(log.read(old)).isEmpty();
+        assertThat(log.read(recent)).extracting(StatusHistoryEntryDTO::getStatus)
+                .containsExactly(BookingStatus.SCHEDULED, BookingStatus.COMPLETED);
+
+        log.append(recent, BookingStatus.CANCELLED, now);
+        log.close();
+        assertThat(open(2 * BookingHistoryLog.RECORD_BYTES).read(recent)).extracting(StatusHistoryEntryDTO::getStatus)
+                .containsExactly(BookingStatus.SCHEDULED, BookingStatus.COMPLETED, BookingStatus.CANCELLED);
+    }
+
+    private BookingHistoryLog open(long segmentBytes) throws IOException {
+        HistoryProperties properties = new HistoryProperties();
+        properties.setDir(dir);
+        properties.setSegmentBytes(segmentBytes);
+        properties.setRetention(Duration.ofDays(730));
+        BookingHistoryLog log = new BookingHistoryLog(properties);
+        log.open();
+        return log;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.toList();
+        }
+    }
+}
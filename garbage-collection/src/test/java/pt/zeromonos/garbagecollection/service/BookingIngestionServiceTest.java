@@ -0,0 +1,193 @@
+package pt.zeromonos.garbagecollection.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import pt.zeromonos.garbagecollection.config.IngestionProperties;
+import pt.zeromonos.garbagecollection.config.TokenCacheProperties;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.StatusHistoryEntryDTO;
+import pt.zeromonos.garbagecollection.repository.BookingRequestRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// A thread de ingestão faz os seus próprios commits, por isso o teste não corre dentro de uma transação.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BookingIngestionServiceTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final SlotCapacityService slotCapacityService = mock(SlotCapacityService.class);
+    private final BookingHistoryLog historyLog = mock(BookingHistoryLog.class);
+
+    @Autowired
+    private BookingRequestRepository bookingRepository;
+
+    @TempDir
+    Path journalDir;
+
+    private BookingIngestionService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.stop();
+        }
+        bookingRepository.deleteAll();
+    }
+
+    @Test
+    void submittedBookingsAreVisibleByTokenAndReachTheDatabase() throws Exception {
+        service = start();
+        List<BookingRequest> submitted = List.of(
+                service.submit(booking("Lisboa")), service.submit(booking("Porto")), service.submit(booking("Braga")));
+
+        for (BookingRequest booking : submitted) {
+            boolean visible = service.findPending(booking.getBookingToken()).isPresent()
+                    || bookingRepository.findByBookingToken(booking.getBookingToken()).isPresent();
+            assertThat(visible).isTrue();
+        }
+
+        awaitRows(3);
+        assertThat(submitted).allSatisfy(booking ->
+                assertThat(service.findPending(booking.getBookingToken())).isEmpty());
+    }
+
+    @Test
+    void replayAfterCrashDoesNotLoseOrDuplicateBookings() throws Exception {
+        service = start();
+        BookingRequest lisboa = service.submit(booking("Lisboa"));
+        BookingRequest porto = service.submit(booking("Porto"));
+        awaitRows(2);
+        service.stop();
+        // O histórico do Lisboa ficou escrito antes da queda, o do Porto não.
+        clearInvocations(historyLog);
+        when(historyLog.read(lisboa.getBookingToken()))
+                .thenReturn(List.of(new StatusHistoryEntryDTO(BookingStatus.RECEIVED, lisboa.getCreatedAt())));
+
+        // Queda depois do commit mas antes do checkpoint, e um booking confirmado que nunca chegou à base de dados.
+        BookingJournal journal = new BookingJournal(journalDir, objectMapper, 1024 * 1024);
+        journal.recover();
+        journal.writeCheckpoint(0);
+        journal.start(entries -> { });
+        BookingRequest lost = booking("Braga");
+        journal.append(BookingJournal.Entry.of(lost)).join();
+        journal.close();
+
+        service = start();
+        assertThat(service.findPending(lost.getBookingToken())).isPresent();
+        awaitRows(3);
+
+        assertThat(bookingRepository.findAll()).extracting(BookingRequest::getMunicipality)
+                .containsExactlyInAnyOrder("Lisboa", "Porto", "Braga");
+        // Só o booking que faltava volta a ocupar lugar nos contadores.
+        verify(slotCapacityService, times(1)).forceReserve(eq("Braga"), any(LocalDate.class), eq(TimeSlot.MORNING));
+        verify(slotCapacityService, times(1)).forceReserve(any(), any(LocalDate.class), any(TimeSlot.class));
+        // As entradas que já estavam na base de dados recebem o histórico que faltava, sem duplicar.
+        verify(historyLog).append(porto.getBookingToken(), BookingStatus.RECEIVED, porto.getCreatedAt());
+        verify(historyLog).append(eq(lost.getBookingToken()), eq(BookingStatus.RECEIVED), any());
+        verify(historyLog, never()).append(eq(lisboa.getBookingToken()), any(), any());
+    }
+
+    @Test
+    void aFailureAfterTheCommitIsRetriedOnlyForThatBookingAndDoesNotInsertAgain() throws Exception {
+        BookingRequest porto = booking("Porto");
+        doThrow(new IllegalStateException("disk full")).doNothing()
+                .when(historyLog).append(eq(porto.getBookingToken()), any(), any());
+        service = start();
+
+        BookingRequest lisboa = service.submit(booking("Lisboa"));
+        service.submit(porto);
+        awaitRows(2);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mockingDetails(historyLog).getInvocations().size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        // O Porto já estava gravado: o histórico é repetido, o INSERT não.
+        verify(historyLog, times(2)).append(eq(porto.getBookingToken()), eq(BookingStatus.RECEIVED), any());
+        verify(historyLog, times(1)).append(eq(lisboa.getBookingToken()), eq(BookingStatus.RECEIVED), any());
+        assertThat(bookingRepository.findAll()).extracting(BookingRequest::getMunicipality)
+                .containsExactlyInAnyOrder("Lisboa", "Porto");
+        assertThat(service.findPending(porto.getBookingToken())).isEmpty();
+    }
+
+    @Test
+    void aBookingTheDatabaseKeepsRejectingIsDeadLetteredWithoutBlockingTheOthers() throws Exception {
+        service = start();
+        // Uma entrada que já está no journal mas que o INSERT recusa (item_description é NOT NULL).
+        BookingRequest poison = booking("Lisboa");
+        poison.setItemDescription(null);
+        service.submit(poison);
+        service.submit(booking("Porto"));
+        service.submit(booking("Braga"));
+
+        awaitRows(2);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (service.findPending(poison.getBookingToken()).isPresent() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(100);
+
+        assertThat(service.findPending(poison.getBookingToken())).isEmpty();
+        assertThat(bookingRepository.findAll()).extracting(BookingRequest::getMunicipality)
+                .containsExactlyInAnyOrder("Porto", "Braga");
+        assertThat(Files.readAllLines(journalDir.resolve("dead-letter.jsonl")))
+                .singleElement().asString().contains(poison.getBookingToken());
+        verify(slotCapacityService).release(eq("Lisboa"), any(LocalDate.class), eq(TimeSlot.MORNING));
+        // O checkpoint passou à frente da entrada: num arranque não é reaplicada.
+        assertThat(new BookingJournal(journalDir, objectMapper, 1024 * 1024).readCheckpoint()).isEqualTo(3);
+    }
+
+    private BookingIngestionService start() throws Exception {
+        IngestionProperties properties = new IngestionProperties();
+        properties.setMode(IngestionProperties.Mode.JOURNAL);
+        properties.setJournalDir(journalDir);
+        properties.setRetryDelay(Duration.ofMillis(10));
+        BookingIngestionService ingestion = new BookingIngestionService(properties, bookingRepository,
+                slotCapacityService, new BookingTokenCache(new TokenCacheProperties()),
+                new BookingMetrics(new SimpleMeterRegistry()), event -> { }, objectMapper, historyLog,
+                new ScheduleSummaryService(bookingRepository), new SimpleMeterRegistry());
+        ingestion.start();
+        return ingestion;
+    }
+
+    private void awaitRows(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bookingRepository.count() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        // Dá tempo a que o checkpoint seja escrito depois do commit.
+        Thread.sleep(100);
+        assertThat(bookingRepository.count()).isEqualTo(expected);
+    }
+
+    private static BookingRequest booking(String municipality) {
+        return new BookingRequest("Sofá", municipality, "Rua A", LocalDate.now().plusDays(2), TimeSlot.MORNING);
+    }
+}
@@ -0,0 +1,105 @@
+package pt.zeromonos.garbagecollection.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.service.BookingJournal.Entry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BookingJournalTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appendedEntriesAreDeliveredInOrderAndRecoveredAfterRestart() throws IOException {
+        List<Entry> delivered = new CopyOnWriteArrayList<>();
+        BookingJournal journal = new BookingJournal(dir, objectMapper, 1024 * 1024);
+        assertThat(journal.recover()).isEmpty();
+        journal.start(delivered::addAll);
+
+        List<CompletableFuture<Entry>> futures = Stream.of("Lisboa", "Porto", "Braga")
+                .map(municipality -> journal.append(Entry.of(booking(municipality))))
+                .toList();
+        List<Entry> written = futures.stream().map(CompletableFuture::join).toList();
+        journal.close();
+
+        assertThat(written).extracting(Entry::sequence).containsExactly(1L, 2L, 3L);
+        assertThat(delivered).containsExactlyElementsOf(written);
+
+        BookingJournal restarted = new BookingJournal(dir, objectMapper, 1024 * 1024);
+        assertThat(restarted.recover()).containsExactlyElementsOf(written);
+    }
+
+    @Test
+    void recoverSkipsCheckpointedEntriesAndTruncatesTornTail() throws IOException {
+        BookingJournal journal = new BookingJournal(dir, objectMapper, 1024 * 1024);
+        journal.recover();
+        journal.start(entries -> { });
+        journal.append(Entry.of(booking("Lisboa"))).join();
+        Entry second = journal.append(Entry.of(booking("Porto"))).join();
+        journal.writeCheckpoint(1);
+        journal.close();
+
+        // Simula uma queda a meio da escrita de um terceiro registo.
+        Path segment = segments().get(0);
+        long validSize = Files.size(segment);
+        Files.write(segment, new byte[]{0, 0, 1, 0, 42, 42}, StandardOpenOption.APPEND);
+
+        BookingJournal restarted = new BookingJournal(dir, objectMapper, 1024 * 1024);
+        assertThat(restarted.recover()).containsExactly(second);
+        assertThat(Files.size(segment)).isEqualTo(validSize);
+
+        // A sequência continua depois da última entrada válida.
+        restarted.start(entries -> { });
+        assertThat(restarted.append(Entry.of(booking("Braga"))).join().sequence()).isEqualTo(3);
+        restarted.close();
+    }
+
+    @Test
+    void fullSegmentsAreDeletedOnceApplied() throws IOException {
+        // Segmentos minúsculos: cada grupo escrito passa logo para um segmento novo.
+        BookingJournal journal = new BookingJournal(dir, objectMapper, 1);
+        journal.recover();
+        journal.start(entries -> { });
+        for (String municipality : List.of("Lisboa", "Porto", "Braga")) {
+            journal.append(Entry.of(booking(municipality))).join();
+        }
+        // O segmento só passa para o seguinte depois de confirmar o grupo; close espera pela thread de escrita.
+        journal.close();
+        assertThat(segments()).hasSize(4);
+
+        journal.deleteAppliedSegments(2);
+
+        assertThat(segments()).hasSize(2);
+        BookingJournal restarted = new BookingJournal(dir, objectMapper, 1);
+        restarted.writeCheckpoint(2);
+        assertThat(restarted.recover()).extracting(Entry::municipality).containsExactly("Braga");
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    private static BookingRequest booking(String municipality) {
+        return new BookingRequest("Sofá", municipality, "Rua A", LocalDate.now().plusDays(2), TimeSlot.MORNING);
+    }
+}
@@ -0,0 +1,146 @@
+package pt.zeromonos.garbagecollection.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.mockito.Mockito;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+import pt.zeromonos.garbagecollection.config.CapacityProperties;
+import pt.zeromonos.garbagecollection.config.GeoApiProperties;
+import pt.zeromonos.garbagecollection.config.IngestionProperties;
+import pt.zeromonos.garbagecollection.config.TokenCacheProperties;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.BookingLookupDTO;
+import pt.zeromonos.garbagecollection.dto.BookingRequestDTO;
+import pt.zeromonos.garbagecollection.repository.BookingRequestRepository;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caminho de criação e de consulta por token do BookingService, sem base de dados: o repositório
+ * é um proxy que devolve a entidade recebida, para medir só validação, reserva de capacidade e cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookingServiceBenchmark {
+
+    private BookingService bookingService;
+    private BookingRequestDTO valid;
+    private BookingRequestDTO unknownMunicipality;
+    private BookingRequestDTO pastDate;
+    private String cachedToken;
+
+    @Setup
+    public void setUp() {
+        // Sem Spring Boot o logback fica em DEBUG; os logs dominariam a medição.
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        BookingRequest stored = new BookingRequest("Sofá", "Lisboa", "Rua A", LocalDate.now().plusDays(1), TimeSlot.MORNING);
+        cachedToken = stored.getBookingToken();
+        BookingRequestRepository repository = (BookingRequestRepository) Proxy.newProxyInstance(
+                BookingRequestRepository.class.getClassLoader(),
+                new Class<?>[]{BookingRequestRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "save" -> args[0];
+                    case "findLookupByBookingToken" -> cachedToken.equals(args[0])
+                            ? Optional.of(BookingLookupDTO.from(stored)) : Optional.empty();
+                    case "countBySlotFrom" -> List.of();
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+
+        GeoApiProperties geoApiProperties = new GeoApiProperties();
+        geoApiProperties.setRefreshMode(GeoApiProperties.RefreshMode.BACKGROUND);
+        GeoApiService geoApiService = new GeoApiService(new RestTemplate(), new ObjectMapper(), geoApiProperties);
+        ReflectionTestUtils.setField(geoApiService, "cachedMunicipalities",
+                MunicipalityIndex.of(GeoApiServiceBenchmark.municipalityNames()));
+
+        CapacityProperties capacityProperties = new CapacityProperties();
+        capacityProperties.setDefaultLimit(Integer.MAX_VALUE);
+
+        bookingService = new BookingService();
+        ReflectionTestUtils.setField(bookingService, "bookingRepository", repository);
+        ReflectionTestUtils.setField(bookingService, "geoApiService", geoApiService);
+        SlotCapacityService slotCapacityService = new SlotCapacityService(repository, capacityProperties);
+        BookingTokenCache tokenCache = new BookingTokenCache(new TokenCacheProperties());
+        ReflectionTestUtils.setField(bookingService, "slotCapacityService", slotCapacityService);
+        ReflectionTestUtils.setField(bookingService, "tokenCache", tokenCache);
+        BookingMetrics bookingMetrics = new BookingMetrics(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(bookingService, "bookingMetrics", bookingMetrics);
+        // O histórico em disco cresceria centenas de MB durante a medição; fica de fora do benchmark.
+        BookingHistoryLog historyLog = Mockito.mock(BookingHistoryLog.class);
+        ScheduleSummaryService scheduleSummary = new ScheduleSummaryService(repository);
+        // Modo síncrono (o por omissão): o benchmark mede o caminho com INSERT no pedido.
+        ReflectionTestUtils.setField(bookingService, "ingestionService", new BookingIngestionService(
+                new IngestionProperties(), repository, slotCapacityService, tokenCache, bookingMetrics,
+                event -> { }, new ObjectMapper(), historyLog, scheduleSummary, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(bookingService, "historyLog", historyLog);
+        ReflectionTestUtils.setField(bookingService, "scheduleSummary", scheduleSummary);
+        ReflectionTestUtils.setField(bookingService, "eventPublisher", (ApplicationEventPublisher) event -> { });
+
+        // Nome com maiúsculas/espaços diferentes do canónico, para passar pela normalização.
+        valid = dto("  LISBOA ", LocalDate.now().plusDays(3));
+        unknownMunicipality = dto("Atlântida", LocalDate.now().plusDays(3));
+        pastDate = dto("Lisboa", LocalDate.now().minusDays(1));
+
+        // Aquece a entrada na cache para o benchmark de consulta medir o caminho "hit".
+        bookingService.findBookingByToken(cachedToken);
+    }
+
+    @Benchmark
+    public BookingRequest createBookingValid() {
+        return bookingService.createBooking(valid);
+    }
+
+    @Benchmark
+    public void createBookingRejected(Blackhole blackhole) {
+        try {
+            blackhole.consume(bookingService.createBooking(unknownMunicipality));
+        } catch (IllegalArgumentException expected) {
+            blackhole.consume(expected);
+        }
+        try {
+            blackhole.consume(bookingService.createBooking(pastDate));
+        } catch (IllegalArgumentException expected) {
+            blackhole.consume(expected);
+        }
+    }
+
+    @Benchmark
+    public Optional<BookingLookupDTO> findBookingByTokenCached() {
+        return bookingService.findBookingByToken(cachedToken);
+    }
+
+    private static BookingRequestDTO dto(String municipality, LocalDate date) {
+        BookingRequestDTO dto = new BookingRequestDTO();
+        dto.setItemDescription("Frigorífico antigo");
+        dto.setMunicipality(municipality);
+        dto.setFullAddress("Rua das Flores, 10");
+        dto.setBookingDate(date);
+        dto.setTimeSlot(TimeSlot.MORNING);
+        return dto;
+    }
+}
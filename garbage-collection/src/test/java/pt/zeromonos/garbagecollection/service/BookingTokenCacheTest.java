@@ -0,0 +1,102 @@
+package pt.zeromonos.garbagecollection.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pt.zeromonos.garbagecollection.config.TokenCacheProperties;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.BookingLookupDTO;
+import pt.zeromonos.garbagecollection.dto.CacheStatsDTO;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BookingTokenCacheTest {
+
+    private BookingTokenCache cache;
+    private BookingLookupDTO booking;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        cache = new BookingTokenCache(new TokenCacheProperties());
+        BookingRequest entity = new BookingRequest("Frigorífico", "Lisboa", "Rua A", LocalDate.now().plusDays(1), TimeSlot.MORNING);
+        entity.setId(7L);
+        booking = BookingLookupDTO.from(entity);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void shouldLoadOnceAndServeRepeatedLookupsFromCache() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(cache.get(booking.bookingToken(), this::load)).contains(booking);
+        }
+
+        CacheStatsDTO stats = cache.stats();
+        assertThat(loads).hasValue(1);
+        assertThat(stats.getHits()).isEqualTo(2);
+        assertThat(stats.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCacheUnknownTokensNegatively() {
+        assertThat(cache.get("does-not-exist", this::load)).isEmpty();
+        assertThat(cache.get("does-not-exist", this::load)).isEmpty();
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void putAndInvalidateShouldKeepCacheInSyncWithUpdates() {
+        cache.get(booking.bookingToken(), this::load);
+
+        BookingRequest updated = new BookingRequest("Frigorífico", "Lisboa", "Rua A", booking.bookingDate(), TimeSlot.MORNING);
+        updated.setId(7L);
+        updated.setBookingToken(booking.bookingToken());
+        updated.setStatus(BookingStatus.COMPLETED);
+        cache.put(updated);
+
+        assertThat(cache.get(booking.bookingToken(), this::load))
+                .map(BookingLookupDTO::status)
+                .contains(BookingStatus.COMPLETED);
+
+        cache.invalidateAll(List.of(booking.bookingToken()));
+        cache.get(booking.bookingToken(), this::load);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void loadInFlightDuringInvalidationShouldNotStayCached() {
+        // O carregamento leu o estado antigo; a mudança faz commit e invalida antes de ele acabar.
+        Optional<BookingLookupDTO> stale = cache.get(booking.bookingToken(), token -> {
+            Optional<BookingLookupDTO> read = load(token);
+            cache.invalidateAll(List.of(token));
+            return read;
+        });
+
+        assertThat(stale).contains(booking);
+        cache.get(booking.bookingToken(), this::load);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void failedLoadShouldPropagateAndNotBeCached() {
+        assertThatThrownBy(() -> cache.get(booking.bookingToken(), token -> {
+            throw new IllegalStateException("database down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(cache.get(booking.bookingToken(), this::load)).contains(booking);
+        assertThat(loads).hasValue(1);
+    }
+
+    private Optional<BookingLookupDTO> load(String token) {
+        loads.incrementAndGet();
+        return token.equals(booking.bookingToken()) ? Optional.of(booking) : Optional.empty();
+    }
+}
@@ -1,25 +1,45 @@
 package pt.zeromonos.garbagecollection.service;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import jakarta.persistence.EntityNotFoundException;
 import pt.zeromonos.garbagecollection.domain.BookingRequest;
 import pt.zeromonos.garbagecollection.domain.BookingStatus;
 import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.BatchBookingResultDTO;
+import pt.zeromonos.garbagecollection.dto.BookingLookupDTO;
+import pt.zeromonos.garbagecollection.dto.BookingPageDTO;
 import pt.zeromonos.garbagecollection.dto.BookingRequestDTO;
+import pt.zeromonos.garbagecollection.dto.BulkStatusUpdateDTO;
+import pt.zeromonos.garbagecollection.dto.StaffBookingDTO;
+import pt.zeromonos.garbagecollection.event.BookingChangedEvent;
 import pt.zeromonos.garbagecollection.repository.BookingRequestRepository;
+import pt.zeromonos.garbagecollection.repository.StatusChange;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 // Ativa a integração do Mockito com o JUnit 5
@@ -35,10 +55,38 @@ class BookingServiceTest {
     @Mock
     private GeoApiService geoApiService;
 
+    @Mock
+    private SlotCapacityService slotCapacityService;
+
+    @Mock
+    private BookingTokenCache tokenCache;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private BookingMetrics bookingMetrics;
+
+    @Mock
+    private BookingIngestionService ingestionService;
+
+    @Mock
+    private BookingHistoryLog historyLog;
+
+    @Mock
+    private ScheduleSummaryService scheduleSummary;
+
     // Cria uma instância real do BookingService e injecta os mocks acima nele.
     @InjectMocks
     private BookingService bookingService;
 
+    @BeforeEach
+    void runSummaryWrites() {
+        // O writing() do resumo só segura o rebuild: aqui corre logo a escrita.
+        lenient().when(scheduleSummary.writing(any())).thenAnswer(invocation ->
+                invocation.<Supplier<?>>getArgument(0).get());
+    }
+
     // -- Teste 1: Caminho Feliz (Happy Path) --
     // Testa a criação de um agendamento com dados válidos.
     @Test
@@ -52,8 +100,9 @@ class BookingServiceTest {
         dto.setTimeSlot(TimeSlot.MORNING);
 
         // Preparamos o que os nossos mocks devem fazer.
-        // Dizemos ao mock do GeoApiService para retornar uma lista válida de municípios.
-    when(geoApiService.getMunicipalities()).thenReturn(List.of("Lisboa", "Porto"));
+        // Dizemos ao mock do GeoApiService para reconhecer o município.
+    when(geoApiService.resolveMunicipality("Lisboa")).thenReturn(Optional.of("Lisboa"));
+    when(slotCapacityService.tryReserve("Lisboa", dto.getBookingDate(), TimeSlot.MORNING)).thenReturn(true);
 
     // Dizemos ao mock do repositório para retornar o próprio objeto que recebeu ao ser guardado.
     // isA garante que o argumento não é nulo.
@@ -71,9 +120,33 @@ class BookingServiceTest {
 
         // Verificamos se os nossos mocks foram chamados como esperado.
         // Garante que o método getMunicipalities() foi chamado exatamente 1 vez.
-        verify(geoApiService, times(1)).getMunicipalities();
+        verify(geoApiService, times(1)).resolveMunicipality("Lisboa");
         // Garante que o método save() foi chamado exatamente 1 vez.
         verify(bookingRepository, times(1)).save(any(BookingRequest.class));
+        verify(bookingMetrics).bookingCreated("Lisboa");
+    }
+
+    @Test
+    void whenCreateBooking_andHistoryAppendFails_thenReturnsTheSavedBookingAndCountsTheFailure() {
+        BookingRequestDTO dto = new BookingRequestDTO();
+        dto.setMunicipality("Lisboa");
+        dto.setItemDescription("Uma secretária");
+        dto.setBookingDate(LocalDate.now().plusDays(5));
+        dto.setTimeSlot(TimeSlot.MORNING);
+        when(geoApiService.resolveMunicipality("Lisboa")).thenReturn(Optional.of("Lisboa"));
+        when(slotCapacityService.tryReserve("Lisboa", dto.getBookingDate(), TimeSlot.MORNING)).thenReturn(true);
+        when(bookingRepository.save(any(BookingRequest.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        doThrow(new UncheckedIOException(new IOException("No space left on device")))
+                .when(historyLog).append(any(), any(), any());
+
+        BookingRequest result = bookingService.createBooking(dto);
+
+        // O booking já está gravado: o pedido não falha, e o resto do pós-commit corre na mesma.
+        assertNotNull(result.getBookingToken());
+        verify(bookingMetrics).historyAppendFailed();
+        verify(bookingMetrics).bookingCreated("Lisboa");
+        verify(eventPublisher).publishEvent(any(BookingChangedEvent.class));
+        verify(slotCapacityService, never()).release(any(), any(), any());
     }
 
     // -- Teste 2: Caminho Triste (Sad Path) --
@@ -85,8 +158,8 @@ class BookingServiceTest {
         dto.setMunicipality("Terra do Nunca"); // Município que não existe na lista.
         dto.setBookingDate(LocalDate.now().plusDays(5));
         
-        // Configuramos o mock para retornar a lista de municípios válidos.
-        when(geoApiService.getMunicipalities()).thenReturn(List.of("Lisboa", "Porto"));
+        // Configuramos o mock para o índice não reconhecer o município.
+        when(geoApiService.resolveMunicipality("Terra do Nunca")).thenReturn(Optional.empty());
 
         // 2. Act & 3. Assert
         // Verificamos se uma excepção do tipo IllegalArgumentException é lançada.
@@ -108,7 +181,7 @@ class BookingServiceTest {
         dto.setBookingDate(LocalDate.now().minusDays(1)); // Data no passado.
 
         // Configuramos o mock para o município ser válido, para passarmos essa validação.
-        when(geoApiService.getMunicipalities()).thenReturn(List.of("Lisboa"));
+        when(geoApiService.resolveMunicipality("Lisboa")).thenReturn(Optional.of("Lisboa"));
 
         // 2. Act & 3. Assert
         assertThrows(IllegalArgumentException.class, () -> {
@@ -119,6 +192,112 @@ class BookingServiceTest {
         verify(bookingRepository, never()).save(any(BookingRequest.class));
     }
 
+    // Testa que o município é gravado com o nome canónico devolvido pelo índice.
+    @Test
+    void whenCreateBooking_withUnnormalizedMunicipality_thenStoresCanonicalName() {
+        BookingRequestDTO dto = new BookingRequestDTO();
+        dto.setMunicipality("evora");
+        dto.setItemDescription("Um sofá");
+        dto.setBookingDate(LocalDate.now().plusDays(2));
+        dto.setTimeSlot(TimeSlot.AFTERNOON);
+
+        when(geoApiService.resolveMunicipality("evora")).thenReturn(Optional.of("Évora"));
+        when(slotCapacityService.tryReserve("Évora", dto.getBookingDate(), TimeSlot.AFTERNOON)).thenReturn(true);
+        when(bookingRepository.save(any(BookingRequest.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        BookingRequest result = bookingService.createBooking(dto);
+
+        assertEquals("Évora", result.getMunicipality());
+    }
+
+    @Test
+    void whenCreateBooking_withFullSlot_thenThrowSlotUnavailable() {
+        BookingRequestDTO dto = new BookingRequestDTO();
+        dto.setMunicipality("Lisboa");
+        dto.setItemDescription("Um armário");
+        dto.setBookingDate(LocalDate.now().plusDays(3));
+        dto.setTimeSlot(TimeSlot.MORNING);
+
+        when(geoApiService.resolveMunicipality("Lisboa")).thenReturn(Optional.of("Lisboa"));
+        when(slotCapacityService.tryReserve("Lisboa", dto.getBookingDate(), TimeSlot.MORNING)).thenReturn(false);
+
+        assertThrows(SlotUnavailableException.class, () -> bookingService.createBooking(dto));
+
+        verify(bookingRepository, never()).save(any(BookingRequest.class));
+    }
+
+    @Test
+    void whenCreateBooking_andSaveFails_thenReleasesReservedSlot() {
+        BookingRequestDTO dto = new BookingRequestDTO();
+        dto.setMunicipality("Lisboa");
+        dto.setItemDescription("Um armário");
+        dto.setBookingDate(LocalDate.now().plusDays(3));
+        dto.setTimeSlot(TimeSlot.MORNING);
+
+        when(geoApiService.resolveMunicipality("Lisboa")).thenReturn(Optional.of("Lisboa"));
+        when(slotCapacityService.tryReserve("Lisboa", dto.getBookingDate(), TimeSlot.MORNING)).thenReturn(true);
+        when(bookingRepository.save(any(BookingRequest.class))).thenThrow(new IllegalStateException("db down"));
+
+        assertThrows(IllegalStateException.class, () -> bookingService.createBooking(dto));
+
+        verify(slotCapacityService).release("Lisboa", dto.getBookingDate(), TimeSlot.MORNING);
+    }
+
+    @Test
+    void whenCreateBooking_inJournalMode_thenSubmitsToJournalAndTokenIsVisibleWhilePending() {
+        BookingRequestDTO dto = new BookingRequestDTO();
+        dto.setMunicipality("Lisboa");
+        dto.setItemDescription("Um armário");
+        dto.setBookingDate(LocalDate.now().plusDays(3));
+        dto.setTimeSlot(TimeSlot.MORNING);
+
+        when(geoApiService.resolveMunicipality("Lisboa")).thenReturn(Optional.of("Lisboa"));
+        when(slotCapacityService.tryReserve("Lisboa", dto.getBookingDate(), TimeSlot.MORNING)).thenReturn(true);
+        when(ingestionService.isEnabled()).thenReturn(true);
+        when(ingestionService.submit(any(BookingRequest.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        BookingRequest accepted = bookingService.createBooking(dto);
+        when(ingestionService.findPending(accepted.getBookingToken())).thenReturn(Optional.of(accepted));
+
+        assertNull(accepted.getId());
+        assertEquals(Optional.of(BookingLookupDTO.from(accepted)), bookingService.findBookingByToken(accepted.getBookingToken()));
+        verify(bookingRepository, never()).save(any(BookingRequest.class));
+        verify(tokenCache, never()).get(anyString(), any());
+    }
+
+    @Test
+    void whenCreateBooking_inJournalMode_withoutItemDescription_thenRejectsBeforeReservingOrJournaling() {
+        BookingRequestDTO dto = new BookingRequestDTO();
+        dto.setMunicipality("Lisboa");
+        dto.setBookingDate(LocalDate.now().plusDays(3));
+        dto.setTimeSlot(TimeSlot.MORNING);
+
+        when(geoApiService.resolveMunicipality("Lisboa")).thenReturn(Optional.of("Lisboa"));
+        lenient().when(ingestionService.isEnabled()).thenReturn(true);
+
+        assertThrows(IllegalArgumentException.class, () -> bookingService.createBooking(dto));
+        dto.setItemDescription("Sofá");
+        dto.setFullAddress("x".repeat(256));
+        assertThrows(IllegalArgumentException.class, () -> bookingService.createBooking(dto));
+
+        verify(slotCapacityService, never()).tryReserve(anyString(), any(), any());
+        verify(ingestionService, never()).submit(any(BookingRequest.class));
+    }
+
+    @Test
+    void whenUpdateBookingStatus_toCancelled_thenReleasesSlot() {
+        BookingRequest booking = new BookingRequest("Sofá", "Lisboa", "Rua", LocalDate.now().plusDays(3), TimeSlot.AFTERNOON);
+        booking.setId(5L);
+        booking.setVersion(0L);
+
+        when(bookingRepository.changeStatusIfCurrent(eq(5L), eq(0L), any(), eq(BookingStatus.CANCELLED), any()))
+                .thenReturn(Optional.of(booking));
+
+        bookingService.updateBookingStatus(5L, BookingStatus.CANCELLED, 0L);
+
+        verify(slotCapacityService).release("Lisboa", booking.getBookingDate(), TimeSlot.AFTERNOON);
+    }
+
     @Test
     void whenUpdateBookingStatus_withValidData_thenPersistChanges() {
         BookingRequest existingBooking = new BookingRequest(
@@ -129,40 +308,309 @@ class BookingServiceTest {
                 TimeSlot.MORNING
         );
         existingBooking.setId(1L);
+        existingBooking.setVersion(4L);
         LocalDateTime originalLastUpdatedAt = existingBooking.getLastUpdatedAt();
 
-        when(bookingRepository.findById(1L)).thenReturn(Optional.of(existingBooking));
-        when(bookingRepository.save(existingBooking)).thenReturn(existingBooking);
+        when(bookingRepository.changeStatusIfCurrent(eq(1L), eq(4L), any(), eq(BookingStatus.COMPLETED), any()))
+                .thenReturn(Optional.of(existingBooking));
 
-        BookingRequest updatedBooking = bookingService.updateBookingStatus(1L, BookingStatus.COMPLETED);
+        BookingRequest updatedBooking = bookingService.updateBookingStatus(1L, BookingStatus.COMPLETED, 4L);
 
         assertEquals(BookingStatus.COMPLETED, updatedBooking.getStatus());
+        assertEquals(5L, updatedBooking.getVersion());
         assertNotNull(updatedBooking.getLastUpdatedAt());
         assertTrue(updatedBooking.getLastUpdatedAt().isAfter(originalLastUpdatedAt));
 
-        verify(bookingRepository).findById(1L);
-        verify(bookingRepository).save(existingBooking);
+        // Só o UPDATE condicional (versão do cliente + estados que podem passar a COMPLETED): sem leitura nem save.
+        verify(bookingRepository).changeStatusIfCurrent(1L, 4L, BookingStatus.sourcesOf(BookingStatus.COMPLETED),
+                BookingStatus.COMPLETED, updatedBooking.getLastUpdatedAt());
+        verify(bookingRepository, never()).findById(anyLong());
+        verify(bookingRepository, never()).save(any(BookingRequest.class));
+        // A cache de tokens passa a ter a versão atualizada e os painéis são notificados.
+        verify(tokenCache).put(existingBooking);
+        verify(eventPublisher).publishEvent(any(BookingChangedEvent.class));
+        verify(bookingMetrics).statusChanged(BookingStatus.RECEIVED, BookingStatus.COMPLETED);
+        verify(historyLog).append(existingBooking.getBookingToken(), BookingStatus.COMPLETED, updatedBooking.getLastUpdatedAt());
+        verify(scheduleSummary).statusChanged("Lisboa", existingBooking.getBookingDate(), TimeSlot.MORNING,
+                BookingStatus.RECEIVED, BookingStatus.COMPLETED);
     }
 
     @Test
     void whenUpdateBookingStatus_withNullStatus_thenThrowException() {
         assertThrows(IllegalArgumentException.class, () ->
-                bookingService.updateBookingStatus(1L, null)
+                bookingService.updateBookingStatus(1L, null, 0L)
         );
 
-        verify(bookingRepository, never()).findById(anyLong());
+        verify(bookingRepository, never()).changeStatusIfCurrent(any(), any(), any(), any(), any());
         verify(bookingRepository, never()).save(any(BookingRequest.class));
     }
 
+    @Test
+    void whenUpdateBookingStatus_withoutVersion_thenThrowException() {
+        assertThrows(IllegalArgumentException.class, () ->
+                bookingService.updateBookingStatus(1L, BookingStatus.SCHEDULED, null)
+        );
+
+        verify(bookingRepository, never()).changeStatusIfCurrent(any(), any(), any(), any(), any());
+    }
+
     @Test
     void whenUpdateBookingStatus_withUnknownBooking_thenThrowEntityNotFound() {
+        when(bookingRepository.changeStatusIfCurrent(eq(99L), eq(0L), any(), any(), any())).thenReturn(Optional.empty());
         when(bookingRepository.findById(99L)).thenReturn(Optional.empty());
 
         assertThrows(EntityNotFoundException.class, () ->
-                bookingService.updateBookingStatus(99L, BookingStatus.COMPLETED)
+                bookingService.updateBookingStatus(99L, BookingStatus.COMPLETED, 0L)
+        );
+
+        verify(bookingRepository, never()).save(any(BookingRequest.class));
+    }
+
+    @Test
+    void whenUpdateBookingStatus_withStaleVersion_thenThrowConflict() {
+        BookingRequest booking = new BookingRequest("Sofá", "Lisboa", "Rua", LocalDate.now().plusDays(3), TimeSlot.MORNING);
+        booking.setId(1L);
+        booking.setVersion(2L);
+        when(bookingRepository.changeStatusIfCurrent(eq(1L), eq(1L), any(), any(), any())).thenReturn(Optional.empty());
+        when(bookingRepository.findById(1L)).thenReturn(Optional.of(booking));
+
+        assertThrows(BookingConflictException.class, () ->
+                bookingService.updateBookingStatus(1L, BookingStatus.SCHEDULED, 1L)
+        );
+
+        verifyNoInteractions(historyLog, tokenCache, eventPublisher);
+    }
+
+    @Test
+    void whenUpdateBookingStatus_fromTerminalStatus_thenThrowIllegalTransition() {
+        BookingRequest booking = new BookingRequest("Sofá", "Lisboa", "Rua", LocalDate.now().plusDays(3), TimeSlot.MORNING);
+        booking.setId(1L);
+        booking.setVersion(0L);
+        booking.setStatus(BookingStatus.COMPLETED);
+        when(bookingRepository.changeStatusIfCurrent(eq(1L), eq(0L), any(), any(), any())).thenReturn(Optional.empty());
+        when(bookingRepository.findById(1L)).thenReturn(Optional.of(booking));
+
+        assertThrows(IllegalStatusTransitionException.class, () ->
+                bookingService.updateBookingStatus(1L, BookingStatus.RECEIVED, 0L)
+        );
+    }
+
+    @Test
+    void whenUpdateBookingStatus_losesTheRace_thenThrowConflictWithoutSideEffects() {
+        BookingRequest booking = new BookingRequest("Sofá", "Lisboa", "Rua", LocalDate.now().plusDays(3), TimeSlot.MORNING);
+        booking.setId(1L);
+        booking.setVersion(1L);
+        // Outro pedido mudou o booking depois da versão 0 que o cliente viu.
+        when(bookingRepository.changeStatusIfCurrent(eq(1L), eq(0L), any(), eq(BookingStatus.CANCELLED), any()))
+                .thenReturn(Optional.empty());
+        when(bookingRepository.findById(1L)).thenReturn(Optional.of(booking));
+
+        assertThrows(BookingConflictException.class, () ->
+                bookingService.updateBookingStatus(1L, BookingStatus.CANCELLED, 0L)
         );
 
-        verify(bookingRepository).findById(99L);
+        verify(slotCapacityService, never()).release(any(), any(), any());
+        verify(historyLog, never()).append(any(), any(), any());
+        verify(tokenCache, never()).put(any());
+        verify(eventPublisher, never()).publishEvent(any());
+        verify(scheduleSummary, never()).statusChanged(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void whenFindBookingsPage_withMoreRowsThanSize_thenReturnsCursorForNextPage() {
+        StaffBookingDTO first = staffRow(1L, LocalDate.now().plusDays(1));
+        StaffBookingDTO second = staffRow(2L, LocalDate.now().plusDays(1));
+        StaffBookingDTO extra = staffRow(3L, LocalDate.now().plusDays(2));
+
+        when(bookingRepository.findStaffPage(eq("Lisboa"), isNull(), isNull(), isNull(), isNull(), isNull(), eq(Limit.of(3))))
+                .thenReturn(List.of(first, second, extra));
+
+        BookingPageDTO page = bookingService.findBookingsPage("Lisboa", null, null, null, null, 2);
+
+        assertEquals(List.of(first, second), page.getItems());
+        assertNotNull(page.getNextCursor());
+
+        // O cursor devolvido aponta para o último elemento da página.
+        when(bookingRepository.findStaffPage(eq("Lisboa"), isNull(), isNull(), isNull(),
+                eq(second.bookingDate()), eq(2L), eq(Limit.of(3))))
+                .thenReturn(List.of(extra));
+
+        BookingPageDTO next = bookingService.findBookingsPage("Lisboa", null, null, null, page.getNextCursor(), 2);
+
+        assertEquals(List.of(extra), next.getItems());
+        assertNull(next.getNextCursor());
+    }
+
+    @Test
+    void whenFindBookingsPage_withInvalidCursor_thenThrowException() {
+        assertThrows(IllegalArgumentException.class, () ->
+                bookingService.findBookingsPage("Lisboa", null, null, null, "not-a-cursor", 10)
+        );
+    }
+
+    @Test
+    void whenCreateBookings_withMixedItems_thenSavesValidOnesInOneCallAndReportsPerItem() {
+        BookingRequestDTO valid = new BookingRequestDTO();
+        valid.setMunicipality("Lisboa");
+        valid.setItemDescription("Colchão");
+        valid.setBookingDate(LocalDate.now().plusDays(4));
+        valid.setTimeSlot(TimeSlot.MORNING);
+
+        BookingRequestDTO invalid = new BookingRequestDTO();
+        invalid.setMunicipality("Atlântida");
+        invalid.setBookingDate(LocalDate.now().plusDays(4));
+        invalid.setTimeSlot(TimeSlot.MORNING);
+
+        when(geoApiService.resolveMunicipality("Lisboa")).thenReturn(Optional.of("Lisboa"));
+        when(geoApiService.resolveMunicipality("Atlântida")).thenReturn(Optional.empty());
+        when(slotCapacityService.tryReserve("Lisboa", valid.getBookingDate(), TimeSlot.MORNING)).thenReturn(true);
+        when(bookingRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<BookingRequest> bookings = invocation.getArgument(0);
+            long id = 100;
+            for (BookingRequest booking : bookings) {
+                booking.setId(id++);
+            }
+            return bookings;
+        });
+
+        List<BatchBookingResultDTO> results = bookingService.createBookings(List.of(valid, invalid));
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isCreated());
+        assertEquals(100L, results.get(0).getId());
+        assertNotNull(results.get(0).getBookingToken());
+        assertFalse(results.get(1).isCreated());
+        assertNotNull(results.get(1).getError());
+
+        verify(bookingRepository, times(1)).saveAll(anyList());
         verify(bookingRepository, never()).save(any(BookingRequest.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void whenCreateBookings_withNullItem_thenRejectsThatIndexOnly() {
+        BookingRequestDTO valid = new BookingRequestDTO();
+        valid.setMunicipality("Lisboa");
+        valid.setItemDescription("Colchão");
+        valid.setBookingDate(LocalDate.now().plusDays(4));
+        valid.setTimeSlot(TimeSlot.MORNING);
+
+        when(geoApiService.resolveMunicipality("Lisboa")).thenReturn(Optional.of("Lisboa"));
+        when(slotCapacityService.tryReserve("Lisboa", valid.getBookingDate(), TimeSlot.MORNING)).thenReturn(true);
+        when(bookingRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<BatchBookingResultDTO> results = bookingService.createBookings(Arrays.asList(null, valid));
+
+        assertEquals(2, results.size());
+        assertFalse(results.get(0).isCreated());
+        assertEquals(0, results.get(0).getIndex());
+        assertNotNull(results.get(0).getError());
+        assertTrue(results.get(1).isCreated());
+    }
+
+    @Test
+    void whenCreateBookings_withEmptyBatch_thenThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> bookingService.createBookings(List.of()));
+    }
+
+    @Test
+    void whenBulkUpdateStatus_toCancelled_thenReleasesCountedSlots() {
+        BulkStatusUpdateDTO request = new BulkStatusUpdateDTO();
+        request.setStatus(BookingStatus.CANCELLED);
+        request.setIds(List.of(1L, 2L, 3L));
+        LocalDate day = LocalDate.now().plusDays(1);
+        // Só o 1 e o 2 podiam mudar; o store devolve os que bloqueou e mudou.
+        when(bookingRepository.changeStatusByIds(eq(List.of(1L, 2L, 3L)),
+                eq(BookingStatus.sourcesOf(BookingStatus.CANCELLED)), eq(BookingStatus.CANCELLED), any()))
+                .thenReturn(List.of(
+                        new StatusChange(1L, "tokenA", "Lisboa", day, TimeSlot.MORNING, BookingStatus.RECEIVED, 1L),
+                        new StatusChange(2L, "tokenB", "Lisboa", day, TimeSlot.MORNING, BookingStatus.RECEIVED, 3L)));
+
+        int updated = bookingService.bulkUpdateStatus(request);
+
+        assertEquals(2, updated);
+        verify(slotCapacityService).release("Lisboa", day, TimeSlot.MORNING, 2);
+        verify(scheduleSummary).moved("Lisboa", day, TimeSlot.MORNING,
+                BookingStatus.RECEIVED, BookingStatus.CANCELLED, 2);
+        verify(bookingMetrics).statusChanged(BookingStatus.RECEIVED, BookingStatus.CANCELLED, 2);
+        // Uma entrada no histórico por booking que mudou de facto.
+        verify(historyLog).append(eq("tokenA"), eq(BookingStatus.CANCELLED), any());
+        verify(historyLog).append(eq("tokenB"), eq(BookingStatus.CANCELLED), any());
+        verify(bookingRepository, never()).save(any(BookingRequest.class));
+        // O evento leva só os bookings que mudaram, com a versão nova de cada um.
+        verify(eventPublisher).publishEvent(BookingChangedEvent.bulkStatusChanged("Lisboa", BookingStatus.CANCELLED,
+                List.of(new StatusChange(1L, "tokenA", "Lisboa", day, TimeSlot.MORNING, BookingStatus.RECEIVED, 1L),
+                        new StatusChange(2L, "tokenB", "Lisboa", day, TimeSlot.MORNING, BookingStatus.RECEIVED, 3L))));
+    }
+
+    @Test
+    void whenBulkUpdateStatus_insideTransaction_thenSideEffectsWaitForCommit() {
+        BulkStatusUpdateDTO request = new BulkStatusUpdateDTO();
+        request.setStatus(BookingStatus.CANCELLED);
+        request.setIds(List.of(1L));
+        LocalDate day = LocalDate.now().plusDays(1);
+        when(bookingRepository.changeStatusByIds(eq(List.of(1L)), any(), eq(BookingStatus.CANCELLED), any()))
+                .thenReturn(List.of(
+                        new StatusChange(1L, "tokenA", "Lisboa", day, TimeSlot.MORNING, BookingStatus.RECEIVED, 1L)));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            bookingService.bulkUpdateStatus(request);
+
+            verifyNoInteractions(slotCapacityService, historyLog, tokenCache);
+            verify(scheduleSummary, never()).moved(any(), any(), any(), any(), any(), anyInt());
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(slotCapacityService).release("Lisboa", day, TimeSlot.MORNING, 1);
+        verify(scheduleSummary).moved("Lisboa", day, TimeSlot.MORNING, BookingStatus.RECEIVED,
+                BookingStatus.CANCELLED, 1);
+        verify(historyLog).append(eq("tokenA"), eq(BookingStatus.CANCELLED), any());
+        verify(tokenCache).invalidateAll(List.of("tokenA"));
+    }
+
+    @Test
+    void whenBulkUpdateStatus_withIdsAndFilter_thenThrowException() {
+        BulkStatusUpdateDTO request = new BulkStatusUpdateDTO();
+        request.setStatus(BookingStatus.COMPLETED);
+        request.setIds(List.of(1L));
+        request.setMunicipality("Lisboa");
+
+        assertThrows(IllegalArgumentException.class, () -> bookingService.bulkUpdateStatus(request));
+    }
+
+    @Test
+    void whenBulkUpdateStatus_toReceived_thenThrowException() {
+        // Nenhum estado volta a RECEIVED.
+        BulkStatusUpdateDTO request = new BulkStatusUpdateDTO();
+        request.setStatus(BookingStatus.RECEIVED);
+        request.setIds(List.of(1L));
+
+        assertThrows(IllegalArgumentException.class, () -> bookingService.bulkUpdateStatus(request));
+        verify(bookingRepository, never()).changeStatusByIds(any(), any(), any(), any());
+    }
+
+    private static StaffBookingDTO staffRow(Long id, LocalDate date) {
+        return new StaffBookingDTO(id, "Item " + id, "Lisboa", "Rua", date, TimeSlot.MORNING, BookingStatus.RECEIVED, null, 0L);
+    }
+
+    @Test
+    void whenGetScheduleSummary_thenReadsTheCountersByTheCanonicalMunicipality() {
+        LocalDate from = LocalDate.now().plusDays(1);
+        when(geoApiService.resolveMunicipality("setubal")).thenReturn(Optional.of("Setúbal"));
+        when(scheduleSummary.summary("Setúbal", from, 7)).thenReturn(List.of());
+
+        assertEquals(List.of(), bookingService.getScheduleSummary("setubal", from, 7));
+        verify(scheduleSummary).summary("Setúbal", from, 7);
+    }
+
+    @Test
+    void whenGetScheduleSummary_withUnknownMunicipality_thenThrowException() {
+        when(geoApiService.resolveMunicipality("Atlantida")).thenReturn(Optional.empty());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> bookingService.getScheduleSummary("Atlantida", null, 7));
+        verify(scheduleSummary, never()).summary(any(), any(), anyInt());
+    }
+}
@@ -0,0 +1,86 @@
+package pt.zeromonos.garbagecollection.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing (em streaming, a partir do InputStream) da resposta da GeoAPI com um payload do tamanho real (308 municípios, cada um com os
+ * campos que a json.geoapi.pt devolve). Correr com: mvn -Pjmh test-compile exec:exec@jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeoApiServiceBenchmark {
+
+    static final int MUNICIPALITY_COUNT = 308;
+    private static final String[] BASE_NAMES = {
+            "Abrantes", "Águeda", "Alcobaça", "Almada", "Amadora", "Aveiro", "Beja", "Braga", "Bragança",
+            "Castelo Branco", "Coimbra", "Évora", "Faro", "Guarda", "Leiria", "Lisboa", "Loulé", "Óbidos",
+            "Portalegre", "Porto", "Santarém", "Setúbal", "Sintra", "Viana do Castelo", "Vila Real", "Viseu"
+    };
+
+    private GeoApiService geoApiService;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        geoApiService = new GeoApiService(new RestTemplate(), objectMapper);
+        payload = objectMapper.writeValueAsBytes(geoApiPayload(objectMapper));
+    }
+
+    @Benchmark
+    public List<String> extractMunicipalities() throws Exception {
+        return geoApiService.extractMunicipalities(new ByteArrayInputStream(payload));
+    }
+
+    static List<String> municipalityNames() {
+        List<String> names = new ArrayList<>(MUNICIPALITY_COUNT);
+        for (int i = 0; i < MUNICIPALITY_COUNT; i++) {
+            String base = BASE_NAMES[i % BASE_NAMES.length];
+            names.add(i < BASE_NAMES.length ? base : base + " " + (i / BASE_NAMES.length));
+        }
+        return names;
+    }
+
+    static ArrayNode geoApiPayload(ObjectMapper objectMapper) {
+        ArrayNode root = objectMapper.createArrayNode();
+        int code = 101;
+        for (String name : municipalityNames()) {
+            ObjectNode node = root.addObject();
+            node.put("nome", name);
+            node.put("codigoine", Integer.toString(code++));
+            node.put("distrito", "Distrito de " + name);
+            node.put("area", 100.5 + code);
+            node.put("populacao", 10_000 + code * 37);
+            node.put("email", "geral@cm-" + name.toLowerCase().replace(' ', '-') + ".pt");
+            node.put("telefone", "2" + (10_000_000 + code));
+            node.put("sitio", "https://www.cm-" + name.toLowerCase().replace(' ', '-') + ".pt");
+            node.put("nif", Integer.toString(500_000_000 + code));
+            node.put("rua", "Praça do Município");
+            node.put("codigopostal", "1000-" + (100 + code % 900));
+            node.put("localidade", name);
+        }
+        return root;
+    }
+}
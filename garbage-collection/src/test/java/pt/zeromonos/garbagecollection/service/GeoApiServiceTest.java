@@ -1,13 +1,18 @@
 package pt.zeromonos.garbagecollection.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.http.MediaType;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestTemplate;
+import pt.zeromonos.garbagecollection.config.GeoApiProperties;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Objects;
@@ -51,6 +56,28 @@ class GeoApiServiceTest {
         mockServer.verify();
     }
 
+    @Test
+    void shouldParseWrappedPayloadSkippingUnrelatedFieldsAndDuplicates() {
+        mockServer.expect(requestTo(GEOAPI_URL))
+                .andRespond(withSuccess("""
+                        {
+                          "total": 4,
+                          "meta": {"nome": "not a municipality", "tags": ["a", {"nome": "b"}]},
+                          "municipios": [
+                            {"codigoine": "1106", "freguesias": [{"nome": "Ajuda"}], "nome": " Lisboa "},
+                            {"municipio": "Évora", "nome": null},
+                            {"nome": "Lisboa"},
+                            42,
+                            {"distrito": "Porto"}
+                          ]
+                        }
+                        """, MediaType.APPLICATION_JSON));
+
+        assertThat(geoApiService.getMunicipalities()).containsExactly("Lisboa", "Évora");
+
+        mockServer.verify();
+    }
+
     @Test
     void shouldCacheMunicipalitiesUntilTtlExpires() {
         mockServer.expect(requestTo(GEOAPI_URL))
@@ -95,4 +122,124 @@ class GeoApiServiceTest {
 
         mockServer.verify();
     }
+
+    @Test
+    void shouldRecordCacheHitsMissesFallbacksAndRefreshLatency() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GeoApiService service = new GeoApiService(restTemplate, new ObjectMapper(), new GeoApiProperties(), registry);
+        mockServer.expect(requestTo(GEOAPI_URL))
+                .andRespond(withSuccess("[\"Aveiro\"]", MediaType.APPLICATION_JSON));
+        mockServer.expect(requestTo(GEOAPI_URL))
+                .andRespond(withServerError());
+
+        service.getMunicipalities();
+        service.getMunicipalities();
+        ReflectionTestUtils.setField(service, "cacheExpiry", Instant.now().minusSeconds(1));
+        service.getMunicipalities();
+
+        assertThat(registry.get("geoapi.cache").tag("result", "miss").counter().count()).isEqualTo(2);
+        assertThat(registry.get("geoapi.cache").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(registry.get("geoapi.fallbacks").tag("source", "stale").counter().count()).isEqualTo(1);
+        assertThat(registry.get("geoapi.refresh").tag("outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(registry.get("geoapi.refresh").tag("outcome", "failure").timer().count()).isEqualTo(1);
+        assertThat(registry.get("geoapi.municipalities").gauge().value()).isEqualTo(1);
+        mockServer.verify();
+    }
+
+    @Test
+    void shouldResolveMunicipalitiesIgnoringCaseAndAccents() {
+        mockServer.expect(requestTo(GEOAPI_URL))
+                .andRespond(withSuccess("""
+                        [
+                          {"nome":"Évora"},
+                          {"nome":"Lisboa"},
+                          {"nome":"Vila Nova de Gaia"}
+                        ]
+                        """, MediaType.APPLICATION_JSON));
+
+        assertThat(geoApiService.resolveMunicipality("lisboa")).contains("Lisboa");
+        assertThat(geoApiService.resolveMunicipality("Evora")).contains("Évora");
+        assertThat(geoApiService.resolveMunicipality("  vila  nova de GAIA ")).contains("Vila Nova de Gaia");
+        assertThat(geoApiService.resolveMunicipality("Terra do Nunca")).isEmpty();
+        assertThat(geoApiService.resolveMunicipality(null)).isEmpty();
+
+        mockServer.verify();
+    }
+
+    @Test
+    void backgroundModeShouldServeSnapshotWithoutBlockingAndRefreshOnScheduler() throws InterruptedException {
+        GeoApiProperties properties = new GeoApiProperties();
+        properties.setRefreshMode(GeoApiProperties.RefreshMode.BACKGROUND);
+        GeoApiService backgroundService = new GeoApiService(restTemplate, new ObjectMapper(), properties);
+
+        mockServer.expect(requestTo(GEOAPI_URL))
+                .andRespond(withSuccess("""
+                        [
+                          {"nome":"Mértola"}
+                        ]
+                        """, MediaType.APPLICATION_JSON));
+
+        // Antes do primeiro refresh não há pedidos à GeoAPI no caminho do pedido: serve a lista por omissão.
+        assertThat(backgroundService.getMunicipalities()).contains("Lisboa");
+
+        backgroundService.startBackgroundRefresh();
+        try {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (!backgroundService.getMunicipalities().contains("Mértola") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat(backgroundService.getMunicipalities()).containsExactly("Mértola");
+
+            // Mesmo com a cache expirada, o pedido devolve o snapshot atual em vez de ir à GeoAPI.
+            ReflectionTestUtils.setField(backgroundService, "cacheExpiry", Instant.now().minusSeconds(1));
+            assertThat(backgroundService.getMunicipalities()).containsExactly("Mértola");
+        } finally {
+            backgroundService.stopBackgroundRefresh();
+        }
+
+        mockServer.verify();
+    }
+
+    @Test
+    void backoffDelayShouldGrowExponentiallyUpToTheMaximum() {
+        GeoApiProperties properties = new GeoApiProperties();
+        properties.setInitialBackoff(Duration.ofSeconds(30));
+        properties.setMaxBackoff(Duration.ofMinutes(5));
+        GeoApiService service = new GeoApiService(restTemplate, new ObjectMapper(), properties);
+
+        assertThat(service.backoffDelay(1)).isEqualTo(Duration.ofSeconds(30));
+        assertThat(service.backoffDelay(2)).isEqualTo(Duration.ofSeconds(60));
+        assertThat(service.backoffDelay(3)).isEqualTo(Duration.ofSeconds(120));
+        assertThat(service.backoffDelay(10)).isEqualTo(Duration.ofMinutes(5));
+        assertThat(service.withJitter(Duration.ofSeconds(100)))
+                .isBetween(Duration.ofSeconds(90), Duration.ofSeconds(110));
+    }
+
+    @Test
+    void shouldWarmStartFromPersistedSnapshotWithoutCallingGeoApi(@TempDir Path tempDir) {
+        GeoApiProperties properties = new GeoApiProperties();
+        properties.setSnapshotFile(tempDir.resolve("municipalities.json"));
+
+        mockServer.expect(requestTo(GEOAPI_URL))
+                .andRespond(withSuccess("""
+                        [
+                          {"nome":"Tavira"},
+                          {"nome":"Óbidos"}
+                        ]
+                        """, MediaType.APPLICATION_JSON));
+
+        GeoApiService firstRun = new GeoApiService(restTemplate, new ObjectMapper(), properties);
+        firstRun.getMunicipalities();
+        mockServer.verify();
+
+        // Segundo "arranque": não há mais respostas preparadas, por isso qualquer chamada à GeoAPI falharia o teste.
+        mockServer.reset();
+        GeoApiService restarted = new GeoApiService(restTemplate, new ObjectMapper(), properties);
+        restarted.loadSnapshot();
+
+        assertThat(restarted.getMunicipalities()).containsExactlyInAnyOrder("Óbidos", "Tavira");
+        assertThat(restarted.resolveMunicipality("obidos")).contains("Óbidos");
+        mockServer.verify();
+    }
 }
@@ -0,0 +1,130 @@
+package pt.zeromonos.garbagecollection.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import pt.zeromonos.garbagecollection.config.IdempotencyProperties;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.BookingRequestDTO;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyStoreTest {
+
+    private final IdempotencyStore store = new IdempotencyStore(new IdempotencyProperties(), new SimpleMeterRegistry());
+    private final AtomicInteger executions = new AtomicInteger();
+
+    private static final String CLIENT = "10.0.0.1";
+
+    @Test
+    void repeatedKeyReturnsTheOriginalResponse() {
+        BookingRequestDTO dto = dto("Sofá");
+
+        ResponseEntity<BookingRequest> first = store.execute(CLIENT, "key-1", dto, this::create);
+        ResponseEntity<BookingRequest> retry = store.execute(CLIENT, "key-1", dto("Sofá"), this::create);
+
+        assertThat(executions).hasValue(1);
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(retry.getBody()).isSameAs(first.getBody());
+        assertThat(retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER)).isEqualTo("true");
+        assertThat(first.getHeaders().containsKey(IdempotencyStore.REPLAYED_HEADER)).isFalse();
+    }
+
+    @Test
+    void keyReusedWithADifferentRequestIsRejected() {
+        store.execute(CLIENT, "key-1", dto("Sofá"), this::create);
+
+        assertThatThrownBy(() -> store.execute(CLIENT, "key-1", dto("Frigorífico"), this::create))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    void nonSuccessResponsesAndFailuresAreNotStored() {
+        store.execute(CLIENT, "key-1", dto("Sofá"), () -> ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build());
+        assertThatThrownBy(() -> store.execute(CLIENT, "key-2", dto("Sofá"), () -> {
+            throw new IllegalStateException("database down");
+        })).isInstanceOf(IllegalStateException.class);
+        store.execute(CLIENT, "key-3", dto("Sofá"), () -> ResponseEntity.status(HttpStatus.CONFLICT).build());
+        store.execute(CLIENT, "key-4", dto("Sofá"), () -> ResponseEntity.badRequest().build());
+
+        for (String key : List.of("key-1", "key-2", "key-3", "key-4")) {
+            assertThat(store.execute(CLIENT, key, dto("Sofá"), this::create).getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        }
+        assertThat(executions).hasValue(4);
+    }
+
+    @Test
+    void keysAreScopedByClient() {
+        ResponseEntity<BookingRequest> mine = store.execute(CLIENT, "key-1", dto("Sofá"), this::create);
+        ResponseEntity<BookingRequest> theirs = store.execute("10.0.0.2", "key-1", dto("Frigorífico"), this::create);
+
+        assertThat(executions).hasValue(2);
+        assertThat(theirs.getBody()).isNotSameAs(mine.getBody());
+        assertThat(theirs.getHeaders().containsKey(IdempotencyStore.REPLAYED_HEADER)).isFalse();
+    }
+
+    @Test
+    void concurrentDuplicatesShareOneExecution() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ResponseEntity<BookingRequest>>> responses = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                responses.add(executor.submit(() -> store.execute(CLIENT, "storm", dto("Sofá"), () -> {
+                    await(release);
+                    return create();
+                })));
+            }
+            // Todos os pedidos entram enquanto o primeiro ainda está bloqueado.
+            TimeUnit.MILLISECONDS.sleep(100);
+            release.countDown();
+
+            BookingRequest booking = responses.get(0).get(5, TimeUnit.SECONDS).getBody();
+            for (Future<ResponseEntity<BookingRequest>> response : responses) {
+                assertThat(response.get(5, TimeUnit.SECONDS).getBody()).isSameAs(booking);
+            }
+            assertThat(executions).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ResponseEntity<BookingRequest> create() {
+        executions.incrementAndGet();
+        BookingRequest booking = new BookingRequest("Sofá", "Lisboa", "Rua", LocalDate.now().plusDays(3),
+                TimeSlot.MORNING);
+        return new ResponseEntity<>(booking, HttpStatus.CREATED);
+    }
+
+    private static BookingRequestDTO dto(String item) {
+        BookingRequestDTO dto = new BookingRequestDTO();
+        dto.setItemDescription(item);
+        dto.setMunicipality("Lisboa");
+        dto.setBookingDate(LocalDate.now().plusDays(3));
+        dto.setTimeSlot(TimeSlot.MORNING);
+        return dto;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
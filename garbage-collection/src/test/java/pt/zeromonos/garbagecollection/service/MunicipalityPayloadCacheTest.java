@@ -0,0 +1,51 @@
+package pt.zeromonos.garbagecollection.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MunicipalityPayloadCacheTest {
+
+    private final GeoApiService geoApiService = mock(GeoApiService.class);
+    private final MunicipalityPayloadCache cache = new MunicipalityPayloadCache(geoApiService, new ObjectMapper());
+
+    @Test
+    void reusesBytesWhileTheSnapshotIsTheSame() throws IOException {
+        when(geoApiService.getMunicipalityIndex()).thenReturn(MunicipalityIndex.of(List.of("Lisboa", "Porto")));
+
+        MunicipalityPayloadCache.Payload first = cache.current();
+        MunicipalityPayloadCache.Payload second = cache.current();
+
+        assertThat(second).isSameAs(first);
+        assertThat(new String(first.json(), StandardCharsets.UTF_8)).isEqualTo("[\"Lisboa\",\"Porto\"]");
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(first.gzip()))) {
+            assertThat(gzip.readAllBytes()).isEqualTo(first.json());
+        }
+        assertThat(first.etag()).startsWith("\"").endsWith("\"");
+        assertThat(first.gzipEtag()).isNotEqualTo(first.etag());
+    }
+
+    @Test
+    void newSnapshotKeepsTheEtagOnlyWhenTheNamesAreUnchanged() {
+        when(geoApiService.getMunicipalityIndex()).thenReturn(MunicipalityIndex.of(List.of("Lisboa", "Porto")));
+        MunicipalityPayloadCache.Payload original = cache.current();
+
+        when(geoApiService.getMunicipalityIndex()).thenReturn(MunicipalityIndex.of(List.of("Lisboa", "Porto")));
+        MunicipalityPayloadCache.Payload refreshed = cache.current();
+        when(geoApiService.getMunicipalityIndex()).thenReturn(MunicipalityIndex.of(List.of("Lisboa", "Sintra")));
+        MunicipalityPayloadCache.Payload changed = cache.current();
+
+        assertThat(refreshed).isNotSameAs(original);
+        assertThat(refreshed.etag()).isEqualTo(original.etag());
+        assertThat(changed.etag()).isNotEqualTo(original.etag());
+    }
+}
@@ -0,0 +1,146 @@
+package pt.zeromonos.garbagecollection.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import pt.zeromonos.garbagecollection.domain.BookingRequest;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.ScheduleSummaryDTO;
+import pt.zeromonos.garbagecollection.repository.BookingRequestRepository;
+import pt.zeromonos.garbagecollection.repository.BookingStore;
+import pt.zeromonos.garbagecollection.repository.SlotStatusCount;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest
+class ScheduleSummaryServiceTest {
+
+    private static final LocalDate DAY = LocalDate.now().plusDays(5);
+
+    @Autowired
+    private BookingRequestRepository bookingRepository;
+
+    @Test
+    void rebuildCountsEachSlotByStatus() {
+        save("Lisboa", DAY, TimeSlot.MORNING, BookingStatus.RECEIVED);
+        save("Lisboa", DAY, TimeSlot.MORNING, BookingStatus.RECEIVED);
+        save("Lisboa", DAY, TimeSlot.MORNING, BookingStatus.CANCELLED);
+        save("Lisboa", DAY.plusDays(1), TimeSlot.AFTERNOON, BookingStatus.COMPLETED);
+        save("Porto", DAY, TimeSlot.MORNING, BookingStatus.RECEIVED);
+
+        ScheduleSummaryService service = new ScheduleSummaryService(bookingRepository);
+        assertThat(service.rebuild()).isEqualTo(3);
+
+        List<ScheduleSummaryDTO> summary = service.summary("Lisboa", DAY, 2);
+        assertThat(summary).hasSize(2 * TimeSlot.values().length);
+        ScheduleSummaryDTO morning = find(summary, DAY, TimeSlot.MORNING);
+        assertThat(morning.getTotal()).isEqualTo(3);
+        assertThat(morning.getByStatus())
+                .containsEntry(BookingStatus.RECEIVED, 2)
+                .containsEntry(BookingStatus.CANCELLED, 1)
+                .containsEntry(BookingStatus.COMPLETED, 0);
+        assertThat(find(summary, DAY.plusDays(1), TimeSlot.AFTERNOON).getByStatus())
+                .containsEntry(BookingStatus.COMPLETED, 1);
+        assertThat(find(summary, DAY, TimeSlot.AFTERNOON).getTotal()).isZero();
+    }
+
+    @Test
+    void incrementalUpdatesMatchARebuildFromScratch() {
+        ScheduleSummaryService service = new ScheduleSummaryService(bookingRepository);
+        service.rebuild();
+
+        BookingRequest first = save("Lisboa", DAY, TimeSlot.MORNING, BookingStatus.RECEIVED);
+        service.bookingCreated("Lisboa", DAY, TimeSlot.MORNING, BookingStatus.RECEIVED);
+        BookingRequest second = save("Lisboa", DAY, TimeSlot.MORNING, BookingStatus.RECEIVED);
+        service.bookingCreated("Lisboa", DAY, TimeSlot.MORNING, BookingStatus.RECEIVED);
+
+        first.setStatus(BookingStatus.SCHEDULED);
+        bookingRepository.save(first);
+        service.statusChanged("Lisboa", DAY, TimeSlot.MORNING, BookingStatus.RECEIVED, BookingStatus.SCHEDULED);
+
+        int moved = bookingRepository.bulkUpdateStatusByIds(List.of(first.getId(), second.getId()),
+                BookingStatus.sourcesOf(BookingStatus.COMPLETED), BookingStatus.COMPLETED, LocalDateTime.now());
+        service.moved("Lisboa", DAY, TimeSlot.MORNING, BookingStatus.RECEIVED, BookingStatus.COMPLETED, 1);
+        service.moved("Lisboa", DAY, TimeSlot.MORNING, BookingStatus.SCHEDULED, BookingStatus.COMPLETED, 1);
+
+        ScheduleSummaryService rebuilt = new ScheduleSummaryService(bookingRepository);
+        rebuilt.rebuild();
+
+        assertThat(moved).isEqualTo(2);
+        assertThat(service.summary("Lisboa", DAY, 1)).isEqualTo(rebuilt.summary("Lisboa", DAY, 1));
+        assertThat(find(service.summary("Lisboa", DAY, 1), DAY, TimeSlot.MORNING).getByStatus())
+                .containsEntry(BookingStatus.COMPLETED, 2)
+                .containsEntry(BookingStatus.RECEIVED, 0);
+    }
+
+    @Test
+    void rebuildWaitsForWritesInFlightAndCountsThemOnce() throws Exception {
+        // O booking já está na base de dados quando o GROUP BY corre; o delta chega depois da escrita.
+        SlotStatusCount row = mock(SlotStatusCount.class);
+        when(row.getMunicipality()).thenReturn("Lisboa");
+        when(row.getBookingDate()).thenReturn(DAY);
+        when(row.getTimeSlot()).thenReturn(TimeSlot.MORNING);
+        when(row.getStatus()).thenReturn(BookingStatus.RECEIVED);
+        when(row.getTotal()).thenReturn(1L);
+        BookingStore store = mock(BookingStore.class);
+        when(store.countBySlotAndStatus()).thenReturn(List.of(row));
+        ScheduleSummaryService service = new ScheduleSummaryService(store);
+
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> write = executor.submit(() -> service.writing(() -> {
+                written.countDown();
+                await(release);
+                service.bookingCreated("Lisboa", DAY, TimeSlot.MORNING, BookingStatus.RECEIVED);
+                return null;
+            }));
+            assertThat(written.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<Integer> rebuild = executor.submit(service::rebuild);
+
+            Thread.sleep(100);
+            assertThat(rebuild.isDone()).isFalse();
+            release.countDown();
+            write.get(5, TimeUnit.SECONDS);
+            rebuild.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(find(service.summary("Lisboa", DAY, 1), DAY, TimeSlot.MORNING).getTotal()).isEqualTo(1);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private BookingRequest save(String municipality, LocalDate date, TimeSlot timeSlot, BookingStatus status) {
+        BookingRequest booking = new BookingRequest("Item", municipality, "Rua", date, timeSlot);
+        booking.setStatus(status);
+        return bookingRepository.save(booking);
+    }
+
+    private static ScheduleSummaryDTO find(List<ScheduleSummaryDTO> summary, LocalDate date, TimeSlot timeSlot) {
+        return summary.stream()
+                .filter(row -> row.getDate().equals(date) && row.getTimeSlot() == timeSlot)
+                .findFirst()
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,113 @@
+package pt.zeromonos.garbagecollection.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pt.zeromonos.garbagecollection.config.CapacityProperties;
+import pt.zeromonos.garbagecollection.domain.BookingStatus;
+import pt.zeromonos.garbagecollection.domain.TimeSlot;
+import pt.zeromonos.garbagecollection.dto.SlotAvailabilityDTO;
+import pt.zeromonos.garbagecollection.repository.BookingRequestRepository;
+import pt.zeromonos.garbagecollection.repository.SlotCount;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SlotCapacityServiceTest {
+
+    private static final LocalDate DAY = LocalDate.now().plusDays(1);
+
+    private BookingRequestRepository bookingRepository;
+    private CapacityProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        bookingRepository = mock(BookingRequestRepository.class);
+        properties = new CapacityProperties();
+        properties.setDefaultLimit(5);
+        properties.setLimits(Map.of("Évora", Map.of(TimeSlot.MORNING, 2)));
+    }
+
+    @Test
+    void shouldSeedCountersFromDatabaseAndRespectConfiguredLimits() {
+        when(bookingRepository.countBySlotFrom(any(LocalDate.class), eq(BookingStatus.CANCELLED)))
+                .thenReturn(List.of(slotCount("Évora", DAY, TimeSlot.MORNING, 1)));
+        SlotCapacityService service = new SlotCapacityService(bookingRepository, properties);
+        service.loadCounters();
+
+        assertThat(service.capacityOf("evora", TimeSlot.MORNING)).isEqualTo(2);
+        assertThat(service.capacityOf("Évora", TimeSlot.AFTERNOON)).isEqualTo(5);
+
+        assertThat(service.tryReserve("Évora", DAY, TimeSlot.MORNING)).isTrue();
+        assertThat(service.tryReserve("Évora", DAY, TimeSlot.MORNING)).isFalse();
+
+        service.release("Évora", DAY, TimeSlot.MORNING);
+        List<SlotAvailabilityDTO> availability = service.availability("Évora", 3);
+
+        assertThat(availability).hasSize(6);
+        assertThat(availability).contains(new SlotAvailabilityDTO(DAY, TimeSlot.MORNING, 2, 1));
+        assertThat(availability).contains(new SlotAvailabilityDTO(DAY, TimeSlot.AFTERNOON, 5, 5));
+    }
+
+    @Test
+    void concurrentReservationsShouldNeverExceedCapacity() throws InterruptedException {
+        properties.setDefaultLimit(50);
+        SlotCapacityService service = new SlotCapacityService(bookingRepository, properties);
+
+        int threads = 16;
+        int attemptsPerThread = 100;
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < attemptsPerThread; i++) {
+                        if (service.tryReserve("Lisboa", DAY, TimeSlot.AFTERNOON)) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(granted.get()).isEqualTo(50);
+    }
+
+    private static SlotCount slotCount(String municipality, LocalDate date, TimeSlot timeSlot, long total) {
+        return new SlotCount() {
+            public String getMunicipality() {
+                return municipality;
+            }
+
+            public LocalDate getBookingDate() {
+                return date;
+            }
+
+            public TimeSlot getTimeSlot() {
+                return timeSlot;
+            }
+
+            public long getTotal() {
+                return total;
+            }
+        };
+    }
+}